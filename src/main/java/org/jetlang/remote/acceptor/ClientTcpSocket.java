@@ -33,4 +33,10 @@ public class ClientTcpSocket {
             session.publishIfSubscribed(topic, bytes);
         }
     }
+
+    public void publishIfSubscribed(String topic, Object msg, byte[] bytes) {
+        if (session != null) {
+            session.publishIfSubscribed(topic, msg, bytes);
+        }
+    }
 }
@@ -73,7 +73,7 @@ public class FiberForAllSessions implements NewSessionHandler, ClientPublisher {
                 if (data == null) {
                     data = serializer.createArray(topic, msg);
                 }
-                state.publish(data);
+                state.publish(topic, msg, data);
             }
         }
     }
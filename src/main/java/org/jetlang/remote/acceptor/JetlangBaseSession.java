@@ -2,10 +2,20 @@ package org.jetlang.remote.acceptor;
 
 import org.jetlang.channels.MemoryChannel;
 import org.jetlang.channels.Subscriber;
+import org.jetlang.core.Callback;
+import org.jetlang.core.Disposable;
+import org.jetlang.core.DisposingExecutor;
+import org.jetlang.core.Scheduler;
+import org.jetlang.remote.core.Capabilities;
 import org.jetlang.remote.core.CloseableChannel;
+import org.jetlang.remote.core.CompressionStats;
+import org.jetlang.remote.core.FlyweightHandler;
+import org.jetlang.remote.core.FlyweightHandlers;
 import org.jetlang.remote.core.HeartbeatEvent;
 import org.jetlang.remote.core.ReadTimeoutEvent;
 
+import java.util.concurrent.TimeUnit;
+
 public abstract class JetlangBaseSession implements JetlangSession, JetlangMessagePublisher {
 
     private final CloseableChannel.Group allChannels = new CloseableChannel.Group();
@@ -16,6 +26,8 @@ public abstract class JetlangBaseSession implements JetlangSession, JetlangMessa
 
     protected final CloseableChannel<SessionTopic> SubscriptionRequest = newChannel();
     protected final CloseableChannel<String> UnsubscribeRequest = newChannel();
+    protected final CloseableChannel<String> PatternSubscriptionRequest = newChannel();
+    protected final CloseableChannel<String> PatternUnsubscribeRequest = newChannel();
     protected final CloseableChannel<LogoutEvent> Logout = newChannel();
     protected final CloseableChannel<HeartbeatEvent> Heartbeat = newChannel();
     protected final CloseableChannel<SessionMessage<?>> Messages = newChannel();
@@ -24,6 +36,13 @@ public abstract class JetlangBaseSession implements JetlangSession, JetlangMessa
     protected final CloseableChannel<SessionRequest> SessionRequest = newChannel();
 
     protected final Object id;
+    private final FlyweightHandlers flyweights = new FlyweightHandlers();
+    private int supportedCapabilities;
+    private int compressionThreshold = -1;
+    private int creditWindow;
+    private final CompressionStats compressionStats = new CompressionStats();
+    private final PendingRequests pendingRequests = new PendingRequests();
+    private volatile int capabilities;
 
     public JetlangBaseSession(Object id) {
         this.id = id;
@@ -33,6 +52,91 @@ public abstract class JetlangBaseSession implements JetlangSession, JetlangMessa
         return id;
     }
 
+    public void registerFlyweight(String topic, FlyweightHandler handler) {
+        flyweights.register(topic, handler);
+    }
+
+    public FlyweightHandlers getFlyweightHandlers() {
+        return flyweights;
+    }
+
+    /**
+     * Capabilities granted when the client offers them in its Hello. Set before the session starts reading.
+     */
+    public void setSupportedCapabilities(int supportedCapabilities) {
+        this.supportedCapabilities = supportedCapabilities;
+    }
+
+    /**
+     * Smallest frame compressed when the client negotiates compression.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Data messages the client may send before waiting for more credit, when it negotiates credit.
+     */
+    public void setCreditWindow(int creditWindow) {
+        this.creditWindow = creditWindow;
+    }
+
+    public int getCreditWindow() {
+        return creditWindow;
+    }
+
+    /**
+     * Publishes held while the client grants no credit, before the session sheds load. Set before the session
+     * starts reading.
+     */
+    public abstract void setMaxHeldMessages(int maxHeldMessages);
+
+    /**
+     * Grants the client more data messages.
+     */
+    public abstract void grantCredit(int messages);
+
+    /**
+     * The client accepts more data messages. Held publishes are written as the credit allows.
+     */
+    public abstract void onCredit(int messages);
+
+    /**
+     * @return data messages the client accepts before publishes are held, or -1 without credit.
+     */
+    public abstract long getSendCredit();
+
+    /**
+     * @return publishes waiting for the client to grant credit.
+     */
+    public abstract int getHeldMessageCount();
+
+    /**
+     * @return the compression threshold if the negotiated capabilities include compression, otherwise -1.
+     */
+    protected int compressionThreshold(int negotiated) {
+        return Capabilities.has(negotiated, Capabilities.COMPRESSION) ? compressionThreshold : -1;
+    }
+
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    public void onHello(int version, int capabilities) {
+        final int negotiated = capabilities & supportedCapabilities;
+        this.capabilities = negotiated;
+        ackHello(negotiated);
+    }
+
+    /**
+     * Sends the HelloAck, then switches the writer to the negotiated capabilities.
+     */
+    protected abstract void ackHello(int negotiated);
+
     public abstract void onLogout();
 
     public abstract void onSubscriptionRequest(String topic);
@@ -47,8 +151,59 @@ public abstract class JetlangBaseSession implements JetlangSession, JetlangMessa
 
     public abstract void reply(final int reqId, final String replyTopic, final Object replyMsg);
 
+    @Override
+    public ReplyStream replyStream(final int reqId, final String reqTopic) {
+        if (!Capabilities.has(capabilities, Capabilities.REPLY_STREAMS)) {
+            return JetlangMessagePublisher.super.replyStream(reqId, reqTopic);
+        }
+        return new ReplyStream() {
+            public void write(Object part) {
+                replyChunk(reqId, reqTopic, part);
+            }
+
+            public void end() {
+                replyEnd(reqId);
+            }
+        };
+    }
+
+    protected abstract void replyChunk(int reqId, String reqTopic, Object part);
+
+    protected abstract void replyEnd(int reqId);
+
     public abstract void publishIfSubscribed(String topic, final byte[] data);
 
+    public <T> Disposable request(String reqTopic, Object req, DisposingExecutor executor, Callback<T> callback, Runnable onTimeout, long timeout, TimeUnit unit) {
+        final int reqId = pendingRequests.add(getScheduler(), executor, callback, onTimeout, timeout, unit);
+        writeRequest(reqId, reqTopic, req);
+        return () -> pendingRequests.cancel(reqId);
+    }
+
+    /**
+     * @return requests sent to the client and still waiting for a reply.
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    protected abstract void writeRequest(int reqId, String reqTopic, Object req);
+
+    /**
+     * @return the scheduler request timeouts run on.
+     */
+    protected abstract Scheduler getScheduler();
+
+    public void onRequestReply(int reqId, String dataTopicVal, Object readObject) {
+        if (!pendingRequests.onReply(reqId, readObject)) {
+            onUnhandledReply(reqId, dataTopicVal, readObject);
+        }
+    }
+
+    /**
+     * A reply to no pending request, e.g. one that already timed out.
+     */
+    protected abstract void onUnhandledReply(int reqId, String dataTopicVal, Object readObject);
+
     public Subscriber<SessionTopic> getSubscriptionRequestChannel() {
         return SubscriptionRequest;
     }
@@ -81,6 +236,14 @@ public abstract class JetlangBaseSession implements JetlangSession, JetlangMessa
         return UnsubscribeRequest;
     }
 
+    public Subscriber<String> getPatternSubscriptionChannel() {
+        return PatternSubscriptionRequest;
+    }
+
+    public Subscriber<String> getPatternUnsubscribeChannel() {
+        return PatternUnsubscribeRequest;
+    }
+
     public Subscriber<SessionRequest> getSessionRequestChannel() {
         return SessionRequest;
     }
@@ -90,6 +253,7 @@ public abstract class JetlangBaseSession implements JetlangSession, JetlangMessa
     }
 
     public void onClose(SessionCloseEvent sessionCloseEvent) {
+        pendingRequests.timeoutAll();
         try {
             SessionClose.publish(sessionCloseEvent);
         } finally {
@@ -130,7 +130,11 @@ public class JetlangClientHandler implements Acceptor.ClientHandler, ClientPubli
         Runnable toSend = new Runnable() {
             public void run() {
                 byte[] copy = globalBuffer.createArray(topic, msg);
-                enqueueToAllSubscribedClients(topic, copy);
+                synchronized (clients) {
+                    for (ClientTcpSocket client : clients) {
+                        client.publishIfSubscribed(topic, msg, copy);
+                    }
+                }
             }
         };
         globalSendFiber.execute(toSend);
@@ -139,6 +143,8 @@ public class JetlangClientHandler implements Acceptor.ClientHandler, ClientPubli
     /**
      * Places the serialized bytes into the send q's for all subscribed clients.
      * Subscriptions are made on another thread so it is possible that this will enqueue a message to a client that hasn't been handled in a new session callback.
+     * The bytes carry fixed headers, so only use with clients that don't negotiate varint headers. Those clients are
+     * disconnected instead. {@link #enqueueToAllSubscribedClients(String, Object, byte[])} works with every client.
      */
     public void enqueueToAllSubscribedClients(String topic, byte[] data) {
         synchronized (clients) {
@@ -148,6 +154,18 @@ public class JetlangClientHandler implements Acceptor.ClientHandler, ClientPubli
         }
     }
 
+    /**
+     * Places the frame, pre-serialized with fixed headers e.g. by {@link BufferedSerializer}, into the send q's for
+     * all subscribed clients. The message is serialized again for clients that negotiated varint headers.
+     */
+    public void enqueueToAllSubscribedClients(String topic, Object msg, byte[] data) {
+        synchronized (clients) {
+            for (ClientTcpSocket client : clients) {
+                client.publishIfSubscribed(topic, msg, data);
+            }
+        }
+    }
+
     private static class ReadTimeoutHandler implements Runnable {
         private final JetlangStreamSession session;
         public boolean userLoggedOut;
@@ -168,16 +186,22 @@ public class JetlangClientHandler implements Acceptor.ClientHandler, ClientPubli
         final TcpSocket socket = clientTcpSocket.getSocket();
         final Fiber sendFiber = fiberFactory.createSendFiber(socket.getSocket());
         final Serializer serializer = ser.createForSocket(socket);
-        final JetlangStreamSession session = new JetlangStreamSession(socket.getRemoteSocketAddress(), new SocketMessageStreamWriter(socket, ser.getCharset(), serializer.getWriter()), sendFiber, errorHandler);
+        final SocketMessageStreamWriter writer = new SocketMessageStreamWriter(socket, ser.getCharset(), serializer.getWriter());
+        final JetlangStreamSession session = new JetlangStreamSession(socket.getRemoteSocketAddress(), writer, sendFiber, errorHandler);
+        session.setSupportedCapabilities(config.getCapabilities());
+        session.setCompressionThreshold(config.getCompressionThreshold());
+        session.setCreditWindow(config.getCreditWindow());
+        session.setMaxHeldMessages(config.getMaxHeldMessages());
         return new Runnable() {
             public void run() {
+                JetlangRemotingProtocol protocol = null;
                 try {
                     ReadTimeoutHandler onReadTimeout = new ReadTimeoutHandler(session);
                     clientTcpSocket.setSession(session);
                     channels.onNewSession(JetlangClientHandler.this, session);
                     session.startHeartbeat(config.getHeartbeatIntervalInMs(), TimeUnit.MILLISECONDS);
                     sendFiber.start();
-                    JetlangRemotingProtocol protocol = new JetlangRemotingProtocol(session, serializer.getReader(), ser.getCharset());
+                    protocol = new JetlangRemotingProtocol(session, serializer.getReader(), ser.getCharset());
                     JetlangRemotingInputStream state = new JetlangRemotingInputStream(socket.getInputStream(), protocol, onReadTimeout);
                     while (state.readFromStream()) {
 
@@ -190,6 +214,9 @@ public class JetlangClientHandler implements Acceptor.ClientHandler, ClientPubli
                     sendFiber.dispose();
                     stopAndRemove(clientTcpSocket);
                     session.onClose(new SessionCloseEvent());
+                    if (protocol != null) {
+                        protocol.releaseBuffer();
+                    }
                 }
             }
         };
@@ -2,12 +2,18 @@ package org.jetlang.remote.acceptor;
 
 import org.jetlang.channels.Subscriber;
 import org.jetlang.core.Callback;
+import org.jetlang.core.Disposable;
+import org.jetlang.core.DisposingExecutor;
 import org.jetlang.fibers.Fiber;
+import org.jetlang.remote.core.CompressionStats;
+import org.jetlang.remote.core.FlyweightHandler;
 import org.jetlang.remote.core.HeartbeatEvent;
 import org.jetlang.remote.core.ReadTimeoutEvent;
+import org.jetlang.remote.core.TopicTrie;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * User: mrettig
@@ -19,6 +25,7 @@ public class JetlangFiberSession implements JetlangSession {
     private final JetlangSession session;
     private final Fiber targetFiber;
     private final Map<String, SessionTopic> subscribed = new HashMap<String, SessionTopic>();
+    private final TopicTrie<String> patterns = new TopicTrie<String>();
 
     public JetlangFiberSession(JetlangSession session, Fiber targetFiber) {
         this.session = session;
@@ -33,14 +40,27 @@ public class JetlangFiberSession implements JetlangSession {
                 subscribed.remove(message);
             }
         });
+        session.getPatternSubscriptionChannel().subscribe(targetFiber, new Callback<String>() {
+            public void onMessage(String message) {
+                patterns.add(message, message);
+            }
+        });
+        session.getPatternUnsubscribeChannel().subscribe(targetFiber, new Callback<String>() {
+            public void onMessage(String message) {
+                patterns.remove(message, message);
+            }
+        });
     }
 
     public Map<String, SessionTopic> getSubscriptions() {
         return subscribed;
     }
 
+    /**
+     * @return true if the client subscribed to the topic or to a pattern matching it.
+     */
     public boolean isSubscribed(String topic) {
-        return subscribed.containsKey(topic);
+        return subscribed.containsKey(topic) || !patterns.match(topic).isEmpty();
     }
 
     public Fiber getFiber() {
@@ -59,6 +79,14 @@ public class JetlangFiberSession implements JetlangSession {
         return session.getUnsubscribeChannel();
     }
 
+    public Subscriber<String> getPatternSubscriptionChannel() {
+        return session.getPatternSubscriptionChannel();
+    }
+
+    public Subscriber<String> getPatternUnsubscribeChannel() {
+        return session.getPatternUnsubscribeChannel();
+    }
+
     public Subscriber<LogoutEvent> getLogoutChannel() {
         return session.getLogoutChannel();
     }
@@ -79,6 +107,21 @@ public class JetlangFiberSession implements JetlangSession {
         return session.getReadTimeoutChannel();
     }
 
+    /**
+     * The handler runs on the read thread, not the session fiber.
+     */
+    public void registerFlyweight(String topic, FlyweightHandler handler) {
+        session.registerFlyweight(topic, handler);
+    }
+
+    public int getCapabilities() {
+        return session.getCapabilities();
+    }
+
+    public CompressionStats getCompressionStats() {
+        return session.getCompressionStats();
+    }
+
     public Subscriber<SessionCloseEvent> getSessionCloseChannel() {
         return session.getSessionCloseChannel();
     }
@@ -94,4 +137,19 @@ public class JetlangFiberSession implements JetlangSession {
     public <T> void publish(String topic, T msg) {
         session.publish(topic, msg);
     }
+
+    public void publish(String topic, Object msg, byte[] data) {
+        session.publish(topic, msg, data);
+    }
+
+    public <T> Disposable request(String reqTopic, Object req, DisposingExecutor executor, Callback<T> callback, Runnable onTimeout, long timeout, TimeUnit unit) {
+        return session.request(reqTopic, req, executor, callback, onTimeout, timeout, unit);
+    }
+
+    /**
+     * Replies and timeouts run on the session's fiber.
+     */
+    public <T> Disposable request(String reqTopic, Object req, Callback<T> callback, Runnable onTimeout, long timeout, TimeUnit unit) {
+        return session.request(reqTopic, req, targetFiber, callback, onTimeout, timeout, unit);
+    }
 }
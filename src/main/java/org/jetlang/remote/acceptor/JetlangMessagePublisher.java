@@ -4,4 +4,8 @@ public interface JetlangMessagePublisher {
     <T> void publish(String topic, T msg);
 
     void reply(int reqId, String reqmsgTopic, Object replyMsg);
+
+    default ReplyStream replyStream(int reqId, String reqmsgTopic) {
+        return new ReplyStream.Collected(this, reqId, reqmsgTopic);
+    }
 }
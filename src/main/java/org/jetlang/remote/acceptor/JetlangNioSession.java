@@ -1,12 +1,15 @@
 package org.jetlang.remote.acceptor;
 
+import org.jetlang.core.Scheduler;
 import org.jetlang.fibers.NioFiber;
 import org.jetlang.remote.core.MsgTypes;
+import org.jetlang.remote.core.TopicTrie;
 
 import java.nio.channels.SocketChannel;
 
 public class JetlangNioSession extends JetlangBaseSession implements JetlangMessageHandler {
 
+    private final NioFiber fiber;
     private final NioJetlangSendFiber.ChannelState channel;
     private final NioJetlangSendFiber sendFiber;
     private final ErrorHandler errorHandler;
@@ -23,16 +26,62 @@ public class JetlangNioSession extends JetlangBaseSession implements JetlangMess
     public JetlangNioSession(NioFiber fiber, SocketChannel channel, NioJetlangSendFiber sendFiber, NioJetlangRemotingClientFactory.Id id, ErrorHandler errorHandler) {
         super(id);
         this.errorHandler = errorHandler;
+        this.fiber = fiber;
         this.channel = new NioJetlangSendFiber.ChannelState(channel, id, fiber);
         this.sendFiber = sendFiber;
         this.sendFiber.onNewSession(this.channel);
     }
 
+    /**
+     * @return bytes waiting for the client's socket to accept them.
+     */
+    public int getBufferedBytes() {
+        return channel.getBufferedBytes();
+    }
+
     @Override
     public void onHandlerException(Exception failed) {
         errorHandler.onHandlerException(failed);
     }
 
+    @Override
+    protected void ackHello(int negotiated) {
+        sendFiber.ackHello(channel, negotiated, compressionThreshold(negotiated), getCompressionStats());
+    }
+
+    @Override
+    public void setMaxHeldMessages(int maxHeldMessages) {
+        channel.setMaxHeldMessages(maxHeldMessages);
+    }
+
+    @Override
+    public void grantCredit(int messages) {
+        sendFiber.grantCredit(channel, messages);
+    }
+
+    @Override
+    public void onCredit(int messages) {
+        sendFiber.addCredit(channel, messages);
+    }
+
+    @Override
+    public long getSendCredit() {
+        return channel.getSendCredit();
+    }
+
+    @Override
+    public int getHeldMessageCount() {
+        return channel.getHeldMessageCount();
+    }
+
+    NioJetlangSendFiber getSendFiber() {
+        return sendFiber;
+    }
+
+    NioJetlangSendFiber.ChannelState getChannelState() {
+        return channel;
+    }
+
     public void sendHb() {
         sendFiber.sendIntAsByte(channel, MsgTypes.Heartbeat);
     }
@@ -55,6 +104,19 @@ public class JetlangNioSession extends JetlangBaseSession implements JetlangMess
         sendFiber.onUnsubscribeRequest(topic, channel);
     }
 
+    @Override
+    public void onPatternSubscriptionRequest(String pattern) {
+        TopicTrie.checkPattern(pattern);
+        sendFiber.onPatternSubscriptionRequest(pattern, channel);
+        PatternSubscriptionRequest.publish(pattern);
+    }
+
+    @Override
+    public void onPatternUnsubscribeRequest(String pattern) {
+        sendFiber.onPatternUnsubscribeRequest(pattern, channel);
+        PatternUnsubscribeRequest.publish(pattern);
+    }
+
     @Override
     public <T> void publish(String topic, T msg) {
         sendFiber.publish(channel, topic, msg);
@@ -70,13 +132,38 @@ public class JetlangNioSession extends JetlangBaseSession implements JetlangMess
         sendFiber.publishBytes(channel, data);
     }
 
+    @Override
+    public void publish(String topic, Object msg, byte[] data) {
+        sendFiber.publishFrame(channel, topic, msg, data);
+    }
+
     @Override
     public void reply(int reqId, String replyTopic, Object replyMsg) {
         sendFiber.reply(channel, reqId, replyTopic, replyMsg);
     }
 
     @Override
-    public void onRequestReply(int reqId, String dataTopicVal, Object readObject) {
+    protected void replyChunk(int reqId, String reqTopic, Object part) {
+        sendFiber.replyChunk(channel, reqId, reqTopic, part);
+    }
+
+    @Override
+    protected void replyEnd(int reqId) {
+        sendFiber.replyEnd(channel, reqId);
+    }
+
+    @Override
+    protected void writeRequest(int reqId, String reqTopic, Object req) {
+        sendFiber.request(channel, reqId, reqTopic, req);
+    }
+
+    @Override
+    protected Scheduler getScheduler() {
+        return fiber;
+    }
+
+    @Override
+    protected void onUnhandledReply(int reqId, String dataTopicVal, Object readObject) {
         errorHandler.onUnhandledReplyMsg(reqId, dataTopicVal, readObject);
     }
 
@@ -1,9 +1,22 @@
 package org.jetlang.remote.acceptor;
 
+import org.jetlang.channels.MemoryChannel;
 import org.jetlang.channels.Subscriber;
+import org.jetlang.core.Callback;
+import org.jetlang.core.Disposable;
+import org.jetlang.core.DisposingExecutor;
+import org.jetlang.remote.core.CompressionStats;
+import org.jetlang.remote.core.DoubleCallback;
+import org.jetlang.remote.core.FlyweightHandler;
 import org.jetlang.remote.core.HeartbeatEvent;
+import org.jetlang.remote.core.IntCallback;
+import org.jetlang.remote.core.LongCallback;
+import org.jetlang.remote.core.PrimitiveCodecs;
 import org.jetlang.remote.core.ReadTimeoutEvent;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * User: mrettig
  * Date: 4/6/11
@@ -17,6 +30,21 @@ public interface JetlangSession {
 
     Subscriber<String> getUnsubscribeChannel();
 
+    /**
+     * Patterns the client subscribes to, in {@link org.jetlang.remote.core.TopicTrie} syntax. The session already
+     * delivers matching topics published to it. Never publishes for sessions without pattern subscriptions.
+     */
+    default Subscriber<String> getPatternSubscriptionChannel() {
+        return new MemoryChannel<String>();
+    }
+
+    /**
+     * @see #getPatternSubscriptionChannel()
+     */
+    default Subscriber<String> getPatternUnsubscribeChannel() {
+        return new MemoryChannel<String>();
+    }
+
     Subscriber<LogoutEvent> getLogoutChannel();
 
     Subscriber<HeartbeatEvent> getHeartbeatChannel();
@@ -36,9 +64,98 @@ public interface JetlangSession {
 
     /**
      * publish raw bytes. The bytes should be correctly formatted with the topic included. The bytes will
-     * be published asynchronously, so the byte array should be a thread safe copy of the data.
+     * be published asynchronously, so the byte array should be a thread safe copy of the data. Counts as one data
+     * message against the client's credit. The frame header must match the format negotiated with the client: raw
+     * bytes always carry fixed headers, so a session that negotiated varint headers is disconnected instead. Use
+     * {@link #publish(String, Object, byte[])} to publish pre-serialized frames to any session.
      */
     void publish(byte[] data);
 
     <T> void publish(final String topic, final T msg);
+
+    /**
+     * Sends a request the client answers from its request channel. The reply, or the timeout if none arrives in
+     * time, runs on the executor. Requests still waiting when the session closes time out.
+     * <p>
+     * The default is for sessions that can't send requests: the request is refused, so the timeout runs on the
+     * executor at once.
+     *
+     * @param timeout no timeout if not positive.
+     * @return cancels the request, so a late reply is ignored.
+     */
+    default <T> Disposable request(String reqTopic, Object req, DisposingExecutor executor, Callback<T> callback, final Runnable onTimeout, long timeout, TimeUnit unit) {
+        final AtomicBoolean disposed = new AtomicBoolean(false);
+        if (onTimeout != null) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    if (!disposed.get()) {
+                        onTimeout.run();
+                    }
+                }
+            });
+        }
+        return new Disposable() {
+            public void dispose() {
+                disposed.set(true);
+            }
+        };
+    }
+
+    /**
+     * Publishes a frame pre-serialized with fixed headers, e.g. by {@link BufferedSerializer}. The message is
+     * serialized again if the session negotiated varint headers, or by sessions that can't send the frame as is.
+     */
+    default void publish(String topic, Object msg, byte[] data) {
+        publish(topic, msg);
+    }
+
+    /**
+     * Client messages on the topic are handed to the handler in place on the read thread instead of being
+     * deserialized and published to the session message channel. Register before the client publishes, e.g. from the
+     * new session callback.
+     * <p>
+     * The default is for sessions that always deserialize client messages and throws UnsupportedOperationException,
+     * as do the registerLong, registerDouble and registerInt defaults built on it.
+     */
+    default void registerFlyweight(String topic, FlyweightHandler handler) {
+        throw new UnsupportedOperationException("Session " + getSessionId() + " can't hand messages on " + topic + " to flyweight handlers");
+    }
+
+    /**
+     * Client messages on the topic carry a single big endian long and are handed to the callback on the read thread
+     * instead of the session message channel.
+     */
+    default void registerLong(String topic, LongCallback callback) {
+        registerFlyweight(topic, PrimitiveCodecs.longHandler(callback));
+    }
+
+    /**
+     * @see #registerLong(String, LongCallback)
+     */
+    default void registerDouble(String topic, DoubleCallback callback) {
+        registerFlyweight(topic, PrimitiveCodecs.doubleHandler(callback));
+    }
+
+    /**
+     * @see #registerLong(String, LongCallback)
+     */
+    default void registerInt(String topic, IntCallback callback) {
+        registerFlyweight(topic, PrimitiveCodecs.intHandler(callback));
+    }
+
+    /**
+     * @return the {@link org.jetlang.remote.core.Capabilities} negotiated with the client. Empty until the client's
+     * Hello has been answered, and always empty for clients that never send one.
+     */
+    default int getCapabilities() {
+        return 0;
+    }
+
+    /**
+     * @return compression counters for frames sent to and received from the client. Empty for sessions that never
+     * compress.
+     */
+    default CompressionStats getCompressionStats() {
+        return new CompressionStats();
+    }
 }
@@ -1,5 +1,8 @@
 package org.jetlang.remote.acceptor;
 
+import org.jetlang.remote.core.Capabilities;
+import org.jetlang.remote.core.CreditGate;
+
 public class JetlangSessionConfig {
 
     private int hbIntervalInMs = 2000;
@@ -7,6 +10,15 @@ public class JetlangSessionConfig {
     private int receiveBufferSize = 1024 * 512;
     private int sendBufferSize = 1024 * 512;
     private int readTimeoutInMs = 3000;
+    private int timerTickInMs = 10;
+    private boolean topicAliasing = false;
+    private boolean batchPublishing = false;
+    private boolean varIntHeaders = false;
+    private boolean compression = false;
+    private int compressionThreshold = 1024;
+    private boolean replyStreams = false;
+    private int creditWindow = 0;
+    private int maxHeldMessages = CreditGate.DEFAULT_MAX_HELD;
 
     public void setHeartbeatIntervalInMs(int ms) {
         this.hbIntervalInMs = ms;
@@ -47,4 +59,124 @@ public class JetlangSessionConfig {
     public void setReadTimeoutInMs(int readTimeoutInMs) {
         this.readTimeoutInMs = readTimeoutInMs;
     }
+
+    public int getTimerTickInMs() {
+        return timerTickInMs;
+    }
+
+    /**
+     * Resolution of the timer that sends heartbeats and checks read timeouts for all sessions on a fiber. Reads are
+     * stamped with the time of the last tick.
+     */
+    public void setTimerTickInMs(int timerTickInMs) {
+        this.timerTickInMs = timerTickInMs;
+    }
+
+    public boolean getTopicAliasing() {
+        return topicAliasing;
+    }
+
+    /**
+     * Replace topic strings with numeric aliases when the client asks for it in its Hello.
+     */
+    public void setTopicAliasing(boolean topicAliasing) {
+        this.topicAliasing = topicAliasing;
+    }
+
+    public boolean getBatchPublishing() {
+        return batchPublishing;
+    }
+
+    /**
+     * Pack published messages queued on the send fiber into batch frames, so a burst goes out in one write.
+     * Used when the client asks for it in its Hello.
+     */
+    public void setBatchPublishing(boolean batchPublishing) {
+        this.batchPublishing = batchPublishing;
+    }
+
+    public boolean getVarIntHeaders() {
+        return varIntHeaders;
+    }
+
+    /**
+     * Encode topic lengths, payload sizes and request ids as varints when the client asks for it in its Hello.
+     * Allows topics longer than 127 bytes and shrinks small frames.
+     */
+    public void setVarIntHeaders(boolean varIntHeaders) {
+        this.varIntHeaders = varIntHeaders;
+    }
+
+    public boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * Compress data, request and reply frames of at least the compression threshold. Used when the client asks for it
+     * in its Hello.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public boolean getReplyStreams() {
+        return replyStreams;
+    }
+
+    /**
+     * Send replies written to a {@link ReplyStream} part by part. Used when the client asks for it in its Hello.
+     * Otherwise the parts are collected and sent as one list.
+     */
+    public void setReplyStreams(boolean replyStreams) {
+        this.replyStreams = replyStreams;
+    }
+
+    public int getCreditWindow() {
+        return creditWindow;
+    }
+
+    /**
+     * Data messages a client may send before the acceptor grants more credit, 0 to disable. Used when the client asks
+     * for credit in its Hello.
+     */
+    public void setCreditWindow(int creditWindow) {
+        this.creditWindow = creditWindow;
+    }
+
+    public int getMaxHeldMessages() {
+        return maxHeldMessages;
+    }
+
+    /**
+     * Publishes held per session while the client grants no credit. Past this, NIO sessions apply the send buffer's
+     * {@link SlowConsumerPolicy}, and stream sessions are disconnected.
+     */
+    public void setMaxHeldMessages(int maxHeldMessages) {
+        this.maxHeldMessages = maxHeldMessages;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Smallest frame in bytes worth compressing. Smaller frames rarely shrink enough to pay for the CPU.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @return the {@link Capabilities} this acceptor agrees to when a client offers them.
+     */
+    public int getCapabilities() {
+        int capabilities = 0;
+        capabilities = Capabilities.set(capabilities, Capabilities.TOPIC_ALIASES, topicAliasing);
+        capabilities = Capabilities.set(capabilities, Capabilities.BATCH, batchPublishing);
+        capabilities = Capabilities.set(capabilities, Capabilities.VARINT_HEADERS, varIntHeaders);
+        capabilities = Capabilities.set(capabilities, Capabilities.COMPRESSION, compression);
+        capabilities = Capabilities.set(capabilities, Capabilities.REPLY_STREAMS, replyStreams);
+        capabilities = Capabilities.set(capabilities, Capabilities.CREDIT, creditWindow > 0);
+        return capabilities;
+    }
 }
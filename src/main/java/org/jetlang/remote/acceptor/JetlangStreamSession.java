@@ -1,10 +1,14 @@
 package org.jetlang.remote.acceptor;
 
 import org.jetlang.core.Disposable;
+import org.jetlang.core.Scheduler;
 import org.jetlang.fibers.Fiber;
+import org.jetlang.remote.core.Capabilities;
+import org.jetlang.remote.core.CreditGate;
 import org.jetlang.remote.core.ErrorHandler;
 import org.jetlang.remote.core.JetlangRemotingProtocol;
 import org.jetlang.remote.core.MsgTypes;
+import org.jetlang.remote.core.TopicTrie;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -19,7 +23,30 @@ public class JetlangStreamSession extends JetlangBaseSession implements JetlangR
     private final Fiber sendFiber;
     private final ErrorHandler errorHandler;
     private final Set<String> subscriptions = Collections.synchronizedSet(new HashSet<String>());
+    //guarded by itself.
+    private final TopicTrie<String> patterns = new TopicTrie<String>();
     private volatile boolean loggedOut;
+    private boolean batchPublishing;
+    //pre-serialized frames use fixed headers, so they are reserialized for varint sessions.
+    private boolean varIntHeaders;
+    private boolean batchFlushScheduled;
+    //send fiber only.
+    private final CreditGate credit = new CreditGate();
+    private final Runnable flushBatch = new Runnable() {
+        public void run() {
+            batchFlushScheduled = false;
+            try {
+                socket.flushBatch();
+            } catch (IOException e) {
+                handleDisconnect(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "JetlangStreamSession.flushBatch()";
+        }
+    };
 
     private volatile Runnable hbStopper = new Runnable() {
         public void run() {
@@ -33,6 +60,27 @@ public class JetlangStreamSession extends JetlangBaseSession implements JetlangR
         this.errorHandler = errorHandler;
     }
 
+    @Override
+    protected void ackHello(final int negotiated) {
+        Runnable r = new Runnable() {
+            public void run() {
+                try {
+                    socket.writeHello(MsgTypes.HelloAck, Capabilities.VERSION, negotiated);
+                    socket.setCapabilities(negotiated);
+                    socket.setCompression(compressionThreshold(negotiated), getCompressionStats());
+                    batchPublishing = Capabilities.has(negotiated, Capabilities.BATCH);
+                    varIntHeaders = Capabilities.has(negotiated, Capabilities.VARINT_HEADERS);
+                    if (Capabilities.has(negotiated, Capabilities.CREDIT)) {
+                        credit.enable();
+                    }
+                } catch (IOException e) {
+                    handleDisconnect(e);
+                }
+            }
+        };
+        sendFiber.execute(r);
+    }
+
     public void startHeartbeat(int interval, TimeUnit unit) {
         if (interval > 0) {
             Runnable send = new Runnable() {
@@ -70,6 +118,32 @@ public class JetlangStreamSession extends JetlangBaseSession implements JetlangR
         UnsubscribeRequest.publish(top);
     }
 
+    @Override
+    public void onPatternSubscriptionRequest(String pattern) {
+        TopicTrie.checkPattern(pattern);
+        synchronized (patterns) {
+            patterns.add(pattern, pattern);
+        }
+        PatternSubscriptionRequest.publish(pattern);
+    }
+
+    @Override
+    public void onPatternUnsubscribeRequest(String pattern) {
+        synchronized (patterns) {
+            patterns.remove(pattern, pattern);
+        }
+        PatternUnsubscribeRequest.publish(pattern);
+    }
+
+    private boolean isSubscribed(String topic) {
+        if (subscriptions.contains(topic)) {
+            return true;
+        }
+        synchronized (patterns) {
+            return !patterns.match(topic).isEmpty();
+        }
+    }
+
     private void write(final int byteToWrite) {
         Runnable r = new Runnable() {
             public void run() {
@@ -114,11 +188,15 @@ public class JetlangStreamSession extends JetlangBaseSession implements JetlangR
     public <T> void publish(final String topic, final T msg) {
         Runnable r = new Runnable() {
             public void run() {
-                if (subscriptions.contains(topic)) {
-                    try {
-                        socket.write(topic, msg);
-                    } catch (IOException e) {
-                        handleDisconnect(e);
+                if (isSubscribed(topic)) {
+                    if (credit.tryAcquire()) {
+                        writeData(topic, msg);
+                    } else {
+                        holdForCredit(new Runnable() {
+                            public void run() {
+                                writeData(topic, msg);
+                            }
+                        });
                     }
                 }
             }
@@ -130,16 +208,102 @@ public class JetlangStreamSession extends JetlangBaseSession implements JetlangR
         sendFiber.execute(r);
     }
 
+    private void writeData(String topic, Object msg) {
+        try {
+            if (batchPublishing) {
+                socket.writeToBatch(topic, msg);
+                if (!batchFlushScheduled) {
+                    batchFlushScheduled = true;
+                    sendFiber.execute(flushBatch);
+                }
+            } else {
+                socket.write(topic, msg);
+            }
+        } catch (IOException e) {
+            handleDisconnect(e);
+        }
+    }
+
+    /**
+     * Disconnects a client that leaves the held limit of publishes waiting for credit.
+     */
+    private void holdForCredit(Runnable write) {
+        if (!credit.hold(write)) {
+            final int held = credit.getHeldCount();
+            credit.clear();
+            handleDisconnect(new IOException("Client granted no credit for " + held + " held publishes"));
+        }
+    }
+
+    @Override
+    public void setMaxHeldMessages(int maxHeldMessages) {
+        credit.setMaxHeld(maxHeldMessages);
+    }
+
+    @Override
+    public void grantCredit(final int messages) {
+        Runnable creditRunner = new Runnable() {
+            public void run() {
+                try {
+                    socket.writeCredit(messages);
+                } catch (IOException e) {
+                    handleDisconnect(e);
+                }
+            }
+        };
+        sendFiber.execute(creditRunner);
+    }
+
+    @Override
+    public void onCredit(final int messages) {
+        Runnable r = new Runnable() {
+            public void run() {
+                credit.grant(messages);
+            }
+        };
+        sendFiber.execute(r);
+    }
+
+    @Override
+    public long getSendCredit() {
+        return credit.getCredit();
+    }
+
+    @Override
+    public int getHeldMessageCount() {
+        return credit.getHeldCount();
+    }
+
     @Override
     public void publish(final byte[] data) {
         Runnable r = new Runnable() {
             public void run() {
-                writeBytesOnSendFiberThread(data);
+                writeCreditedBytes(data);
             }
         };
         sendFiber.execute(r);
     }
 
+    /**
+     * Pre-serialized data frames take one credit each, like serialized publishes. A varint session can't read the
+     * fixed header of a raw frame, so it is disconnected rather than sent a corrupt stream.
+     */
+    private void writeCreditedBytes(final byte[] data) {
+        if (varIntHeaders) {
+            handleDisconnect(new IOException("Raw frame with fixed headers published to varint header session " + getSessionId()));
+            return;
+        }
+        if (credit.tryAcquire()) {
+            writeBytesOnSendFiberThread(data);
+        } else {
+            holdForCredit(new Runnable() {
+                public void run() {
+                    writeBytesOnSendFiberThread(data);
+                }
+            });
+        }
+    }
+
     private void writeBytesOnSendFiberThread(byte[] data) {
         try {
             socket.writeBytes(data);
@@ -162,19 +326,99 @@ public class JetlangStreamSession extends JetlangBaseSession implements JetlangR
         sendFiber.execute(replyRunner);
     }
 
-    public void onRequestReply(int reqId, String dataTopicVal, Object readObject) {
-        errorHandler.onException(new RuntimeException("Reply is not supported: " + dataTopicVal + " msg: " + readObject));
+    @Override
+    protected void replyChunk(final int reqId, final String reqTopic, final Object part) {
+        Runnable chunkRunner = new Runnable() {
+            public void run() {
+                try {
+                    socket.writeReplyChunk(reqId, reqTopic, part);
+                } catch (IOException e) {
+                    handleDisconnect(e);
+                }
+            }
+        };
+        sendFiber.execute(chunkRunner);
+    }
+
+    @Override
+    protected void replyEnd(final int reqId) {
+        Runnable endRunner = new Runnable() {
+            public void run() {
+                try {
+                    socket.writeReplyEnd(reqId);
+                } catch (IOException e) {
+                    handleDisconnect(e);
+                }
+            }
+        };
+        sendFiber.execute(endRunner);
+    }
+
+    @Override
+    protected void writeRequest(final int reqId, final String reqTopic, final Object req) {
+        Runnable requestRunner = new Runnable() {
+            public void run() {
+                try {
+                    socket.writeRequest(reqId, reqTopic, req);
+                } catch (IOException e) {
+                    handleDisconnect(e);
+                }
+            }
+        };
+        sendFiber.execute(requestRunner);
+    }
+
+    @Override
+    protected Scheduler getScheduler() {
+        return sendFiber;
+    }
+
+    @Override
+    protected void onUnhandledReply(int reqId, String dataTopicVal, Object readObject) {
+        errorHandler.onException(new RuntimeException("Reply to no pending request: " + dataTopicVal + " msg: " + readObject));
     }
 
     @Override
     public void publishIfSubscribed(String topic, final byte[] data) {
-        if (subscriptions.contains(topic)) {
+        if (isSubscribed(topic)) {
             Runnable r = new Runnable() {
                 public void run() {
-                    writeBytesOnSendFiberThread(data);
+                    writeCreditedBytes(data);
                 }
             };
             sendFiber.execute(r);
         }
     }
+
+    public void publishIfSubscribed(String topic, Object msg, byte[] data) {
+        if (isSubscribed(topic)) {
+            publish(topic, msg, data);
+        }
+    }
+
+    @Override
+    public void publish(final String topic, final Object msg, final byte[] data) {
+        Runnable r = new Runnable() {
+            public void run() {
+                if (!credit.tryAcquire()) {
+                    holdForCredit(new Runnable() {
+                        public void run() {
+                            writeData(topic, msg);
+                        }
+                    });
+                    return;
+                }
+                if (!varIntHeaders) {
+                    writeBytesOnSendFiberThread(data);
+                    return;
+                }
+                try {
+                    socket.write(topic, msg);
+                } catch (IOException e) {
+                    handleDisconnect(e);
+                }
+            }
+        };
+        sendFiber.execute(r);
+    }
 }
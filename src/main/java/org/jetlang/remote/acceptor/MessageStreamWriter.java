@@ -1,7 +1,10 @@
 package org.jetlang.remote.acceptor;
 
+import org.jetlang.remote.core.CompressionStats;
+
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.List;
 
 /**
  * User: mrettig
@@ -14,14 +17,51 @@ public interface MessageStreamWriter {
 
     void write(String topic, Object msg) throws IOException;
 
+    /**
+     * Appends the message to the pending batch. Nothing is sent until the batch fills or {@link #flushBatch()}
+     * is called. Any other write flushes the pending batch first.
+     */
+    void writeToBatch(String topic, Object msg) throws IOException;
+
+    void flushBatch() throws IOException;
+
     void writeRequest(int reqId, String reqTopic, Object req) throws IOException;
 
+    /**
+     * Writes a request per message, with consecutive ids from the first, and flushes once.
+     */
+    void writeRequests(int firstReqId, String reqTopic, List<?> reqs) throws IOException;
+
     void writeBytes(byte[] bytes) throws IOException;
 
     boolean tryClose();
 
     void writeReply(int reqId, String reqTopic, Object replyMsg) throws IOException;
 
+    /**
+     * Writes one part of a streamed reply. Only for peers that negotiated {@link org.jetlang.remote.core.Capabilities#REPLY_STREAMS}.
+     */
+    void writeReplyChunk(int reqId, String reqTopic, Object chunk) throws IOException;
+
+    void writeReplyEnd(int reqId) throws IOException;
+
+    /**
+     * Grants the peer more data messages. See {@link org.jetlang.remote.core.Capabilities#CREDIT}.
+     */
+    void writeCredit(int messages) throws IOException;
+
     void writeSubscription(int msgType, String subject, Charset charset) throws IOException;
 
+    /**
+     * Writes a {@link org.jetlang.remote.core.MsgTypes#Hello} or HelloAck frame.
+     */
+    void writeHello(int msgType, int version, int capabilities) throws IOException;
+
+    void setCapabilities(int capabilities);
+
+    /**
+     * @param threshold smallest frame to compress, or -1 to disable compression.
+     */
+    void setCompression(int threshold, CompressionStats stats);
+
 }
@@ -6,6 +6,7 @@ import org.jetlang.fibers.NioFiber;
 import org.jetlang.remote.core.JetlangRemotingProtocol;
 import org.jetlang.remote.core.ObjectByteReader;
 import org.jetlang.remote.core.ReadTimeoutEvent;
+import org.jetlang.remote.core.TimerWheel;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -13,6 +14,7 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
+import java.util.function.LongSupplier;
 
 public class NioJetlangChannelHandler implements NioChannelHandler {
 
@@ -20,13 +22,25 @@ public class NioJetlangChannelHandler implements NioChannelHandler {
     private final SocketChannel accept;
     private final JetlangMessageHandler session;
     private final Runnable onEnd;
+    private final LongSupplier clock;
     private JetlangRemotingProtocol.State nextCommand;
-    private long lastReadMs = System.currentTimeMillis();
+    private long lastReadMs;
 
     public NioJetlangChannelHandler(SocketChannel accept, JetlangMessageHandler session, ObjectByteReader reader, Runnable onEnd, Charset charset) {
+        this(accept, session, reader, onEnd, charset, TimerWheel::monotonicMs);
+    }
+
+    /**
+     * @param clock monotonic milliseconds stamping reads for the read timeout. A coarse clock saves a system call per
+     *              read.
+     */
+    public NioJetlangChannelHandler(SocketChannel accept, JetlangMessageHandler session, ObjectByteReader reader, Runnable onEnd, Charset charset, LongSupplier clock) {
         this.session = session;
+        this.clock = clock;
+        this.lastReadMs = clock.getAsLong();
         this.onEnd = onEnd;
-        this.protocol = new JetlangRemotingProtocol(session, reader, charset);
+        //codecs that read from a ByteBuffer take the payload straight from the direct receive buffer.
+        this.protocol = new JetlangRemotingProtocol(session, reader, charset, true);
         this.accept = accept;
         this.nextCommand = protocol.root;
     }
@@ -34,13 +48,15 @@ public class NioJetlangChannelHandler implements NioChannelHandler {
     public boolean onSelect(NioFiber nioFiber, NioControls controls, SelectionKey key) {
         try {
             while (true) {
-                //must get latest buffer b/c it may have been resized
-                final ByteBuffer buffer = protocol.buffer;
+                //must get latest buffer b/c it may have been resized or parked
+                final ByteBuffer buffer = protocol.unparkBuffer(nextCommand.getRequiredBytes());
                 final int e = this.accept.read(buffer);
                 switch (e) {
                     case -1:
                         return false;
                     case 0:
+                        //idle sessions hold no receive buffer between frames.
+                        protocol.parkBuffer();
                         return true;
                     default:
                         buffer.flip();
@@ -48,10 +64,8 @@ public class NioJetlangChannelHandler implements NioChannelHandler {
                             nextCommand = nextCommand.run();
                         }
                         buffer.compact();
-                        if (nextCommand.getRequiredBytes() > buffer.capacity()) {
-                            protocol.resizeBuffer(nextCommand.getRequiredBytes());
-                        }
-                        lastReadMs = System.currentTimeMillis();
+                        protocol.fitBuffer(nextCommand.getRequiredBytes());
+                        lastReadMs = clock.getAsLong();
                 }
             }
         } catch (IOException var6) {
@@ -73,6 +87,8 @@ public class NioJetlangChannelHandler implements NioChannelHandler {
             this.accept.close();
         } catch (IOException var2) {
             throw new RuntimeException(var2);
+        } finally {
+            protocol.releaseBuffer();
         }
     }
 
@@ -81,8 +97,12 @@ public class NioJetlangChannelHandler implements NioChannelHandler {
     }
 
     public void checkForReadTimeout(int readTimeoutInMs) {
-        if (System.currentTimeMillis() - lastReadMs > readTimeoutInMs) {
-            lastReadMs = System.currentTimeMillis();
+        checkForReadTimeout(readTimeoutInMs, clock.getAsLong());
+    }
+
+    public void checkForReadTimeout(int readTimeoutInMs, long nowMs) {
+        if (nowMs - lastReadMs > readTimeoutInMs) {
+            lastReadMs = nowMs;
             session.onReadTimeout(new ReadTimeoutEvent());
         }
     }
@@ -0,0 +1,83 @@
+package org.jetlang.remote.acceptor;
+
+import org.jetlang.fibers.NioControls;
+import org.jetlang.fibers.NioFiber;
+import org.jetlang.remote.core.Serializer;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads accepted channels across several reader fibers, so reads, protocol parsing, heartbeats and read timeouts
+ * no longer share the acceptor's selector thread. Each session stays on the fiber it was given.
+ */
+public class NioJetlangReaderPool implements NioAcceptorHandler.ClientFactory {
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        /**
+         * Picks the reader with the fewest open sessions, so readers refill evenly as long lived clients disconnect.
+         */
+        LEAST_LOADED
+    }
+
+    private final List<NioJetlangRemotingClientFactory> readers;
+    private final Balancing balancing;
+    private int position;
+
+    public NioJetlangReaderPool(List<NioJetlangRemotingClientFactory> readers, Balancing balancing) {
+        if (readers.isEmpty()) {
+            throw new IllegalArgumentException("At least one reader is required");
+        }
+        this.readers = new ArrayList<>(readers);
+        this.balancing = balancing;
+    }
+
+    /**
+     * Creates one factory per read fiber. The fibers are started and disposed by the caller.
+     */
+    public static NioJetlangReaderPool create(List<? extends NioFiber> readFibers, Serializer serializer, JetlangSessionConfig config,
+                                              NioJetlangRemotingClientFactory.Handler handler, NioJetlangSendFiberGroup sendFibers,
+                                              Charset charset, Balancing balancing) {
+        final List<NioJetlangRemotingClientFactory> readers = new ArrayList<>();
+        for (NioFiber readFiber : readFibers) {
+            readers.add(new NioJetlangRemotingClientFactory(serializer, config, handler, sendFibers, charset, readFiber));
+        }
+        return new NioJetlangReaderPool(readers, balancing);
+    }
+
+    @Override
+    public void onAccept(NioFiber fiber, NioControls controls, SelectionKey key, SocketChannel channel) {
+        next().onAccept(fiber, controls, key, channel);
+    }
+
+    private NioJetlangRemotingClientFactory next() {
+        if (balancing == Balancing.LEAST_LOADED) {
+            NioJetlangRemotingClientFactory least = readers.get(0);
+            for (int i = 1; i < readers.size(); i++) {
+                final NioJetlangRemotingClientFactory reader = readers.get(i);
+                if (reader.getSessionCount() < least.getSessionCount()) {
+                    least = reader;
+                }
+            }
+            return least;
+        }
+        final NioJetlangRemotingClientFactory reader = readers.get(position);
+        position = (position + 1) % readers.size();
+        return reader;
+    }
+
+    /**
+     * @return open sessions on each reader, in order.
+     */
+    public int[] getSessionCounts() {
+        final int[] counts = new int[readers.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = readers.get(i).getSessionCount();
+        }
+        return counts;
+    }
+}
@@ -10,15 +10,19 @@ import java.net.SocketException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NioJetlangRemotingClientFactory implements NioAcceptorHandler.ClientFactory {
 
     private final Serializer serializer;
     private final JetlangSessionConfig config;
     private final Handler handler;
-    private final NioJetlangSendFiber sendFiber;
+    private final NioJetlangSendFiberGroup sendFibers;
     private final Charset charset;
+    private final NioFiber readFiber;
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    //created on the fiber that runs the sessions, on first use.
+    private SessionTimers timers;
 
     public interface Handler {
         void onNewSession(JetlangNioSession session);
@@ -37,11 +41,34 @@ public class NioJetlangRemotingClientFactory implements NioAcceptorHandler.Clien
     }
 
     public NioJetlangRemotingClientFactory(Serializer serializer, JetlangSessionConfig config, Handler handler, NioJetlangSendFiber sendFiber, Charset charset) {
+        this(serializer, config, handler, new NioJetlangSendFiberGroup(sendFiber), charset);
+    }
+
+    /**
+     * Each accepted session is written by one shard of the group.
+     */
+    public NioJetlangRemotingClientFactory(Serializer serializer, JetlangSessionConfig config, Handler handler, NioJetlangSendFiberGroup sendFibers, Charset charset) {
+        this(serializer, config, handler, sendFibers, charset, null);
+    }
+
+    /**
+     * Accepted channels are handed to the read fiber, which then reads them and runs their heartbeats and read
+     * timeouts. New session callbacks run on the read fiber. A null read fiber keeps sessions on the acceptor's fiber.
+     */
+    public NioJetlangRemotingClientFactory(Serializer serializer, JetlangSessionConfig config, Handler handler, NioJetlangSendFiberGroup sendFibers, Charset charset, NioFiber readFiber) {
         this.serializer = serializer;
         this.config = config;
         this.handler = handler;
-        this.sendFiber = sendFiber;
+        this.sendFibers = sendFibers;
         this.charset = charset;
+        this.readFiber = readFiber;
+    }
+
+    /**
+     * @return open sessions read by this factory's fiber.
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
     }
 
     @Override
@@ -51,8 +78,21 @@ public class NioJetlangRemotingClientFactory implements NioAcceptorHandler.Clien
         } catch (SocketException e) {
             throw new RuntimeException(e);
         }
-        Hb hb = new Hb();
-        final JetlangNioSession session = new JetlangNioSession(fiber, channel, sendFiber, new Id(channel), new JetlangNioSession.ErrorHandler() {
+        sessionCount.incrementAndGet();
+        if (readFiber == null) {
+            startSession(fiber, controls, key, channel);
+        } else {
+            readFiber.execute((readControls) -> startSession(readFiber, readControls, key, channel));
+        }
+    }
+
+    private void startSession(NioFiber fiber, NioControls controls, SelectionKey key, SocketChannel channel) {
+        if (timers == null) {
+            timers = new SessionTimers(fiber, config);
+        }
+        final SessionTimers timers = this.timers;
+        final Disposable[] stopTimers = new Disposable[1];
+        final JetlangNioSession session = new JetlangNioSession(fiber, channel, sendFibers.nextShard(), new Id(channel), new JetlangNioSession.ErrorHandler() {
             @Override
             public void onUnhandledReplyMsg(int reqId, String dataTopicVal, Object readObject) {
                 handler.onUnhandledReplyMsg(key, channel, dataTopicVal, readObject);
@@ -68,16 +108,26 @@ public class NioJetlangRemotingClientFactory implements NioAcceptorHandler.Clien
                 handler.onHandlerException(failed);
             }
         });
+        session.setSupportedCapabilities(config.getCapabilities());
+        session.setCompressionThreshold(config.getCompressionThreshold());
+        session.setCreditWindow(config.getCreditWindow());
+        session.setMaxHeldMessages(config.getMaxHeldMessages());
         Runnable onClose = () -> {
-            hb.onClose();
+            sessionCount.decrementAndGet();
+            stopTimers[0].dispose();
             session.onClose(new SessionCloseEvent());
         };
-        final NioJetlangChannelHandler handler = new NioJetlangChannelHandler(channel, session, serializer.getReader(), onClose, charset);
+        final NioJetlangChannelHandler handler = new NioJetlangChannelHandler(channel, session, serializer.getReader(), onClose, charset, timers::now);
         this.handler.onNewSession(session);
-        hb.startHb(fiber, session, handler, config);
+        stopTimers[0] = timers.add(session, handler);
         controls.addHandler(handler);
     }
 
+    /**
+     * @deprecated sessions accepted by the factory share one {@link SessionTimers} wheel per fiber. Kept for callers
+     * that start heartbeats themselves; each instance runs its own wheel for one session. Use on the session's fiber.
+     */
+    @Deprecated
     public static class Hb {
 
         Disposable ds = () -> {
@@ -88,11 +138,7 @@ public class NioJetlangRemotingClientFactory implements NioAcceptorHandler.Clien
         }
 
         public void startHb(NioFiber fiber, JetlangNioSession handler, NioJetlangChannelHandler nioJetlangChannelHandler, JetlangSessionConfig config) {
-            Runnable runner = () -> {
-                handler.sendHb();
-                nioJetlangChannelHandler.checkForReadTimeout(config.getReadTimeoutInMs());
-            };
-            ds = fiber.scheduleWithFixedDelay(runner, config.getHeartbeatIntervalInMs(), config.getHeartbeatIntervalInMs(), TimeUnit.MILLISECONDS);
+            ds = new SessionTimers(fiber, config).add(handler, nioJetlangChannelHandler);
         }
     }
 
@@ -1,26 +1,45 @@
 package org.jetlang.remote.acceptor;
 
+import org.jetlang.core.Callback;
 import org.jetlang.fibers.Fiber;
 import org.jetlang.fibers.NioChannelHandler;
 import org.jetlang.fibers.NioControls;
 import org.jetlang.fibers.NioFiber;
 import org.jetlang.fibers.NioFiberImpl;
+import org.jetlang.remote.core.BatchEnvelope;
 import org.jetlang.remote.core.ByteArrayBuffer;
+import org.jetlang.remote.core.Capabilities;
+import org.jetlang.remote.core.CompressionStats;
+import org.jetlang.remote.core.CreditGate;
 import org.jetlang.remote.core.MsgTypes;
 import org.jetlang.remote.core.ObjectByteWriter;
+import org.jetlang.remote.core.SharedFrame;
 import org.jetlang.remote.core.SocketMessageStreamWriter;
+import org.jetlang.remote.core.TopicAliases;
+import org.jetlang.remote.core.TopicTrie;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class NioJetlangSendFiber {
 
@@ -28,45 +47,245 @@ public class NioJetlangSendFiber {
     private final Writer writer;
     private final SocketMessageStreamWriter stream;
     private final Buffer buffer;
-    private final List<ChannelState> sessions = new ArrayList<>();
+    //topic to subscribed sessions, so fan-out costs O(subscribers). arrays are replaced on change, so a publish can
+    //iterate one while a failed write unsubscribes the session.
+    private final Map<String, ChannelState[]> subscribers = new HashMap<>();
+    //sessions subscribed by pattern. lookups are cached per topic, so fan-out stays O(subscribers).
+    private final TopicTrie<ChannelState> patternSubscribers = new TopicTrie<>();
+    //alias ids are shared by all sessions so a frame only needs to be serialized once.
+    private final TopicAliases aliases;
+    //conflated topics and the key each message replaces by.
+    private final Map<String, Function<Object, ?>> conflation = new HashMap<>();
 
+    /**
+     * @param receiveFiber unused. A backed up session waits for its socket on the fiber that reads it, so writable
+     *                     events are selected together with its reads.
+     */
     public NioJetlangSendFiber(Fiber sendFiber, NioFiber receiveFiber, ObjectByteWriter objectByteWriter, Charset charset, NioFiberImpl.OnBuffer ob) {
         this.sendFiber = sendFiber;
-        this.buffer = new Buffer(receiveFiber, sendFiber, ob);
+        this.buffer = new Buffer(sendFiber, ob, this::writeConflated);
         this.writer = new Writer(buffer);
         this.stream = new SocketMessageStreamWriter(this.writer, charset, objectByteWriter);
+        this.aliases = new TopicAliases(charset);
     }
 
     public void onNewSession(ChannelState channel) {
-        sendFiber.execute(() -> sessions.add(channel));
+        sendFiber.execute(() -> {
+            channel.active = true;
+            if (buffer.coalescing && channel.pending == null) {
+                channel.pending = new PendingFrames();
+            }
+        });
+    }
+
+    /**
+     * Collects each session's frames while the send fiber drains its queue, then writes every dirty session once,
+     * with a gathering write when pre-serialized frames are queued. The wire format is unchanged. Applies to
+     * sessions registered afterwards.
+     */
+    public void setWriteCoalescing(boolean coalescing) {
+        sendFiber.execute(() -> buffer.coalescing = coalescing);
+    }
+
+    /**
+     * A session is written as soon as this many bytes are pending for it, coalesced or batched.
+     */
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        sendFiber.execute(() -> buffer.maxBatchBytes = maxBatchBytes);
+    }
+
+    /**
+     * How long pending frames may wait for more before they are written. Zero, the default, writes them once the
+     * frames already queued on the send fiber have run.
+     */
+    public void setMaxDelay(long maxDelay, TimeUnit unit) {
+        final long nanos = unit.toNanos(maxDelay);
+        sendFiber.execute(() -> buffer.maxDelayNanos = nanos);
+    }
+
+    /**
+     * Bounds the bytes buffered for a session whose socket doesn't keep up. A data frame that would take a session
+     * over the high watermark is handled by the policy until the buffer drains to the low watermark. Replies, credit,
+     * heartbeats and other control frames are always buffered, since the client can't recover from losing them.
+     * Unbounded by default.
+     */
+    public void setSendBufferLimits(int lowWatermark, int highWatermark, SlowConsumerPolicy policy) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("low watermark " + lowWatermark + " > high watermark " + highWatermark);
+        }
+        sendFiber.execute(() -> {
+            buffer.lowWatermark = lowWatermark;
+            buffer.highWatermark = highWatermark;
+            buffer.policy = policy;
+        });
+    }
+
+    /**
+     * While a session's socket is backed up, a message on the topic replaces the one still waiting for it rather
+     * than being buffered, so a slow subscriber gets the latest value once it catches up. Waiting messages are
+     * written after the bytes already buffered.
+     */
+    public void conflate(String topic) {
+        conflate(topic, msg -> null);
+    }
+
+    /**
+     * Conflates by a key taken from each message, so a slow session keeps the latest message for every key, in the
+     * order the keys first arrived. Messages published only as pre-serialized bytes are never conflated.
+     */
+    public void conflate(String topic, Function<Object, ?> key) {
+        sendFiber.execute(() -> conflation.put(topic, key));
+    }
+
+    public void setSendBufferEvents(Callback<SendBufferEvent> events) {
+        sendFiber.execute(() -> buffer.events = events);
+    }
+
+    public WriteStats getWriteStats() {
+        return buffer.stats;
+    }
+
+    /**
+     * Counts messages handed to sockets and the write calls that carried them. Only the send fiber updates them.
+     */
+    public static class WriteStats {
+        private volatile long messages;
+        private volatile long writes;
+
+        private void onMessage() {
+            messages++;
+        }
+
+        private void onWrite() {
+            writes++;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public double getMessagesPerWrite() {
+            final long w = writes;
+            return w == 0 ? 0 : (double) messages / w;
+        }
     }
 
     private class BulkPublish implements Runnable {
         private final String topic;
         private final Object object;
-        private int position = -1;
+        //one frame per header and compression variant, serialized on first use. see variant().
+        private final int[] starts = {-1, -1, -1, -1, -1, -1, -1, -1};
+        private final int[] ends = new int[8];
+        //threshold each variant was serialized with, and its length before compression or -1 if not attempted.
+        private final int[] thresholds = new int[8];
+        private final int[] originals = new int[8];
+        //copied from the staging buffer once per variant, for backed up sessions to queue by reference.
+        private final SharedFrame[] shared = new SharedFrame[8];
+        //resolved for the first aliasing session, so every aliasing session receives the same frame.
+        private TopicAliases.Alias alias;
+        private boolean aliasResolved;
 
         public BulkPublish(String topic, Object object) {
             this.topic = topic;
             this.object = object;
         }
 
+        private int variant(ChannelState channelState, boolean aliased) {
+            return (aliased ? 1 : 0) | (channelState.varIntHeaders ? 2 : 0) | (channelState.compressionThreshold >= 0 ? 4 : 0);
+        }
+
         @Override
         public void run() {
-            for (int i = 0; i < sessions.size(); i++) {
-                final ChannelState channelState = sessions.get(i);
-                if (channelState.subscriptions.contains(topic)) {
-                    set(channelState);
-                    try {
-                        if (position == -1) {
-                            position = stream.writeWithoutFlush(topic, object);
-                        }
-                        stream.setPositionAndFlush(position);
-                    } catch (IOException failed) {
-                        handleDisconnect(failed, channelState);
+            final ChannelState[] subscribed = subscribers.get(topic);
+            final List<ChannelState> matched = patternSubscribers.match(topic);
+            if (subscribed == null && matched.isEmpty()) {
+                return;
+            }
+            try {
+                if (subscribed != null) {
+                    for (ChannelState channelState : subscribed) {
+                        publish(channelState);
                     }
                 }
+                for (ChannelState channelState : matched) {
+                    if (!channelState.subscriptions.contains(topic)) {
+                        publish(channelState);
+                    }
+                }
+            } finally {
+                buffer.reset();
+                for (SharedFrame frame : shared) {
+                    if (frame != null) {
+                        frame.release();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Only sessions that negotiated aliasing take an id from the table.
+         */
+        private TopicAliases.Alias alias(ChannelState channelState) {
+            if (!channelState.topicAliasing) {
+                return null;
+            }
+            if (!aliasResolved) {
+                alias = aliases.get(topic);
+                aliasResolved = true;
             }
+            return alias != null && (channelState.varIntHeaders || !alias.requiresVarIntHeaders()) ? alias : null;
+        }
+
+        private void publish(ChannelState channelState) {
+            if (holdBack(channelState, topic, object)) {
+                return;
+            }
+            set(channelState);
+            try {
+                final TopicAliases.Alias alias = alias(channelState);
+                final boolean aliased = alias != null;
+                if (aliased) {
+                    declare(channelState, alias);
+                }
+                final int variant = variant(channelState, aliased);
+                if (starts[variant] == -1) {
+                    starts[variant] = buffer.position();
+                    ends[variant] = stream.writeWithoutFlush(topic, object);
+                    thresholds[variant] = channelState.compressionThreshold;
+                    originals[variant] = stream.getLastCompressionInput();
+                } else if (thresholds[variant] != channelState.compressionThreshold) {
+                    //compressing with another threshold, so the shared frame may not match. sent unshared.
+                    final int start = buffer.position();
+                    buffer.flushData(start, stream.writeWithoutFlush(topic, object));
+                    return;
+                } else if (originals[variant] != -1) {
+                    channelState.compressionStats.onShared(originals[variant], ends[variant] - starts[variant]);
+                }
+                if (channelState.buffer != null && channelState.pending == null) {
+                    if (shared[variant] == null) {
+                        shared[variant] = buffer.share(starts[variant], ends[variant]);
+                    }
+                    buffer.flushShared(channelState, shared[variant]);
+                } else {
+                    buffer.flushData(starts[variant], ends[variant]);
+                }
+            } catch (IOException failed) {
+                handleDisconnect(failed, channelState);
+            }
+        }
+
+        private int size() {
+            int size = 0;
+            for (int i = 0; i < starts.length; i++) {
+                if (starts[i] != -1) {
+                    size = Math.max(size, ends[i] - starts[i]);
+                }
+            }
+            return size;
         }
 
         @Override
@@ -74,7 +293,7 @@ public class NioJetlangSendFiber {
             return "BulkPublish{" +
                     "topic='" + topic + '\'' +
                     ", object=" + object.getClass() +
-                    ", size=" + position +
+                    ", size=" + size() +
                     '}';
         }
     }
@@ -89,6 +308,21 @@ public class NioJetlangSendFiber {
         private final NioFiber fiber;
         private BufferState buffer;
         private final Set<String> subscriptions = new HashSet<>();
+        private final Set<String> patterns = new HashSet<>();
+        private final BitSet declaredAliases = new BitSet();
+        private boolean topicAliasing;
+        private boolean varIntHeaders;
+        private int compressionThreshold = -1;
+        private CompressionStats compressionStats;
+        //latest message per conflation key, held while the socket is backed up or the client's credit is spent.
+        private LinkedHashMap<ConflationKey, Object> conflated;
+        private final CreditGate credit = new CreditGate();
+        //non-null when coalescing or batching. frames wait here until the send fiber drains.
+        private PendingFrames pending;
+        private boolean dirty;
+        //between onNewSession and removal. subscriptions outside that window are ignored.
+        private boolean active;
+        private volatile int bufferedBytes;
 
         public ChannelState(SocketChannel channel, NioJetlangRemotingClientFactory.Id id, NioFiber fiber) {
             this.channel = channel;
@@ -104,6 +338,44 @@ public class NioJetlangSendFiber {
             fiber.execute(this::close);
         }
 
+        /**
+         * @return bytes waiting for the socket to accept them.
+         */
+        public int getBufferedBytes() {
+            return bufferedBytes;
+        }
+
+        /**
+         * @return data messages the client accepts before publishes are held, or -1 without credit.
+         */
+        public long getSendCredit() {
+            return credit.getCredit();
+        }
+
+        /**
+         * @return publishes waiting for the client to grant credit.
+         */
+        public int getHeldMessageCount() {
+            return credit.getHeldCount();
+        }
+
+        /**
+         * Set before the session starts reading.
+         */
+        void setMaxHeldMessages(int maxHeldMessages) {
+            credit.setMaxHeld(maxHeldMessages);
+        }
+
+        private void clearBuffer() {
+            if (buffer != null) {
+                buffer.discard();
+            }
+            buffer = null;
+            bufferedBytes = 0;
+            conflated = null;
+            credit.clear();
+        }
+
         @Override
         public String toString() {
             return id.toString();
@@ -118,6 +390,131 @@ public class NioJetlangSendFiber {
         sendFiber.execute(() -> writeIntAsByte(channel, heartbeat));
     }
 
+    private static class ConflationKey {
+        private final String topic;
+        private final Object key;
+
+        ConflationKey(String topic, Object key) {
+            this.topic = topic;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConflationKey)) return false;
+            final ConflationKey other = (ConflationKey) o;
+            return topic.equals(other.topic) && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * topic.hashCode() + Objects.hashCode(key);
+        }
+    }
+
+    /**
+     * Takes one credit for a message that may be written now.
+     *
+     * @return true if the message replaced or joined the session's conflated messages, or waits for credit, instead
+     * of being written.
+     */
+    private boolean holdBack(ChannelState session, String topic, Object msg) {
+        final Function<Object, ?> key = conflation.get(topic);
+        if (key != null && session.buffer != null) {
+            conflate(session, topic, key, msg);
+            return true;
+        }
+        if (session.credit.tryAcquire()) {
+            return false;
+        }
+        if (key != null) {
+            conflate(session, topic, key, msg);
+        } else {
+            holdForCredit(session, () -> write(session, topic, msg));
+        }
+        return true;
+    }
+
+    /**
+     * Once the held limit is reached, the send buffer's policy decides. Held messages aren't serialized yet, so
+     * dropping them is safe even with topic aliases. A policy that would buffer disconnects instead, since held
+     * messages are bounded.
+     */
+    private void holdForCredit(ChannelState session, Runnable write) {
+        if (session.credit.hold(write)) {
+            return;
+        }
+        switch (buffer.policy.onHighWatermark(session, session.bufferedBytes, 0)) {
+            case DROP_NEWEST:
+                buffer.event(SendBufferEvent.Type.DROPPED, session, 0);
+                break;
+            case DROP_OLDEST:
+                session.credit.dropOldest();
+                session.credit.hold(write);
+                buffer.event(SendBufferEvent.Type.DROPPED, session, 0);
+                break;
+            default:
+                final int dropped = session.bufferedBytes;
+                session.clearBuffer();
+                session.closeOnNioFiber();
+                buffer.event(SendBufferEvent.Type.DISCONNECTED, session, dropped);
+        }
+    }
+
+    private void conflate(ChannelState session, String topic, Function<Object, ?> key, Object msg) {
+        if (session.conflated == null) {
+            session.conflated = new LinkedHashMap<>();
+        }
+        session.conflated.put(new ConflationKey(topic, key.apply(msg)), msg);
+    }
+
+    /**
+     * The client read some of the data messages it was sent. Writes held messages, then conflated ones, while the
+     * credit lasts.
+     */
+    public void addCredit(ChannelState session, int messages) {
+        sendFiber.execute(() -> {
+            if (session.active) {
+                session.credit.grant(messages);
+                if (session.buffer == null) {
+                    writeConflated(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called once the session's buffer has drained or the client grants credit. Stops early if the socket backs up
+     * again or the credit runs out, leaving the rest to conflate with newer messages.
+     */
+    private void writeConflated(ChannelState session) {
+        final LinkedHashMap<ConflationKey, Object> conflated = session.conflated;
+        if (conflated == null) {
+            return;
+        }
+        final Iterator<Map.Entry<ConflationKey, Object>> waiting = conflated.entrySet().iterator();
+        while (waiting.hasNext() && session.buffer == null && session.active && session.credit.tryAcquire()) {
+            final Map.Entry<ConflationKey, Object> next = waiting.next();
+            waiting.remove();
+            write(session, next.getKey().topic, next.getValue());
+        }
+        if (session.conflated == conflated && conflated.isEmpty()) {
+            session.conflated = null;
+        }
+    }
+
+    /**
+     * Writes a heartbeat to each session from one task.
+     */
+    public void sendHeartbeats(ChannelState[] sessions) {
+        sendFiber.execute(() -> {
+            for (ChannelState session : sessions) {
+                writeIntAsByte(session, MsgTypes.Heartbeat);
+            }
+        });
+    }
+
     private void writeIntAsByte(ChannelState channel, int heartbeat) {
         try {
             set(channel);
@@ -130,21 +527,122 @@ public class NioJetlangSendFiber {
     private void set(ChannelState channel) {
         writer.channel = channel;
         buffer.session = channel;
+        stream.setTopicAliases(channel.topicAliasing ? aliases : null, channel.declaredAliases);
+        stream.setVarIntHeaders(channel.varIntHeaders);
+        stream.setCompression(channel.compressionThreshold, channel.compressionStats);
+    }
+
+    /**
+     * Answers the client's Hello, then writes every later frame to the session with the negotiated capabilities.
+     * Batching packs frames sent while the send fiber drains its queue, so a burst is written to the socket once.
+     */
+    public void ackHello(ChannelState channel, int negotiated, int compressionThreshold, CompressionStats compressionStats) {
+        sendFiber.execute(() -> {
+            set(channel);
+            try {
+                stream.writeHello(MsgTypes.HelloAck, Capabilities.VERSION, negotiated);
+            } catch (IOException e) {
+                handleDisconnect(e, channel);
+                return;
+            }
+            channel.topicAliasing = Capabilities.has(negotiated, Capabilities.TOPIC_ALIASES);
+            channel.varIntHeaders = Capabilities.has(negotiated, Capabilities.VARINT_HEADERS);
+            channel.compressionThreshold = compressionThreshold;
+            channel.compressionStats = compressionStats;
+            if (Capabilities.has(negotiated, Capabilities.CREDIT)) {
+                channel.credit.enable();
+            }
+            if (Capabilities.has(negotiated, Capabilities.BATCH)) {
+                if (channel.pending == null) {
+                    channel.pending = new PendingFrames();
+                }
+                channel.pending.enableBatching();
+            }
+        });
+    }
+
+    private void declare(ChannelState channel, TopicAliases.Alias alias) {
+        if (!channel.declaredAliases.get(alias.getId())) {
+            buffer.writeBytes(alias.getDeclaration(), false);
+            channel.declaredAliases.set(alias.getId());
+        }
     }
 
     public void onSubscriptionRequest(String topic, ChannelState sc) {
-        sendFiber.execute(() -> sc.subscriptions.add(topic));
+        sendFiber.execute(() -> {
+            if (sc.active && sc.subscriptions.add(topic)) {
+                final ChannelState[] current = subscribers.get(topic);
+                if (current == null) {
+                    subscribers.put(topic, new ChannelState[]{sc});
+                } else {
+                    final ChannelState[] added = Arrays.copyOf(current, current.length + 1);
+                    added[current.length] = sc;
+                    subscribers.put(topic, added);
+                }
+            }
+        });
     }
 
     public void onUnsubscribeRequest(String topic, ChannelState sc) {
-        sendFiber.execute(() -> sc.subscriptions.remove(topic));
+        sendFiber.execute(() -> {
+            if (sc.subscriptions.remove(topic)) {
+                unindex(topic, sc);
+            }
+        });
+    }
+
+    /**
+     * Subscribes the session to every topic matching the pattern. See {@link TopicTrie} for the syntax.
+     */
+    public void onPatternSubscriptionRequest(String pattern, ChannelState sc) {
+        sendFiber.execute(() -> {
+            if (sc.active && sc.patterns.add(pattern)) {
+                patternSubscribers.add(pattern, sc);
+            }
+        });
+    }
+
+    public void onPatternUnsubscribeRequest(String pattern, ChannelState sc) {
+        sendFiber.execute(() -> {
+            if (sc.patterns.remove(pattern)) {
+                patternSubscribers.remove(pattern, sc);
+            }
+        });
+    }
+
+    private boolean isSubscribed(ChannelState sc, String topic) {
+        return sc.subscriptions.contains(topic) || (!sc.patterns.isEmpty() && patternSubscribers.match(topic).contains(sc));
+    }
+
+    private void unindex(String topic, ChannelState sc) {
+        final ChannelState[] current = subscribers.get(topic);
+        if (current == null) {
+            return;
+        }
+        if (current.length == 1) {
+            if (current[0] == sc) {
+                subscribers.remove(topic);
+            }
+            return;
+        }
+        final ChannelState[] removed = new ChannelState[current.length - 1];
+        int count = 0;
+        for (ChannelState channelState : current) {
+            if (channelState != sc) {
+                if (count == removed.length) {
+                    return;
+                }
+                removed[count++] = channelState;
+            }
+        }
+        subscribers.put(topic, removed);
     }
 
     public <T> void publish(ChannelState sc, String topic, T msg) {
         sendFiber.execute(new Runnable() {
             @Override
             public void run() {
-                if (sc.subscriptions.contains(topic)) {
+                if (isSubscribed(sc, topic) && !holdBack(sc, topic, msg)) {
                     write(sc, topic, msg);
                 }
             }
@@ -159,9 +657,13 @@ public class NioJetlangSendFiber {
     private <T> void write(ChannelState channel, String topic, T msg) {
         set(channel);
         try {
-            stream.write(topic, msg);
+            final int start = buffer.position();
+            final int end = stream.writeWithoutFlush(topic, msg);
+            buffer.flushData(start, end);
         } catch (IOException e) {
             handleDisconnect(e, channel);
+        } finally {
+            buffer.reset();
         }
     }
 
@@ -177,7 +679,7 @@ public class NioJetlangSendFiber {
 
     private void handleDisconnect(IOException e, ChannelState sc) {
         sc.safeCloseAndLog(e);
-        sc.buffer = null;
+        sc.clearBuffer();
         removeSubscriptions(sc);
     }
 
@@ -192,16 +694,92 @@ public class NioJetlangSendFiber {
         });
     }
 
+    public void replyChunk(ChannelState sc, int reqId, String replyTopic, Object part) {
+        sendFiber.execute(() -> {
+            set(sc);
+            try {
+                stream.writeReplyChunk(reqId, replyTopic, part);
+            } catch (IOException e) {
+                handleDisconnect(e, sc);
+            }
+        });
+    }
+
+    public void grantCredit(ChannelState sc, int messages) {
+        sendFiber.execute(() -> {
+            set(sc);
+            try {
+                stream.writeCredit(messages);
+            } catch (IOException e) {
+                handleDisconnect(e, sc);
+            }
+        });
+    }
+
+    public void replyEnd(ChannelState sc, int reqId) {
+        sendFiber.execute(() -> {
+            set(sc);
+            try {
+                stream.writeReplyEnd(reqId);
+            } catch (IOException e) {
+                handleDisconnect(e, sc);
+            }
+        });
+    }
+
+    public void request(ChannelState sc, int reqId, String reqTopic, Object req) {
+        sendFiber.execute(() -> {
+            set(sc);
+            try {
+                stream.writeRequest(reqId, reqTopic, req);
+            } catch (IOException e) {
+                handleDisconnect(e, sc);
+            }
+        });
+    }
+
     public void publishIfSubscribed(ChannelState sc, String topic, byte[] data) {
         sendFiber.execute(() -> {
-            if (sc.subscriptions.contains(topic)) {
-                writeBytes(sc, data);
+            if (isSubscribed(sc, topic)) {
+                writeCredited(sc, data);
+            }
+        });
+    }
+
+    /**
+     * Writes the frame pre-serialized with fixed headers, or serializes the message again for varint sessions.
+     */
+    public void publishFrame(ChannelState channel, String topic, Object msg, byte[] data) {
+        sendFiber.execute(() -> {
+            if (holdBack(channel, topic, msg)) {
+                return;
+            }
+            if (channel.varIntHeaders) {
+                write(channel, topic, msg);
+            } else {
+                writeBytes(channel, data);
             }
         });
     }
 
     public void publishBytes(ChannelState channel, byte[] data) {
-        sendFiber.execute(() -> writeBytes(channel, data));
+        sendFiber.execute(() -> writeCredited(channel, data));
+    }
+
+    /**
+     * Pre-serialized data frames take one credit each, like serialized publishes. A varint session can't read the
+     * fixed header of a raw frame, so it is disconnected rather than sent a corrupt stream.
+     */
+    private void writeCredited(ChannelState channel, byte[] data) {
+        if (channel.varIntHeaders) {
+            handleDisconnect(new IOException("Raw frame with fixed headers published to varint header session " + channel), channel);
+            return;
+        }
+        if (channel.credit.tryAcquire()) {
+            writeBytes(channel, data);
+        } else {
+            holdForCredit(channel, () -> writeBytes(channel, data));
+        }
     }
 
     public void handleLogout(ChannelState channel) {
@@ -213,38 +791,150 @@ public class NioJetlangSendFiber {
     }
 
     private void removeSubscriptions(ChannelState channel) {
+        channel.active = false;
+        for (String topic : channel.subscriptions) {
+            unindex(topic, channel);
+        }
         channel.subscriptions.clear();
-        sessions.remove(channel);
+        for (String pattern : channel.patterns) {
+            patternSubscribers.remove(pattern, channel);
+        }
+        channel.patterns.clear();
     }
 
     public void handleClose(ChannelState sc) {
         sendFiber.execute(() -> {
             removeSubscriptions(sc);
-            sc.buffer = null;
+            sc.clearBuffer();
         });
     }
 
     private static class BufferState implements NioChannelHandler {
 
         private final SocketChannel sc;
-        private final NioFiber fiber;
         private final Fiber sendFiber;
-        private final ChannelState buffered;
-        private final NioFiberImpl.OnBuffer onBuffer;
-        private ByteBuffer b;
+        private final ChannelState session;
+        private final Buffer owner;
+        //each chunk holds whole frames, except the head which may be partly written.
+        private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+        private boolean overHighWatermark;
 
-        public BufferState(SocketChannel sc, NioFiber fiber, Fiber sendFiber, ChannelState buffered, NioFiberImpl.OnBuffer onBuffer) {
+        public BufferState(SocketChannel sc, Fiber sendFiber, ChannelState session, Buffer owner) {
             this.sc = sc;
-            this.fiber = fiber;
             this.sendFiber = sendFiber;
-            this.buffered = buffered;
-            this.onBuffer = onBuffer;
-            fiber.addHandler(this);
+            this.session = session;
+            this.owner = owner;
+            register();
         }
 
-        public void add(ByteBuffer byteBuffer) {
-            b = NioFiberImpl.addTo(b, byteBuffer);
-            onBuffer.onBuffer(sc, b);
+        /**
+         * Waits for the socket to accept more, unless the channel closed meanwhile, e.g. a slow consumer was
+         * disconnected. Adding a closed channel fails on the nio thread and stops the fiber. Registered on the
+         * session's own fiber, which shares the selection key with the session's reads.
+         */
+        private void register() {
+            session.fiber.execute(controls -> {
+                if (sc.isOpen()) {
+                    controls.addHandler(this);
+                }
+            });
+        }
+
+        /**
+         * @param droppable false for frames the client can't do without and for bytes left over from a frame the
+         *                  socket took part of. Those are queued regardless of the limits and never dropped.
+         */
+        public void add(ByteBuffer byteBuffer, boolean droppable) {
+            final int size = byteBuffer.remaining();
+            if (droppable && session.bufferedBytes + size > owner.highWatermark && !onHighWatermark(size)) {
+                return;
+            }
+            final ByteBuffer copy = ByteBuffer.allocate(size);
+            copy.put(byteBuffer);
+            copy.flip();
+            queue(new Chunk(copy, null, droppable));
+        }
+
+        /**
+         * Queues a reference to the frame rather than a copy.
+         */
+        public void add(SharedFrame frame) {
+            final int size = frame.length();
+            if (session.bufferedBytes + size > owner.highWatermark && !onHighWatermark(size)) {
+                return;
+            }
+            queue(new Chunk(frame.view(), frame.retain(), true));
+        }
+
+        private void queue(Chunk chunk) {
+            chunks.add(chunk);
+            session.bufferedBytes += chunk.data.remaining();
+            owner.onBuffer.onBuffer(sc, chunk.data);
+        }
+
+        /**
+         * Releases the queued frames once the buffer is abandoned.
+         */
+        private void discard() {
+            for (Chunk chunk : chunks) {
+                chunk.release();
+            }
+            chunks.clear();
+        }
+
+        /**
+         * @return true if the frame should be buffered.
+         */
+        private boolean onHighWatermark(int size) {
+            if (!overHighWatermark) {
+                overHighWatermark = true;
+                owner.event(SendBufferEvent.Type.HIGH_WATERMARK, session, 0);
+            }
+            SlowConsumerPolicy.Action action = owner.policy.onHighWatermark(session, session.bufferedBytes, size);
+            if (session.topicAliasing && (action == SlowConsumerPolicy.Action.DROP_NEWEST || action == SlowConsumerPolicy.Action.DROP_OLDEST)) {
+                action = SlowConsumerPolicy.Action.DISCONNECT;
+            }
+            switch (action) {
+                case BUFFER:
+                    return true;
+                case DROP_NEWEST:
+                    owner.event(SendBufferEvent.Type.DROPPED, session, size);
+                    return false;
+                case DROP_OLDEST:
+                    dropOldest(size);
+                    return true;
+                default:
+                    disconnect(size);
+                    return false;
+            }
+        }
+
+        private void dropOldest(int incoming) {
+            int dropped = 0;
+            final Iterator<Chunk> oldest = chunks.iterator();
+            //the head may be partly written.
+            if (oldest.hasNext()) {
+                oldest.next();
+            }
+            while (session.bufferedBytes + incoming > owner.lowWatermark && oldest.hasNext()) {
+                final Chunk chunk = oldest.next();
+                if (!chunk.droppable) {
+                    continue;
+                }
+                final int size = chunk.data.remaining();
+                chunk.release();
+                oldest.remove();
+                session.bufferedBytes -= size;
+                dropped += size;
+            }
+            owner.event(SendBufferEvent.Type.DROPPED, session, dropped);
+        }
+
+        private void disconnect(int incoming) {
+            final int dropped = session.bufferedBytes + incoming;
+            session.clearBuffer();
+            session.closeOnNioFiber();
+            owner.event(SendBufferEvent.Type.DISCONNECTED, session, dropped);
         }
 
         @Override
@@ -254,17 +944,34 @@ public class NioJetlangSendFiber {
         }
 
         private void flush() {
+            if (session.buffer != this) {
+                return;
+            }
             try {
-                Buffer.tryWrite(sc, b);
-                if (b.remaining() > 0) {
-                    fiber.addHandler(this);
+                while (!chunks.isEmpty()) {
+                    final ByteBuffer head = chunks.peek().data;
+                    final int before = head.remaining();
+                    Buffer.tryWrite(sc, head, owner.stats);
+                    session.bufferedBytes -= before - head.remaining();
+                    if (head.hasRemaining()) {
+                        break;
+                    }
+                    chunks.poll().release();
+                }
+                if (overHighWatermark && session.bufferedBytes <= owner.lowWatermark) {
+                    overHighWatermark = false;
+                    owner.event(SendBufferEvent.Type.LOW_WATERMARK, session, 0);
+                }
+                if (!chunks.isEmpty()) {
+                    register();
                 } else {
-                    buffered.buffer = null;
-                    onBuffer.onBufferEnd(sc);
+                    session.buffer = null;
+                    owner.onBuffer.onBufferEnd(sc);
+                    owner.onDrained.onMessage(session);
                 }
             } catch (IOException e) {
-                buffered.buffer = null;
-                buffered.safeCloseAndLog(e);
+                session.clearBuffer();
+                session.safeCloseAndLog(e);
             }
         }
 
@@ -287,18 +994,132 @@ public class NioJetlangSendFiber {
         }
     }
 
+    private static class Chunk {
+        private final ByteBuffer data;
+        //null when the bytes were copied into the chunk.
+        private final SharedFrame frame;
+        //only data frames. false if any frame in the chunk is a reply, credit, heartbeat or other control frame.
+        private final boolean droppable;
+
+        Chunk(ByteBuffer data, SharedFrame frame, boolean droppable) {
+            this.data = data;
+            this.frame = frame;
+            this.droppable = droppable;
+        }
+
+        void release() {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    }
+
+    private static class PendingFrames extends ByteArrayBuffer {
+        //null unless the session negotiated batching.
+        private BatchEnvelope envelope;
+        //pre-serialized frames are written from their own arrays, each after the staged bytes before its index.
+        private final List<byte[]> external = new ArrayList<>();
+        private int[] externalAt = new int[8];
+        private int externalBytes;
+        //set once a frame other than data is pending, so the pending bytes can't be dropped.
+        private boolean control;
+
+        void enableBatching() {
+            if (envelope == null) {
+                envelope = new BatchEnvelope(this);
+            }
+        }
+
+        void appendData(byte[] frames, int offset, int length) {
+            if (envelope != null) {
+                envelope.append(frames, offset, length);
+            } else {
+                append(frames, offset, length);
+            }
+        }
+
+        void appendOther(byte[] frame, int offset, int length) {
+            //anything that isn't data ends the envelope, so frames keep their order.
+            closeEnvelope();
+            append(frame, offset, length);
+            control = true;
+        }
+
+        void appendExternal(byte[] frame, boolean data) {
+            closeEnvelope();
+            control |= !data;
+            if (external.size() == externalAt.length) {
+                externalAt = Arrays.copyOf(externalAt, externalAt.length * 2);
+            }
+            externalAt[external.size()] = position;
+            external.add(frame);
+            externalBytes += frame.length;
+        }
+
+        void closeEnvelope() {
+            if (envelope != null) {
+                envelope.close();
+            }
+        }
+
+        int size() {
+            return position + externalBytes;
+        }
+
+        /**
+         * Views are created here rather than as frames arrive because the staged array may be replaced as it grows.
+         */
+        ByteBuffer[] wrap() {
+            final ByteBuffer[] buffers = new ByteBuffer[external.size() * 2 + 1];
+            int count = 0;
+            int staged = 0;
+            for (int i = 0; i < external.size(); i++) {
+                if (externalAt[i] > staged) {
+                    buffers[count++] = ByteBuffer.wrap(buffer, staged, externalAt[i] - staged);
+                    staged = externalAt[i];
+                }
+                buffers[count++] = ByteBuffer.wrap(external.get(i));
+            }
+            if (position > staged) {
+                buffers[count++] = ByteBuffer.wrap(buffer, staged, position - staged);
+            }
+            return count == buffers.length ? buffers : Arrays.copyOf(buffers, count);
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (envelope != null) {
+                envelope.clear();
+            }
+            external.clear();
+            externalBytes = 0;
+            control = false;
+        }
+    }
+
     private static class Buffer extends ByteArrayBuffer {
 
-        private final NioFiber nioFiber;
         private final Fiber sendFiber;
         private final NioFiberImpl.OnBuffer onBuffer;
         public ChannelState session;
         private ByteBuffer byteBuffer;
+        private final List<ChannelState> dirty = new ArrayList<>();
+        private final Runnable flushDirty = this::flushDirty;
+        private final WriteStats stats = new WriteStats();
+        private boolean coalescing;
+        private int maxBatchBytes = BatchEnvelope.DEFAULT_MAX_BATCH_BYTES;
+        private long maxDelayNanos;
+        private int lowWatermark = Integer.MAX_VALUE;
+        private int highWatermark = Integer.MAX_VALUE;
+        private SlowConsumerPolicy policy = SlowConsumerPolicy.BUFFER;
+        private Callback<SendBufferEvent> events;
+        private final Callback<ChannelState> onDrained;
 
-        public Buffer(NioFiber nioFiber, Fiber sendFiber, NioFiberImpl.OnBuffer onBuffer) {
-            this.nioFiber = nioFiber;
+        public Buffer(Fiber sendFiber, NioFiberImpl.OnBuffer onBuffer, Callback<ChannelState> onDrained) {
             this.sendFiber = sendFiber;
             this.onBuffer = onBuffer;
+            this.onDrained = onDrained;
             this.byteBuffer = ByteBuffer.wrap(buffer);
         }
 
@@ -309,25 +1130,130 @@ public class NioJetlangSendFiber {
         }
 
         public void flush() {
-            byteBuffer.position(0);
-            byteBuffer.limit(position);
-            position = 0;
+            flush(0, position);
+            reset();
+        }
+
+        /**
+         * Writes a range of the buffer without changing the buffer position.
+         */
+        public void flush(int start, int end) {
+            write(slice(start, end));
+        }
+
+        /**
+         * Writes a range holding data frames. Batching sessions collect it in the open batch envelope.
+         */
+        public void flushData(int start, int end) {
+            stats.onMessage();
+            final PendingFrames pending = session.pending;
+            if (pending == null) {
+                write(session, slice(start, end), true);
+                return;
+            }
+            pending.appendData(buffer, start, end - start);
+            markDirty(session);
+        }
+
+        public SharedFrame share(int start, int end) {
+            return SharedFrame.copyOf(getPool(), buffer, start, end - start);
+        }
+
+        /**
+         * Queues a frame for a backed up session without copying it.
+         */
+        public void flushShared(ChannelState session, SharedFrame frame) {
+            stats.onMessage();
+            if (session.channel.isOpen()) {
+                session.buffer.add(frame);
+            } else {
+                session.clearBuffer();
+            }
+        }
+
+        private void event(SendBufferEvent.Type type, ChannelState session, int droppedBytes) {
+            if (events != null) {
+                events.onMessage(new SendBufferEvent(type, session, session.bufferedBytes, droppedBytes));
+            }
+        }
+
+        private ByteBuffer slice(int start, int end) {
+            byteBuffer.limit(end);
+            byteBuffer.position(start);
+            return byteBuffer;
+        }
+
+        private void write(ByteBuffer toWrite) {
+            stats.onMessage();
+            final PendingFrames pending = session.pending;
+            if (pending == null) {
+                write(session, toWrite, false);
+                return;
+            }
+            pending.appendOther(toWrite.array(), toWrite.arrayOffset() + toWrite.position(), toWrite.remaining());
+            markDirty(session);
+        }
+
+        private void markDirty(ChannelState session) {
+            if (!session.dirty) {
+                session.dirty = true;
+                if (dirty.isEmpty()) {
+                    if (maxDelayNanos > 0) {
+                        sendFiber.schedule(flushDirty, maxDelayNanos, TimeUnit.NANOSECONDS);
+                    } else {
+                        sendFiber.execute(flushDirty);
+                    }
+                }
+                dirty.add(session);
+            }
+            if (session.pending.size() >= maxBatchBytes) {
+                flushPending(session);
+            }
+        }
+
+        private void flushDirty() {
+            for (int i = 0; i < dirty.size(); i++) {
+                final ChannelState session = dirty.get(i);
+                session.dirty = false;
+                flushPending(session);
+            }
+            dirty.clear();
+        }
+
+        private void flushPending(ChannelState session) {
+            final PendingFrames pending = session.pending;
+            pending.closeEnvelope();
+            if (pending.size() > 0 && session.channel.isOpen()) {
+                final ByteBuffer[] frames = pending.wrap();
+                if (frames.length == 1) {
+                    write(session, frames[0], !pending.control);
+                } else {
+                    write(session, frames, !pending.control);
+                }
+            }
+            pending.reset();
+        }
+
+        /**
+         * @param droppable true if the bytes only hold data frames, which the slow consumer policy may drop.
+         */
+        private void write(ChannelState session, ByteBuffer toWrite, boolean droppable) {
             final SocketChannel channel = session.channel;
             BufferState st = session.buffer;
             if (st != null) {
                 if (channel.isOpen())
-                    st.add(byteBuffer);
+                    st.add(toWrite, droppable);
                 else
-                    session.buffer = null;
+                    session.clearBuffer();
                 return;
             }
             try {
-                tryWrite(channel, byteBuffer);
-                if (byteBuffer.remaining() > 0) {
+                tryWrite(channel, toWrite, stats);
+                if (toWrite.remaining() > 0) {
                     if (channel.isOpen()) {
-                        final BufferState value = new BufferState(channel, nioFiber, sendFiber, session, onBuffer);
-                        value.add(byteBuffer);
+                        final BufferState value = new BufferState(channel, sendFiber, session, this);
                         session.buffer = value;
+                        value.add(toWrite, false);
                     }
                 }
             } catch (IOException e) {
@@ -335,23 +1261,68 @@ public class NioJetlangSendFiber {
             }
         }
 
-        public static void tryWrite(WritableByteChannel channel, ByteBuffer byteBuffer) throws IOException {
+        private void write(ChannelState session, ByteBuffer[] toWrite, boolean droppable) {
+            final SocketChannel channel = session.channel;
+            //whatever the socket doesn't take from a fresh write may be part of a frame, so it is always kept.
+            final boolean required = session.buffer == null;
+            if (required) {
+                try {
+                    tryWrite(channel, toWrite);
+                } catch (IOException e) {
+                    session.safeCloseAndLog(e);
+                    return;
+                }
+            }
+            for (ByteBuffer remaining : toWrite) {
+                if (remaining.hasRemaining()) {
+                    if (!channel.isOpen()) {
+                        session.clearBuffer();
+                        return;
+                    }
+                    if (session.buffer == null) {
+                        session.buffer = new BufferState(channel, sendFiber, session, this);
+                    }
+                    session.buffer.add(remaining, droppable && !required);
+                }
+            }
+        }
+
+        public static void tryWrite(WritableByteChannel channel, ByteBuffer byteBuffer, WriteStats stats) throws IOException {
             int write;
             do {
                 write = channel.write(byteBuffer);
+                stats.onWrite();
             } while (write > 0 && byteBuffer.remaining() > 0);
         }
 
+        private void tryWrite(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+            long write;
+            do {
+                write = channel.write(buffers);
+                stats.onWrite();
+            } while (write > 0 && buffers[buffers.length - 1].hasRemaining());
+        }
+
         public void writeSingleByte(int byteToWrite) {
             buffer[position] = (byte) byteToWrite;
             position++;
             flush();
         }
 
-        public void writeBytes(byte[] bytes) {
-            System.arraycopy(bytes, 0, buffer, 0, bytes.length);
-            position += bytes.length;
-            flush();
+        /**
+         * @param data true for pre-serialized data frames, false for control frames such as alias declarations.
+         */
+        public void writeBytes(byte[] bytes, boolean data) {
+            stats.onMessage();
+            final PendingFrames pending = session.pending;
+            if (pending == null) {
+                //written straight from the array, so an alias declaration doesn't overwrite the bulk frame still staged
+                //at the start of the buffer, and frames larger than the buffer need no resize.
+                write(session, ByteBuffer.wrap(bytes), data);
+                return;
+            }
+            pending.appendExternal(bytes, data);
+            markDirty(session);
         }
     }
 
@@ -381,7 +1352,8 @@ public class NioJetlangSendFiber {
 
         @Override
         public void writeBytes(byte[] bytes) throws IOException {
-            buffer.writeBytes(bytes);
+            //only raw published frames are written from their own array.
+            buffer.writeBytes(bytes, true);
         }
 
         @Override
@@ -0,0 +1,81 @@
+package org.jetlang.remote.acceptor;
+
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.NioFiber;
+import org.jetlang.fibers.NioFiberImpl;
+import org.jetlang.fibers.ThreadFiber;
+import org.jetlang.remote.core.SerializerFactory;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads sessions across several send fibers, each with its own thread, buffer and serializer. A session stays on
+ * the shard it was assigned when accepted. Bulk publishes are queued on every shard, so the shards serialize and
+ * write in parallel, each at most once per header variant.
+ */
+public class NioJetlangSendFiberGroup {
+
+    private final NioJetlangSendFiber[] shards;
+    private final List<Fiber> fibers;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public NioJetlangSendFiberGroup(NioJetlangSendFiber... shards) {
+        this(shards, Collections.<Fiber>emptyList());
+    }
+
+    private NioJetlangSendFiberGroup(NioJetlangSendFiber[] shards, List<Fiber> fibers) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("At least one send fiber is required");
+        }
+        this.shards = shards;
+        this.fibers = fibers;
+    }
+
+    /**
+     * Creates shards on new threads. Each gets its own global writer from the factory. The group starts and
+     * disposes the threads.
+     */
+    public static NioJetlangSendFiberGroup create(int shardCount, NioFiber receiveFiber, SerializerFactory serializers, Charset charset, NioFiberImpl.OnBuffer ob) {
+        final NioJetlangSendFiber[] shards = new NioJetlangSendFiber[shardCount];
+        final List<Fiber> fibers = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            final ThreadFiber fiber = new ThreadFiber();
+            fibers.add(fiber);
+            shards[i] = new NioJetlangSendFiber(fiber, receiveFiber, serializers.createForGlobalWriter(), charset, ob);
+        }
+        return new NioJetlangSendFiberGroup(shards, fibers);
+    }
+
+    public void start() {
+        for (Fiber fiber : fibers) {
+            fiber.start();
+        }
+    }
+
+    public void dispose() {
+        for (Fiber fiber : fibers) {
+            fiber.dispose();
+        }
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    /**
+     * Assigns shards round robin, which keeps them evenly loaded. Called by the acceptor for each new session.
+     */
+    public NioJetlangSendFiber nextShard() {
+        return shards[Math.floorMod(next.getAndIncrement(), shards.length)];
+    }
+
+    public void publishToAllSubscribedClients(String topic, Object obj) {
+        for (NioJetlangSendFiber shard : shards) {
+            shard.publishToAllSubscribedClients(topic, obj);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.jetlang.remote.acceptor;
+
+import org.jetlang.core.Callback;
+import org.jetlang.core.Disposable;
+import org.jetlang.core.DisposingExecutor;
+import org.jetlang.core.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests sent to a client and waiting for its reply, keyed by request id. Replies arrive on the read thread and
+ * timeouts on the session's scheduler. Whichever removes the entry first wins, so each request ends exactly once.
+ */
+class PendingRequests {
+
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<Integer, Pending<?>> pending = new ConcurrentHashMap<>();
+
+    private static class Pending<T> {
+        private final DisposingExecutor executor;
+        private final Callback<T> callback;
+        private final Runnable onTimeout;
+        private volatile Disposable timeout;
+
+        Pending(DisposingExecutor executor, Callback<T> callback, Runnable onTimeout) {
+            this.executor = executor;
+            this.callback = callback;
+            this.onTimeout = onTimeout;
+        }
+
+        @SuppressWarnings("unchecked")
+        void onReply(Object reply) {
+            cancelTimeout();
+            executor.execute(() -> callback.onMessage((T) reply));
+        }
+
+        void onTimeout() {
+            cancelTimeout();
+            if (onTimeout != null) {
+                executor.execute(onTimeout);
+            }
+        }
+
+        void cancelTimeout() {
+            final Disposable t = timeout;
+            if (t != null) {
+                t.dispose();
+            }
+        }
+    }
+
+    /**
+     * @param timeout no timeout if not positive.
+     * @return the id to send the request under.
+     */
+    <T> int add(Scheduler scheduler, DisposingExecutor executor, Callback<T> callback, Runnable onTimeout, long timeout, TimeUnit unit) {
+        final int id = ids.incrementAndGet();
+        final Pending<T> request = new Pending<>(executor, callback, onTimeout);
+        pending.put(id, request);
+        if (timeout > 0) {
+            request.timeout = scheduler.schedule(() -> {
+                if (pending.remove(id, request)) {
+                    request.onTimeout();
+                }
+            }, timeout, unit);
+        }
+        return id;
+    }
+
+    /**
+     * @return false if no request is waiting under the id, e.g. it already timed out.
+     */
+    boolean onReply(int id, Object reply) {
+        final Pending<?> request = pending.remove(id);
+        if (request == null) {
+            return false;
+        }
+        request.onReply(reply);
+        return true;
+    }
+
+    void cancel(int id) {
+        final Pending<?> request = pending.remove(id);
+        if (request != null) {
+            request.cancelTimeout();
+        }
+    }
+
+    /**
+     * Times out every waiting request, since no reply can arrive once the session is closed.
+     */
+    void timeoutAll() {
+        final List<Integer> waiting = new ArrayList<>(pending.keySet());
+        for (Integer id : waiting) {
+            final Pending<?> request = pending.remove(id);
+            if (request != null) {
+                request.onTimeout();
+            }
+        }
+    }
+
+    int size() {
+        return pending.size();
+    }
+}
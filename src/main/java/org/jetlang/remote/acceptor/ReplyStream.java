@@ -0,0 +1,42 @@
+package org.jetlang.remote.acceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reply sent in parts, so a large result needn't be built or buffered as one message. Parts are sent as they are
+ * written and the requester receives them in order. Not thread safe.
+ */
+public interface ReplyStream {
+
+    void write(Object part);
+
+    /**
+     * Completes the reply. Nothing may be written afterwards.
+     */
+    void end();
+
+    /**
+     * For requesters that can't receive parts: collects them and replies with the list when the stream ends.
+     */
+    class Collected implements ReplyStream {
+        private final JetlangMessagePublisher session;
+        private final int reqId;
+        private final String reqTopic;
+        private final List<Object> parts = new ArrayList<Object>();
+
+        public Collected(JetlangMessagePublisher session, int reqId, String reqTopic) {
+            this.session = session;
+            this.reqId = reqId;
+            this.reqTopic = reqTopic;
+        }
+
+        public void write(Object part) {
+            parts.add(part);
+        }
+
+        public void end() {
+            session.reply(reqId, reqTopic, parts);
+        }
+    }
+}
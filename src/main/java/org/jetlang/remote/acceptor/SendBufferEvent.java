@@ -0,0 +1,58 @@
+package org.jetlang.remote.acceptor;
+
+/**
+ * Reported on the send fiber as a session's send buffer fills and drains.
+ */
+public class SendBufferEvent {
+
+    public enum Type {
+        HIGH_WATERMARK,
+        LOW_WATERMARK,
+        DROPPED,
+        DISCONNECTED
+    }
+
+    private final Type type;
+    private final NioJetlangSendFiber.ChannelState session;
+    private final int bufferedBytes;
+    private final int droppedBytes;
+
+    public SendBufferEvent(Type type, NioJetlangSendFiber.ChannelState session, int bufferedBytes, int droppedBytes) {
+        this.type = type;
+        this.session = session;
+        this.bufferedBytes = bufferedBytes;
+        this.droppedBytes = droppedBytes;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public NioJetlangSendFiber.ChannelState getSession() {
+        return session;
+    }
+
+    /**
+     * Bytes still buffered after the event.
+     */
+    public int getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * Bytes discarded by a drop or disconnect.
+     */
+    public int getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SendBufferEvent{" +
+                "type=" + type +
+                ", session=" + session +
+                ", bufferedBytes=" + bufferedBytes +
+                ", droppedBytes=" + droppedBytes +
+                '}';
+    }
+}
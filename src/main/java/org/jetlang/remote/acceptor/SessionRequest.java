@@ -29,4 +29,12 @@ public class SessionRequest {
         session.reply(reqId, replyTopic, replyMsg);
     }
 
+    /**
+     * Replies in parts instead. Requesters without reply stream support receive the parts as one list once the
+     * stream ends.
+     */
+    public ReplyStream replyStream() {
+        return session.replyStream(reqId, reqmsgTopic);
+    }
+
 }
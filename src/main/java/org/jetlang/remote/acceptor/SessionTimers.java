@@ -0,0 +1,93 @@
+package org.jetlang.remote.acceptor;
+
+import org.jetlang.core.Disposable;
+import org.jetlang.fibers.NioFiber;
+import org.jetlang.remote.core.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeats and read timeouts for every session on one fiber, driven by a single timer wheel instead of a scheduled
+ * task per session. Heartbeats that fall due on the same tick are handed to each send fiber as one batch. Only used
+ * on the fiber it was created for.
+ * <p>
+ * The wheel runs on the monotonic clock, so wall clock steps neither stall nor flood the timers, and ticks only while
+ * sessions are open.
+ */
+class SessionTimers {
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final NioFiber fiber;
+    private final JetlangSessionConfig config;
+    private final TimerWheel<Session> wheel;
+    private final Map<NioJetlangSendFiber, List<NioJetlangSendFiber.ChannelState>> due = new IdentityHashMap<>();
+    //runs while the wheel has sessions.
+    private Disposable ticker;
+
+    SessionTimers(NioFiber fiber, JetlangSessionConfig config) {
+        this.fiber = fiber;
+        this.config = config;
+        this.wheel = new TimerWheel<>(config.getTimerTickInMs(), WHEEL_SIZE, TimerWheel.monotonicMs());
+    }
+
+    private static class Session {
+        private final JetlangNioSession session;
+        private final NioJetlangChannelHandler handler;
+        private TimerWheel.Timeout<Session> timeout;
+
+        Session(JetlangNioSession session, NioJetlangChannelHandler handler) {
+            this.session = session;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * @return cancels the session's timers.
+     */
+    Disposable add(JetlangNioSession session, NioJetlangChannelHandler handler) {
+        if (ticker == null) {
+            //the clock stood still while idle.
+            wheel.advance(TimerWheel.monotonicMs(), this::onTimer);
+            final long tickMs = wheel.getTickMs();
+            ticker = fiber.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        }
+        final Session timers = new Session(session, handler);
+        timers.timeout = wheel.schedule(timers, config.getHeartbeatIntervalInMs());
+        return timers.timeout::cancel;
+    }
+
+    /**
+     * @return the monotonic time of the last tick, for stamping reads without reading the system clock.
+     */
+    long now() {
+        //the wheel's clock is stale while it is idle.
+        return ticker != null ? wheel.now() : TimerWheel.monotonicMs();
+    }
+
+    private void tick() {
+        wheel.advance(TimerWheel.monotonicMs(), this::onTimer);
+        for (Map.Entry<NioJetlangSendFiber, List<NioJetlangSendFiber.ChannelState>> batch : due.entrySet()) {
+            final List<NioJetlangSendFiber.ChannelState> sessions = batch.getValue();
+            if (!sessions.isEmpty()) {
+                batch.getKey().sendHeartbeats(sessions.toArray(new NioJetlangSendFiber.ChannelState[sessions.size()]));
+                sessions.clear();
+            }
+        }
+        //a tick already queued when it was disposed may still run once.
+        if (wheel.size() == 0 && ticker != null) {
+            ticker.dispose();
+            ticker = null;
+        }
+    }
+
+    private void onTimer(Session timers) {
+        wheel.reschedule(timers.timeout, config.getHeartbeatIntervalInMs());
+        due.computeIfAbsent(timers.session.getSendFiber(), sendFiber -> new ArrayList<>()).add(timers.session.getChannelState());
+        timers.handler.checkForReadTimeout(config.getReadTimeoutInMs(), wheel.now());
+    }
+}
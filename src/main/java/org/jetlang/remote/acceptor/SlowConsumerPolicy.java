@@ -0,0 +1,33 @@
+package org.jetlang.remote.acceptor;
+
+/**
+ * Decides what happens to a data frame that would take a session's send buffer over the high watermark. Called on the
+ * send fiber for every such frame until the buffer drains below the low watermark. Replies, credit, heartbeats and
+ * other control frames are buffered regardless and never dropped.
+ * <p>
+ * Dropping would lose topic alias declarations that later frames depend on, so sessions using topic aliases are
+ * disconnected instead.
+ */
+public interface SlowConsumerPolicy {
+
+    enum Action {
+        /**
+         * Buffers the frame anyway.
+         */
+        BUFFER,
+        DISCONNECT,
+        DROP_NEWEST,
+        /**
+         * Drops buffered data frames, oldest first, until the new frame fits under the low watermark. Frames already
+         * partly written, and buffered bytes that include a control frame, are kept.
+         */
+        DROP_OLDEST
+    }
+
+    SlowConsumerPolicy BUFFER = (session, bufferedBytes, frameBytes) -> Action.BUFFER;
+    SlowConsumerPolicy DISCONNECT = (session, bufferedBytes, frameBytes) -> Action.DISCONNECT;
+    SlowConsumerPolicy DROP_NEWEST = (session, bufferedBytes, frameBytes) -> Action.DROP_NEWEST;
+    SlowConsumerPolicy DROP_OLDEST = (session, bufferedBytes, frameBytes) -> Action.DROP_OLDEST;
+
+    Action onHighWatermark(NioJetlangSendFiber.ChannelState session, int bufferedBytes, int frameBytes);
+}
@@ -5,9 +5,22 @@ import org.jetlang.channels.Subscriber;
 import org.jetlang.core.Callback;
 import org.jetlang.core.Disposable;
 import org.jetlang.core.DisposingExecutor;
+import org.jetlang.core.SynchronousDisposingExecutor;
+import org.jetlang.remote.core.DoubleCallback;
+import org.jetlang.remote.core.FlyweightHandler;
+import org.jetlang.remote.core.IntCallback;
+import org.jetlang.remote.core.LongCallback;
+import org.jetlang.remote.core.PrimitiveCodecs;
 import org.jetlang.remote.core.ReadTimeoutEvent;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
  * User: mrettig
@@ -30,6 +43,39 @@ public interface JetlangClient {
 
     <T> Disposable subscribe(String topic, DisposingExecutor clientFiber, Callback<T> cb);
 
+    /**
+     * Subscribes to the topic and hands each message to the handler in place on the read thread, without
+     * deserializing it. Other subscribers to the same topic receive nothing while the handler is registered.
+     * <p>
+     * The default is for clients that always deserialize messages and throws UnsupportedOperationException, as do the
+     * subscribeLong, subscribeDouble and subscribeInt defaults built on it.
+     */
+    default Disposable subscribeFlyweight(String topic, FlyweightHandler handler) {
+        throw new UnsupportedOperationException("Client can't hand messages on " + topic + " to flyweight handlers");
+    }
+
+    /**
+     * Flyweight subscription for topics carrying a single big endian long, e.g. written by
+     * {@link PrimitiveCodecs.LongCodec}. The callback runs on the read thread.
+     */
+    default Disposable subscribeLong(String topic, LongCallback callback) {
+        return subscribeFlyweight(topic, PrimitiveCodecs.longHandler(callback));
+    }
+
+    /**
+     * @see #subscribeLong(String, LongCallback)
+     */
+    default Disposable subscribeDouble(String topic, DoubleCallback callback) {
+        return subscribeFlyweight(topic, PrimitiveCodecs.doubleHandler(callback));
+    }
+
+    /**
+     * @see #subscribeLong(String, LongCallback)
+     */
+    default Disposable subscribeInt(String topic, IntCallback callback) {
+        return subscribeFlyweight(topic, PrimitiveCodecs.intHandler(callback));
+    }
+
     void start();
 
     LogoutResult close(boolean sendLogoutIfStillConnected);
@@ -42,5 +88,92 @@ public interface JetlangClient {
                            int timeout,
                            TimeUnit timeUnit);
 
+    /**
+     * Request answered by a {@link org.jetlang.remote.acceptor.ReplyStream}. Each part runs the callback on the
+     * executor, in order, followed by onEnd. A reply sent in one piece arrives as a single part. The timeout covers
+     * the whole stream.
+     * <p>
+     * Needs {@link JetlangClientConfig#setReplyStreams}, or this throws IllegalStateException. If the acceptor doesn't
+     * agree to reply streams, the request isn't sent and the timeout handler runs at once.
+     * <p>
+     * The default is for clients without reply streams and throws UnsupportedOperationException.
+     */
+    default <T> Disposable requestStream(String reqTopic,
+                                         Object req,
+                                         DisposingExecutor executor,
+                                         Callback<T> onPart,
+                                         Runnable onEnd,
+                                         Callback<TimeoutControls> timeoutRunnable,
+                                         int timeout,
+                                         TimeUnit timeUnit) {
+        throw new UnsupportedOperationException("Client can't receive reply streams for " + reqTopic);
+    }
+
+    /**
+     * Request whose future completes in place on the read thread, so a reply needs no hop through a fiber. Keep
+     * dependent stages short or move them to an executor. Fails with a TimeoutException if no reply arrives in time,
+     * or an IOException if the client is not connected. Cancelling the future disposes the request.
+     *
+     * @param timeout no timeout if not positive.
+     */
+    default <T> CompletableFuture<T> requestAsync(String reqTopic, Object req, long timeout, TimeUnit timeUnit) {
+        return requestAsync(reqTopic, req, null, timeout, timeUnit);
+    }
+
+    /**
+     * @param executor completes the future, or null for the read thread.
+     * @see #requestAsync(String, Object, long, TimeUnit)
+     */
+    default <T> CompletableFuture<T> requestAsync(String reqTopic, Object req, Executor executor, long timeout, TimeUnit timeUnit) {
+        return this.<T>requestAll(reqTopic, Collections.singletonList(req), executor, timeout, timeUnit).get(0);
+    }
+
+    /**
+     * Pipelines a request per message, written together in one flush. The futures are in message order. The default
+     * sends each message with {@link #request}, so they aren't written in one flush.
+     *
+     * @param executor completes the futures, or null for the read thread.
+     * @see #requestAsync(String, Object, long, TimeUnit)
+     */
+    default <T> List<CompletableFuture<T>> requestAll(final String reqTopic, List<?> reqs, Executor executor, long timeout, TimeUnit timeUnit) {
+        final Executor completion = executor != null ? executor : new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        final int timeoutMs = timeout > 0 ? (int) Math.min(Integer.MAX_VALUE, timeUnit.toMillis(timeout)) : 0;
+        final List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(reqs.size());
+        for (Object req : reqs) {
+            final CompletableFuture<T> future = new CompletableFuture<T>();
+            Callback<T> onReply = new Callback<T>() {
+                public void onMessage(final T reply) {
+                    completion.execute(new Runnable() {
+                        public void run() {
+                            future.complete(reply);
+                        }
+                    });
+                }
+            };
+            Callback<TimeoutControls> onTimeout = new Callback<TimeoutControls>() {
+                public void onMessage(TimeoutControls controls) {
+                    controls.cancelRequest();
+                    completion.execute(new Runnable() {
+                        public void run() {
+                            future.completeExceptionally(new TimeoutException("No reply to " + reqTopic + " request"));
+                        }
+                    });
+                }
+            };
+            final Disposable pending = request(reqTopic, req, new SynchronousDisposingExecutor(), onReply, onTimeout, timeoutMs, TimeUnit.MILLISECONDS);
+            future.whenComplete(new BiConsumer<T, Throwable>() {
+                public void accept(T reply, Throwable failed) {
+                    pending.dispose();
+                }
+            });
+            futures.add(future);
+        }
+        return futures;
+    }
+
     void execOnSendThread(Callback<SocketWriter> cb);
 }
@@ -1,5 +1,8 @@
 package org.jetlang.remote.client;
 
+import org.jetlang.remote.core.Capabilities;
+import org.jetlang.remote.core.CreditGate;
+
 import java.util.concurrent.TimeUnit;
 
 public class JetlangClientConfig {
@@ -8,6 +11,17 @@ public class JetlangClientConfig {
     private long reconnectDelayInMs = 2000;
     private long logoutTimeout = 60;
     private TimeUnit logoutTimeoutUnit = TimeUnit.SECONDS;
+    private boolean topicAliasing = false;
+    private boolean batchPublishing = false;
+    private boolean varIntHeaders = false;
+    private boolean compression = false;
+    private int compressionThreshold = 1024;
+    private boolean replyStreams = false;
+    private int creditWindow = 0;
+    private int maxHeldMessages = CreditGate.DEFAULT_MAX_HELD;
+    private int requestCapacity = 1024;
+    private int requestTimerTickInMs = 10;
+    private int helloAckTimeoutInMs = 5000;
 
     public void setHeartbeatIntervalInMs(int ms) {
         this.hbIntervalInMs = ms;
@@ -48,4 +62,148 @@ public class JetlangClientConfig {
     public void setLogoutTimeoutUnit(TimeUnit logoutTimeoutUnit) {
         this.logoutTimeoutUnit = logoutTimeoutUnit;
     }
+
+    public boolean getTopicAliasing() {
+        return topicAliasing;
+    }
+
+    /**
+     * Replace topic strings with numeric aliases. Offered in the Hello and used once the acceptor agrees.
+     */
+    public void setTopicAliasing(boolean topicAliasing) {
+        this.topicAliasing = topicAliasing;
+    }
+
+    public boolean getBatchPublishing() {
+        return batchPublishing;
+    }
+
+    /**
+     * Pack published messages queued on the send fiber into batch frames, so a burst goes out in one write.
+     * Offered in the Hello and used once the acceptor agrees.
+     */
+    public void setBatchPublishing(boolean batchPublishing) {
+        this.batchPublishing = batchPublishing;
+    }
+
+    public boolean getVarIntHeaders() {
+        return varIntHeaders;
+    }
+
+    /**
+     * Encode topic lengths, payload sizes and request ids as varints. Allows topics longer than 127 bytes and
+     * shrinks small frames. Offered in the Hello and used once the acceptor agrees.
+     */
+    public void setVarIntHeaders(boolean varIntHeaders) {
+        this.varIntHeaders = varIntHeaders;
+    }
+
+    public boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * Compress data, request and reply frames of at least the compression threshold. Used when the acceptor agrees to
+     * the offer in the Hello.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public boolean getReplyStreams() {
+        return replyStreams;
+    }
+
+    /**
+     * Stream replies sent in parts through {@link org.jetlang.remote.acceptor.ReplyStream}. Offered in the Hello and
+     * used once the acceptor agrees. Required for {@link JetlangClient#requestStream}. Otherwise streamed replies
+     * arrive as one list.
+     */
+    public void setReplyStreams(boolean replyStreams) {
+        this.replyStreams = replyStreams;
+    }
+
+    public int getCreditWindow() {
+        return creditWindow;
+    }
+
+    /**
+     * Data messages the acceptor may send before the client grants more credit, 0 to disable. Offered in the Hello
+     * and used once the acceptor agrees.
+     */
+    public void setCreditWindow(int creditWindow) {
+        this.creditWindow = creditWindow;
+    }
+
+    public int getMaxHeldMessages() {
+        return maxHeldMessages;
+    }
+
+    /**
+     * Publishes held while the acceptor grants no credit. Past this, publishes are dropped as dead messages.
+     */
+    public void setMaxHeldMessages(int maxHeldMessages) {
+        this.maxHeldMessages = maxHeldMessages;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Smallest frame in bytes worth compressing. Smaller frames rarely shrink enough to pay for the CPU.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getRequestCapacity() {
+        return requestCapacity;
+    }
+
+    /**
+     * Pending requests the client sizes its request table for. The table grows past this, at the cost of a rehash.
+     */
+    public void setRequestCapacity(int requestCapacity) {
+        this.requestCapacity = requestCapacity;
+    }
+
+    public int getRequestTimerTickInMs() {
+        return requestTimerTickInMs;
+    }
+
+    /**
+     * Resolution of request timeouts. Timeouts fire up to one tick late.
+     */
+    public void setRequestTimerTickInMs(int requestTimerTickInMs) {
+        this.requestTimerTickInMs = requestTimerTickInMs;
+    }
+
+    public int getHelloAckTimeoutInMs() {
+        return helloAckTimeoutInMs;
+    }
+
+    /**
+     * How long a connection that offered capabilities holds back subscriptions and stream requests for the
+     * acceptor's HelloAck. Past this the connection continues without capabilities, as it would with an acceptor that
+     * predates the Hello. Such acceptors may misread the Hello itself, so upgrade acceptors before offering
+     * capabilities.
+     */
+    public void setHelloAckTimeoutInMs(int helloAckTimeoutInMs) {
+        this.helloAckTimeoutInMs = helloAckTimeoutInMs;
+    }
+
+    /**
+     * @return the {@link Capabilities} offered in the Hello. Nothing is offered, and no Hello is sent, when empty.
+     */
+    public int getCapabilities() {
+        int capabilities = 0;
+        capabilities = Capabilities.set(capabilities, Capabilities.TOPIC_ALIASES, topicAliasing);
+        capabilities = Capabilities.set(capabilities, Capabilities.BATCH, batchPublishing);
+        capabilities = Capabilities.set(capabilities, Capabilities.VARINT_HEADERS, varIntHeaders);
+        capabilities = Capabilities.set(capabilities, Capabilities.COMPRESSION, compression);
+        capabilities = Capabilities.set(capabilities, Capabilities.REPLY_STREAMS, replyStreams);
+        capabilities = Capabilities.set(capabilities, Capabilities.CREDIT, creditWindow > 0);
+        return capabilities;
+    }
 }
@@ -8,10 +8,20 @@ import org.jetlang.channels.Subscriber;
 import org.jetlang.core.Callback;
 import org.jetlang.core.Disposable;
 import org.jetlang.core.DisposingExecutor;
+import org.jetlang.core.SynchronousDisposingExecutor;
 import org.jetlang.fibers.Fiber;
+import org.jetlang.remote.acceptor.JetlangMessagePublisher;
 import org.jetlang.remote.acceptor.MessageStreamWriter;
+import org.jetlang.remote.acceptor.SessionMessage;
+import org.jetlang.remote.acceptor.SessionRequest;
+import org.jetlang.remote.core.Capabilities;
 import org.jetlang.remote.core.CloseableChannel;
+import org.jetlang.remote.core.CompressionStats;
+import org.jetlang.remote.core.CreditGate;
+import org.jetlang.remote.core.ConcurrentIntTable;
 import org.jetlang.remote.core.ErrorHandler;
+import org.jetlang.remote.core.FlyweightHandler;
+import org.jetlang.remote.core.FlyweightHandlers;
 import org.jetlang.remote.core.HeartbeatEvent;
 import org.jetlang.remote.core.JetlangRemotingInputStream;
 import org.jetlang.remote.core.JetlangRemotingProtocol;
@@ -20,25 +30,39 @@ import org.jetlang.remote.core.ReadTimeoutEvent;
 import org.jetlang.remote.core.Serializer;
 import org.jetlang.remote.core.SocketMessageStreamWriter;
 import org.jetlang.remote.core.TcpSocket;
+import org.jetlang.remote.core.TimerWheel;
+import org.jetlang.remote.core.TopicTrie;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  */
 public class JetlangTcpClient implements JetlangClient {
 
     private MessageStreamWriter socket;
+    //negotiated for the current connection. changed on the send fiber.
+    private volatile int capabilities;
+    //subscriptions wait for the HelloAck, so topics that need the negotiated headers can be subscribed.
+    private boolean helloPending;
+    //stream requests wait for the HelloAck too, to learn whether the acceptor streams replies.
+    private final List<Runnable> awaitingHelloAck = new ArrayList<Runnable>();
+    private final CompressionStats compressionStats = new CompressionStats();
     private final Fiber sendFiber;
     private final JetlangClientConfig config;
     private final Serializer ser;
@@ -48,6 +72,9 @@ public class JetlangTcpClient implements JetlangClient {
     private Disposable pendingConnect;
     private final CloseableChannel.Group channelsToClose = new CloseableChannel.Group();
     private final Map<String, RemoteSubscription> remoteSubscriptions = new LinkedHashMap<String, RemoteSubscription>();
+    //guarded by remoteSubscriptions, like the pattern index.
+    private final Map<String, RemoteSubscription<?>> patternSubscriptions = new LinkedHashMap<String, RemoteSubscription<?>>();
+    private final TopicTrie<RemoteSubscription<?>> patternIndex = new TopicTrie<RemoteSubscription<?>>();
 
     private <T> CloseableChannel<T> channel() {
         return channelsToClose.add(new MemoryChannel<T>());
@@ -57,13 +84,29 @@ public class JetlangTcpClient implements JetlangClient {
     private final Channel<CloseEvent> Closed = channel();
     private final Channel<ReadTimeoutEvent> ReadTimeout = channel();
     private final Channel<DeadMessageEvent> DeadMessage = channel();
+    private final Channel<SessionRequest> Requests = channel();
 
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final CountDownLatch logoutLatch = new CountDownLatch(1);
     private Disposable hbSchedule;
     private final Channel<HeartbeatEvent> Heartbeat = channel();
     private AtomicInteger reqId = new AtomicInteger();
-    private final Map<Integer, Req> pendingRequests = Collections.synchronizedMap(new HashMap<Integer, Req>());
+    //put on the send fiber, removed by replies on the read thread.
+    private final ConcurrentIntTable<Req<?>> pendingRequests;
+    //request and HelloAck timeouts, owned by the send fiber.
+    private TimerWheel<Runnable> requestTimeouts;
+    //the current connection's wait for its HelloAck.
+    private TimerWheel.Timeout<Runnable> helloAckTimeout;
+    //runs while requestTimeouts has pending timeouts.
+    private Disposable requestTick;
+    private volatile int scheduledTimeouts;
+    //written on the send fiber only.
+    private volatile long requestTimeoutCount;
+    //completes future requests in place on the read thread.
+    private static final DisposingExecutor SYNC = new SynchronousDisposingExecutor();
+    private final FlyweightHandlers flyweights = new FlyweightHandlers();
+    //the acceptor's credit for publishes on the current connection. used on the send fiber.
+    private volatile CreditGate sendCredit;
 
     private final SocketWriter socketWriter = new SocketWriter() {
         public <T> boolean send(final String topic, final T msg){
@@ -82,6 +125,79 @@ public class JetlangTcpClient implements JetlangClient {
         }
     };
 
+    private boolean batchFlushScheduled;
+    private final Runnable flushBatch = new Runnable() {
+        public void run() {
+            batchFlushScheduled = false;
+            if (socket != null) {
+                try {
+                    socket.flushBatch();
+                } catch (IOException e) {
+                    handleDisconnect(new CloseEvent.WriteException(e));
+                }
+            }
+        }
+    };
+
+    /**
+     * Appends to the pending batch. The flush runs behind whatever is already queued on the send fiber,
+     * so a burst of publishes goes out as one batch frame.
+     */
+    private final SocketWriter batchWriter = new SocketWriter() {
+        public <T> boolean send(final String topic, final T msg) {
+            if (socket != null) {
+                try {
+                    socket.writeToBatch(topic, msg);
+                    if (!batchFlushScheduled) {
+                        batchFlushScheduled = true;
+                        sendFiber.execute(flushBatch);
+                    }
+                    return true;
+                } catch (IOException e) {
+                    DeadMessage.publish(new DeadMessageEvent(topic, msg));
+                    handleDisconnect(new CloseEvent.WriteException(e));
+                }
+            } else {
+                DeadMessage.publish(new DeadMessageEvent(topic, msg));
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Handed to {@link #execOnSendThread}, so messages written directly take credit like publishes. A message
+     * held for credit counts as sent, and one past the held limit as failed.
+     */
+    private final SocketWriter creditedWriter = new SocketWriter() {
+        public <T> boolean send(final String topic, final T msg) {
+            if (sendCredit.tryAcquire()) {
+                return socketWriter.send(topic, msg);
+            }
+            return holdForCredit(topic, msg, new Runnable() {
+                public void run() {
+                    socketWriter.send(topic, msg);
+                }
+            });
+        }
+    };
+
+    private CreditGate newCreditGate() {
+        final CreditGate gate = new CreditGate();
+        gate.setMaxHeld(config.getMaxHeldMessages());
+        return gate;
+    }
+
+    /**
+     * @return false if the held limit is reached, in which case the message is dropped as a dead message.
+     */
+    private <T> boolean holdForCredit(String topic, T msg, Runnable write) {
+        if (sendCredit.hold(write)) {
+            return true;
+        }
+        DeadMessage.publish(new DeadMessageEvent(topic, msg));
+        return false;
+    }
+
     public JetlangTcpClient(SocketConnector socketConnector,
                             Fiber sendFiber,
                             JetlangClientConfig config,
@@ -92,15 +208,23 @@ public class JetlangTcpClient implements JetlangClient {
         this.config = config;
         this.ser = ser;
         this.errorHandler = errorHandler;
+        this.pendingRequests = new ConcurrentIntTable<Req<?>>(config.getRequestCapacity());
+        this.sendCredit = newCreditGate();
     }
 
     private class RemoteSubscription<T> {
         private final CloseableChannel<T> channel = channel();
         private final String topic;
+        private final boolean pattern;
         private boolean subscriptionSent = false;
 
-        public RemoteSubscription(String topic) {
+        public RemoteSubscription(String topic, boolean pattern) {
             this.topic = topic;
+            this.pattern = pattern;
+        }
+
+        private int subscribeType() {
+            return pattern ? MsgTypes.PatternSubscription : MsgTypes.Subscription;
         }
 
         public Disposable subscribe(Subscribable<T> callback) {
@@ -109,7 +233,7 @@ public class JetlangTcpClient implements JetlangClient {
             sendFiber.execute(new Runnable() {
                 public void run() {
                     if (!subscriptionSent) {
-                        subscriptionSent = sendSubscription(topic, MsgTypes.Subscription);
+                        subscriptionSent = sendSubscription(topic, subscribeType());
                     }
                 }
             });
@@ -133,10 +257,15 @@ public class JetlangTcpClient implements JetlangClient {
                     channel.close();
                     channelsToClose.remove(channel);
                     if (subscriptionSent) {
-                        sendSubscription(topic, MsgTypes.Unsubscribe);
+                        sendSubscription(topic, pattern ? MsgTypes.PatternUnsubscribe : MsgTypes.Unsubscribe);
                     }
 
-                    remoteSubscriptions.remove(topic);
+                    if (pattern) {
+                        patternSubscriptions.remove(topic);
+                        patternIndex.remove(topic, this);
+                    } else {
+                        remoteSubscriptions.remove(topic);
+                    }
                 }
             }
         }
@@ -146,7 +275,7 @@ public class JetlangTcpClient implements JetlangClient {
         }
 
         public void onConnect() {
-            subscriptionSent = sendSubscription(topic, MsgTypes.Subscription);
+            subscriptionSent = sendSubscription(topic, subscribeType());
         }
     }
 
@@ -157,22 +286,65 @@ public class JetlangTcpClient implements JetlangClient {
                 //noinspection unchecked
                 remoteSubscription = (RemoteSubscription<T>) remoteSubscriptions.get(subject);
             } else {
-                remoteSubscription = new RemoteSubscription<T>(subject);
+                remoteSubscription = new RemoteSubscription<T>(subject, false);
                 remoteSubscriptions.put(subject, remoteSubscription);
             }
             return remoteSubscription.subscribe(callback);
         }
     }
 
+    /**
+     * Subscribes to every topic matching the pattern with a single subscription. Topics are '.' separated, '*'
+     * matches one segment and a final '&gt;' matches the rest, as in {@link TopicTrie}.
+     */
+    public <T> Disposable subscribePattern(String pattern, Subscribable<SessionMessage<T>> callback) {
+        TopicTrie.checkPattern(pattern);
+        synchronized (remoteSubscriptions) {
+            @SuppressWarnings("unchecked")
+            RemoteSubscription<SessionMessage<T>> remoteSubscription = (RemoteSubscription<SessionMessage<T>>) patternSubscriptions.get(pattern);
+            if (remoteSubscription == null) {
+                remoteSubscription = new RemoteSubscription<SessionMessage<T>>(pattern, true);
+                patternSubscriptions.put(pattern, remoteSubscription);
+                patternIndex.add(pattern, remoteSubscription);
+            }
+            return remoteSubscription.subscribe(callback);
+        }
+    }
+
+    public <T> Disposable subscribePattern(String pattern, DisposingExecutor clientFiber, Callback<SessionMessage<T>> cb) {
+        return subscribePattern(pattern, new ChannelSubscription<SessionMessage<T>>(clientFiber, cb));
+    }
+
+    public Disposable subscribeFlyweight(final String topic, final FlyweightHandler handler) {
+        flyweights.register(topic, handler);
+        //an empty subscription drives the remote subscribe and unsubscribe.
+        final Disposable remote = subscribe(topic, new SynchronousDisposingExecutor(), new Callback<Object>() {
+            public void onMessage(Object message) {
+            }
+        });
+        return new Disposable() {
+            public void dispose() {
+                flyweights.unregister(topic, handler);
+                remote.dispose();
+            }
+        };
+    }
+
+    //subscribers choose the message type, so whatever was read is handed to them unchecked.
+    @SuppressWarnings("unchecked")
     private void publishData(String topic, Object object) {
-        RemoteSubscription channel;
+        RemoteSubscription<Object> channel;
+        List<RemoteSubscription<?>> matched;
         synchronized (remoteSubscriptions) {
             channel = remoteSubscriptions.get(topic);
+            matched = patternIndex.match(topic);
         }
         if (channel != null) {
-            //noinspection unchecked
             channel.publish(object);
         }
+        for (RemoteSubscription<?> pattern : matched) {
+            ((RemoteSubscription<Object>) pattern).publish(new SessionMessage<Object>(topic, object));
+        }
     }
 
     private void publishReply(int id, Object reply) {
@@ -183,8 +355,16 @@ public class JetlangTcpClient implements JetlangClient {
         }
     }
 
+    private void sendAwaitingHelloAck() {
+        final Runnable[] waiting = awaitingHelloAck.toArray(new Runnable[awaitingHelloAck.size()]);
+        awaitingHelloAck.clear();
+        for (Runnable send : waiting) {
+            send.run();
+        }
+    }
+
     private boolean sendSubscription(String subject, int msgType) {
-        if (socket != null) {
+        if (socket != null && !helloPending) {
             try {
                 socket.writeSubscription(msgType, subject, charset);
                 return true;
@@ -195,10 +375,25 @@ public class JetlangTcpClient implements JetlangClient {
         return false;
     }
 
+    private void sendSubscriptions() {
+        synchronized (remoteSubscriptions) {
+            for (RemoteSubscription subscription : remoteSubscriptions.values()) {
+                subscription.onConnect();
+            }
+            for (RemoteSubscription<?> subscription : patternSubscriptions.values()) {
+                subscription.onConnect();
+            }
+        }
+    }
+
     private void closeIfNeeded(CloseEvent closeCause) {
         if (socket != null) {
             socket.tryClose();
             socket = null;
+            //held publishes become dead messages, and the next connection is unlimited until its HelloAck.
+            final CreditGate spent = sendCredit;
+            sendCredit = newCreditGate();
+            spent.grant(Integer.MAX_VALUE);
             if (hbSchedule != null) {
                 hbSchedule.dispose();
             }
@@ -243,12 +438,23 @@ public class JetlangTcpClient implements JetlangClient {
     private void handleConnect(Socket newSocket) throws IOException {
         this.pendingConnect.dispose();
         this.pendingConnect = null;
-        this.socket = new SocketMessageStreamWriter(new TcpSocket(newSocket, errorHandler), charset, ser.getWriter());
-        synchronized (remoteSubscriptions) {
-            for (RemoteSubscription subscription : remoteSubscriptions.values()) {
-                subscription.onConnect();
-            }
+        final SocketMessageStreamWriter writer = new SocketMessageStreamWriter(new TcpSocket(newSocket, errorHandler), charset, ser.getWriter());
+        this.capabilities = 0;
+        //left from a connection that closed before its HelloAck. they time out like requests sent while disconnected.
+        awaitingHelloAck.clear();
+        final int offered = config.getCapabilities();
+        this.helloPending = offered != 0;
+        if (helloAckTimeout != null) {
+            helloAckTimeout.cancel();
+            helloAckTimeout = null;
         }
+        if (helloPending) {
+            //must precede every other frame. acceptors that don't know Hello can't be offered anything.
+            writer.writeHello(MsgTypes.Hello, Capabilities.VERSION, offered);
+            helloAckTimeout = scheduleTimeout(new HelloAckTimeout(writer), config.getHelloAckTimeoutInMs());
+        }
+        this.socket = writer;
+        sendSubscriptions();
         final InputStream stream = newSocket.getInputStream();
         final Runnable reader = new Runnable() {
             public void run() {
@@ -260,6 +466,8 @@ public class JetlangTcpClient implements JetlangClient {
                     }
                 } catch (IOException failed) {
                     handleReadExceptionOnSendFiber(failed);
+                } finally {
+                    protocol.releaseBuffer();
                 }
             }
         };
@@ -280,7 +488,7 @@ public class JetlangTcpClient implements JetlangClient {
         }
 
         public void onRequest(int reqId, String dataTopicVal, Object readObject) {
-            errorHandler.onException(new IOException("RequestNotSupported: " + dataTopicVal + " val: " + readObject));
+            Requests.publish(new SessionRequest(reqId, dataTopicVal, readObject, replyPublisher));
         }
 
         public void onUnsubscribeRequest(String val) {
@@ -307,9 +515,119 @@ public class JetlangTcpClient implements JetlangClient {
         public void onRequestReply(int reqId, String dataTopicVal, Object readObject) {
             publishReply(reqId, readObject);
         }
+
+        @Override
+        public void onReplyChunk(int reqId, String dataTopicVal, Object readObject) {
+            Req<?> r = pendingRequests.get(reqId);
+            if (r != null) {
+                r.onPart(readObject);
+            }
+        }
+
+        @Override
+        public void onReplyEnd(int reqId) {
+            Req<?> r = pendingRequests.remove(reqId);
+            if (r != null) {
+                r.onEnd();
+            }
+        }
+
+        @Override
+        public void onHelloAck(int version, final int negotiated) {
+            sendFiber.execute(new Runnable() {
+                public void run() {
+                    if (socket != null) {
+                        try {
+                            //frames queued before this point were written without the capabilities.
+                            socket.writeHello(MsgTypes.HelloAck, Capabilities.VERSION, negotiated);
+                            socket.setCapabilities(negotiated);
+                            socket.setCompression(Capabilities.has(negotiated, Capabilities.COMPRESSION) ? config.getCompressionThreshold() : -1, compressionStats);
+                            capabilities = negotiated;
+                            if (Capabilities.has(negotiated, Capabilities.CREDIT)) {
+                                sendCredit.enable();
+                            }
+                            if (helloAckTimeout != null) {
+                                helloAckTimeout.cancel();
+                                helloAckTimeout = null;
+                            }
+                            //already sent if the ack came after the client stopped waiting for it.
+                            if (helloPending) {
+                                helloPending = false;
+                                sendSubscriptions();
+                                sendAwaitingHelloAck();
+                            }
+                        } catch (IOException e) {
+                            handleDisconnect(new CloseEvent.WriteException(e));
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public int getCreditWindow() {
+            return config.getCreditWindow();
+        }
+
+        @Override
+        public void grantCredit(final int messages) {
+            sendFiber.execute(new Runnable() {
+                public void run() {
+                    if (socket != null) {
+                        try {
+                            socket.writeCredit(messages);
+                        } catch (IOException e) {
+                            handleDisconnect(new CloseEvent.WriteException(e));
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onCredit(final int messages) {
+            sendFiber.execute(new Runnable() {
+                public void run() {
+                    sendCredit.grant(messages);
+                }
+            });
+        }
+
+        public CompressionStats getCompressionStats() {
+            return compressionStats;
+        }
+
+        public FlyweightHandlers getFlyweightHandlers() {
+            return flyweights;
+        }
     };
 
 
+    /**
+     * Answers requests from the acceptor on the send fiber. Replies are dropped while disconnected, since the
+     * acceptor times out requests from a closed session.
+     */
+    private final JetlangMessagePublisher replyPublisher = new JetlangMessagePublisher() {
+        public <T> void publish(String topic, T msg) {
+            JetlangTcpClient.this.publish(topic, msg);
+        }
+
+        public void reply(final int reqId, final String reqmsgTopic, final Object replyMsg) {
+            Runnable replyRunner = new Runnable() {
+                public void run() {
+                    if (socket != null) {
+                        try {
+                            socket.writeReply(reqId, reqmsgTopic, replyMsg);
+                        } catch (IOException e) {
+                            handleDisconnect(new CloseEvent.WriteException(e));
+                        }
+                    }
+                }
+            };
+            sendFiber.execute(replyRunner);
+        }
+    };
+
     private void handleReadExceptionOnSendFiber(final IOException e) {
         Runnable exec = new Runnable() {
             public void run() {
@@ -369,17 +687,89 @@ public class JetlangTcpClient implements JetlangClient {
         throw new RuntimeException("Already closed.");
     }
 
-    private class Req<T> {
+    /**
+     * An acceptor that predates the Hello never answers it, so once the wait is over the connection carries on
+     * without capabilities and sends what was held back for the HelloAck.
+     */
+    private class HelloAckTimeout implements Runnable {
+        private final SocketMessageStreamWriter connection;
+
+        HelloAckTimeout(SocketMessageStreamWriter connection) {
+            this.connection = connection;
+        }
+
+        public void run() {
+            if (socket == connection && helloPending) {
+                helloAckTimeout = null;
+                helloPending = false;
+                errorHandler.onException(new IOException("No HelloAck within " + config.getHelloAckTimeoutInMs() + "ms, continuing without capabilities"));
+                sendSubscriptions();
+                sendAwaitingHelloAck();
+            }
+        }
+    }
+
+    /**
+     * Runs as the request's timeout, which fires unless the request was answered, disposed or failed meanwhile.
+     */
+    private class Req<T> implements Runnable {
+        final int id;
         final DisposingExecutor fiber;
         final Callback<T> cb;
-        private final AtomicBoolean disposed;
+        final Callback<TimeoutControls> onTimeout;
+        final AtomicBoolean disposed;
+        //read thread only.
+        private List<Object> parts;
 
-        public Req(DisposingExecutor fiber, Callback<T> cb, AtomicBoolean disposed) {
+        public Req(int id, DisposingExecutor fiber, Callback<T> cb, Callback<TimeoutControls> onTimeout, AtomicBoolean disposed) {
+            this.id = id;
             this.fiber = fiber;
             this.cb = cb;
+            this.onTimeout = onTimeout;
             this.disposed = disposed;
         }
 
+        public void run() {
+            //gone from the table once answered, disposed or failed.
+            if (pendingRequests.get(id) == this) {
+                onTimeout();
+            }
+        }
+
+        public void onTimeout() {
+            if (!disposed.get()) {
+                requestTimeoutCount++;
+                onTimeout.onMessage(timeoutControls());
+            }
+        }
+
+        /**
+         * The request can't be sent on this connection, so it fails at once through the timeout handler instead of
+         * waiting for its deadline.
+         */
+        public void onRefused() {
+            if (!disposed.get() && onTimeout != null) {
+                onTimeout.onMessage(timeoutControls());
+            }
+            disposed.set(true);
+        }
+
+        private TimeoutControls timeoutControls() {
+            return new TimeoutControls() {
+                public void cancelRequest() {
+                    disposed.set(true);
+                    pendingRequests.remove(id);
+                }
+            };
+        }
+
+        /**
+         * @return true if the reply must be streamed in parts.
+         */
+        public boolean isStream() {
+            return false;
+        }
+
         public void onReply(final T reply) {
             if (!disposed.get()) {
                 Runnable run = new Runnable() {
@@ -392,6 +782,74 @@ public class JetlangTcpClient implements JetlangClient {
                 fiber.execute(run);
             }
         }
+
+        /**
+         * The acceptor streamed a reply this request expects whole, so the parts are collected on the read thread
+         * and delivered as one list.
+         */
+        public void onPart(Object part) {
+            if (parts == null) {
+                parts = new ArrayList<Object>();
+            }
+            parts.add(part);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void onEnd() {
+            onReply((T) (parts != null ? parts : new ArrayList<Object>()));
+        }
+    }
+
+    private class StreamReq<T> extends Req<T> {
+        private final Runnable onEnd;
+
+        public StreamReq(int id, DisposingExecutor fiber, Callback<T> onPart, Runnable onEnd, Callback<TimeoutControls> onTimeout, AtomicBoolean disposed) {
+            super(id, fiber, onPart, onTimeout, disposed);
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public void onPart(final Object part) {
+            if (!disposed.get()) {
+                Runnable run = new Runnable() {
+                    public void run() {
+                        if (!disposed.get()) {
+                            //noinspection unchecked
+                            cb.onMessage((T) part);
+                        }
+                    }
+                };
+                fiber.execute(run);
+            }
+        }
+
+        @Override
+        public void onEnd() {
+            if (!disposed.get()) {
+                Runnable run = new Runnable() {
+                    public void run() {
+                        if (disposed.compareAndSet(false, true) && onEnd != null) {
+                            onEnd.run();
+                        }
+                    }
+                };
+                fiber.execute(run);
+            }
+        }
+
+        /**
+         * The acceptor replied in one piece, so the reply is the only part, whatever its type.
+         */
+        @Override
+        public void onReply(T reply) {
+            onPart(reply);
+            onEnd();
+        }
+
+        @Override
+        public boolean isStream() {
+            return true;
+        }
     }
 
     public <T> Disposable request(final String reqTopic,
@@ -399,51 +857,243 @@ public class JetlangTcpClient implements JetlangClient {
                                   final DisposingExecutor executor, final Callback<T> callback,
                                   final Callback<TimeoutControls> timeoutRunnable, int timeout, TimeUnit timeUnit) {
         final AtomicBoolean disposed = new AtomicBoolean(false);
-        final int id = reqId.incrementAndGet();
+        final Req<T> pending = new Req<T>(reqId.incrementAndGet(), executor, callback, timeoutRunnable, disposed);
+        return send(pending, reqTopic, req, timeout > 0 && callback != null, timeUnit.toMillis(timeout));
+    }
+
+    public <T> Disposable requestStream(String reqTopic,
+                                        Object req,
+                                        DisposingExecutor executor, Callback<T> onPart, Runnable onEnd,
+                                        Callback<TimeoutControls> timeoutRunnable, int timeout, TimeUnit timeUnit) {
+        if (!config.getReplyStreams()) {
+            throw new IllegalStateException("Stream requests need reply streams offered in the client config");
+        }
+        final AtomicBoolean disposed = new AtomicBoolean(false);
+        final Req<T> pending = new StreamReq<T>(reqId.incrementAndGet(), executor, onPart, onEnd, timeoutRunnable, disposed);
+        return send(pending, reqTopic, req, timeout > 0 && timeoutRunnable != null, timeUnit.toMillis(timeout));
+    }
+
+    private Disposable send(final Req<?> pending, final String reqTopic, final Object req, final boolean timed, final long timeoutMs) {
+        final int id = pending.id;
+        final AtomicBoolean disposed = pending.disposed;
+        final Runnable write = new Runnable() {
+            public void run() {
+                if (disposed.get() || socket == null) {
+                    return;
+                }
+                if (pending.isStream()) {
+                    if (helloPending) {
+                        awaitingHelloAck.add(this);
+                        return;
+                    }
+                    if (!Capabilities.has(capabilities, Capabilities.REPLY_STREAMS)) {
+                        //the acceptor would collect the parts into one reply, indistinguishable from a list.
+                        pending.onRefused();
+                        return;
+                    }
+                }
+                pendingRequests.put(id, pending);
+                try {
+                    socket.writeRequest(id, reqTopic, req);
+                } catch (IOException e) {
+                    pendingRequests.remove(id);
+                    handleDisconnect(new CloseEvent.WriteException(e));
+                }
+            }
+        };
         Runnable reqSend = new Runnable() {
             public void run() {
                 if (!disposed.get()) {
-                    if (socket != null) {
-                        pendingRequests.put(id, new Req<T>(executor, callback, disposed));
-                        try {
-                            socket.writeRequest(id, reqTopic, req);
-                        } catch (IOException e) {
-                            pendingRequests.remove(id);
-                            handleDisconnect(new CloseEvent.WriteException(e));
-                        }
+                    if (timed) {
+                        scheduleTimeout(pending, timeoutMs);
                     }
+                    write.run();
                 }
             }
         };
         sendFiber.execute(reqSend);
-        if (timeout > 0 && callback != null) {
-            Runnable onTimeout = new Runnable() {
-                public void run() {
-                    if (!disposed.get()) {
-                        TimeoutControls controls = new TimeoutControls() {
-                            public void cancelRequest() {
-                                disposed.set(true);
-                                pendingRequests.remove(id);
-                            }
-                        };
-                        timeoutRunnable.onMessage(controls);
+        return new Disposable() {
+            public void dispose() {
+                disposed.set(true);
+                pendingRequests.remove(id);
+            }
+        };
+    }
+
+    public <T> CompletableFuture<T> requestAsync(String reqTopic, Object req, long timeout, TimeUnit timeUnit) {
+        return requestAsync(reqTopic, req, null, timeout, timeUnit);
+    }
+
+    public <T> CompletableFuture<T> requestAsync(String reqTopic, Object req, Executor executor, long timeout, TimeUnit timeUnit) {
+        return this.<T>requestAll(reqTopic, Collections.singletonList(req), executor, timeout, timeUnit).get(0);
+    }
+
+    public <T> List<CompletableFuture<T>> requestAll(final String reqTopic, final List<?> reqs, final Executor executor, long timeout, TimeUnit timeUnit) {
+        final int firstId = reqId.getAndAdd(reqs.size()) + 1;
+        final long timeoutMs = timeout > 0 ? timeUnit.toMillis(timeout) : 0;
+        final List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(reqs.size());
+        final List<Req<T>> pending = new ArrayList<Req<T>>(reqs.size());
+        for (int i = 0; i < reqs.size(); i++) {
+            final CompletableFuture<T> future = new CompletableFuture<T>();
+            futures.add(future);
+            pending.add(futureReq(firstId + i, reqTopic, future, executor));
+        }
+        Runnable reqSend = new Runnable() {
+            public void run() {
+                for (Req<T> req : pending) {
+                    if (timeoutMs > 0 && !req.disposed.get()) {
+                        scheduleTimeout(req, timeoutMs);
                     }
                 }
-            };
-            final Disposable disposable = sendFiber.schedule(onTimeout, timeout, timeUnit);
-            return new Disposable() {
-                public void dispose() {
-                    disposed.set(true);
-                    disposable.dispose();
+                if (socket == null) {
+                    failAll(pending, futures, executor, new IOException("Not connected"));
+                    return;
                 }
-            };
-        } else {
-            return new Disposable() {
-                public void dispose() {
-                    disposed.set(true);
+                for (Req<T> req : pending) {
+                    //cancelled futures are still written, and their replies dropped.
+                    if (!req.disposed.get()) {
+                        pendingRequests.put(req.id, req);
+                    }
                 }
-            };
+                try {
+                    socket.writeRequests(firstId, reqTopic, reqs);
+                } catch (IOException e) {
+                    failAll(pending, futures, executor, e);
+                    handleDisconnect(new CloseEvent.WriteException(e));
+                }
+            }
+        };
+        sendFiber.execute(reqSend);
+        return futures;
+    }
+
+    /**
+     * The future completes on the executor, or on the read thread if null. Cancelling it disposes the request.
+     */
+    private <T> Req<T> futureReq(final int id, final String reqTopic, final CompletableFuture<T> future, final Executor executor) {
+        final AtomicBoolean disposed = new AtomicBoolean(false);
+        Callback<T> onReply = new Callback<T>() {
+            public void onMessage(T reply) {
+                complete(future, executor, reply, null);
+            }
+        };
+        Callback<TimeoutControls> onTimeout = new Callback<TimeoutControls>() {
+            public void onMessage(TimeoutControls controls) {
+                controls.cancelRequest();
+                complete(future, executor, null, new TimeoutException("No reply to " + reqTopic + " request " + id));
+            }
+        };
+        final Req<T> req = new Req<T>(id, SYNC, onReply, onTimeout, disposed);
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            public void accept(T reply, Throwable failed) {
+                disposed.set(true);
+                pendingRequests.remove(id);
+            }
+        });
+        return req;
+    }
+
+    private static <T> void complete(final CompletableFuture<T> future, Executor executor, final T reply, final Throwable failed) {
+        Runnable completion = new Runnable() {
+            public void run() {
+                if (failed != null) {
+                    future.completeExceptionally(failed);
+                } else {
+                    future.complete(reply);
+                }
+            }
+        };
+        if (executor != null) {
+            executor.execute(completion);
+        } else {
+            completion.run();
+        }
+    }
+
+    private <T> void failAll(List<Req<T>> pending, List<CompletableFuture<T>> futures, Executor executor, IOException failed) {
+        for (int i = 0; i < pending.size(); i++) {
+            final Req<T> req = pending.get(i);
+            req.disposed.set(true);
+            pendingRequests.remove(req.id);
+            complete(futures.get(i), executor, null, failed);
+        }
+    }
+
+    /**
+     * The wheel only ticks while it has timeouts pending, so an idle client doesn't wake the send fiber. It runs on the
+     * monotonic clock, so a wall clock stepping back can't hold timeouts off.
+     * <p>
+     * Answered and disposed requests leave their timeout on the wheel, so replies never hop to the send fiber. The
+     * tick drops them once they fall due.
+     */
+    private TimerWheel.Timeout<Runnable> scheduleTimeout(Runnable onTimeout, long timeoutMs) {
+        final long tickMs = config.getRequestTimerTickInMs();
+        if (requestTimeouts == null) {
+            requestTimeouts = new TimerWheel<Runnable>(tickMs, 512, TimerWheel.monotonicMs());
+        }
+        if (requestTick == null) {
+            //the clock stood still while idle.
+            requestTimeouts.advance(TimerWheel.monotonicMs(), onRequestTimeout);
+            //stops with the send fiber.
+            requestTick = sendFiber.scheduleWithFixedDelay(advanceRequestTimeouts, tickMs, tickMs, TimeUnit.MILLISECONDS);
         }
+        final TimerWheel.Timeout<Runnable> timeout = requestTimeouts.schedule(onTimeout, timeoutMs);
+        scheduledTimeouts = requestTimeouts.size();
+        return timeout;
+    }
+
+    private final Runnable advanceRequestTimeouts = new Runnable() {
+        public void run() {
+            requestTimeouts.advance(TimerWheel.monotonicMs(), onRequestTimeout);
+            scheduledTimeouts = requestTimeouts.size();
+            //a tick already queued when it was disposed may still run once.
+            if (scheduledTimeouts == 0 && requestTick != null) {
+                requestTick.dispose();
+                requestTick = null;
+            }
+        }
+    };
+
+    private final Callback<Runnable> onRequestTimeout = new Callback<Runnable>() {
+        public void onMessage(Runnable timeout) {
+            timeout.run();
+        }
+    };
+
+    /**
+     * @return requests sent and still waiting for a reply.
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * @return request and HelloAck timeouts waiting on the timer wheel, including those of answered requests that
+     * haven't fallen due yet.
+     */
+    public int getScheduledTimeoutCount() {
+        return scheduledTimeouts;
+    }
+
+    /**
+     * @return requests that reached their timeout without a reply or being disposed.
+     */
+    public long getRequestTimeoutCount() {
+        return requestTimeoutCount;
+    }
+
+    /**
+     * @return publishes the acceptor accepts before they are held, or -1 if credit isn't negotiated.
+     */
+    public long getSendCredit() {
+        return sendCredit.getCredit();
+    }
+
+    /**
+     * @return publishes waiting for the acceptor to grant credit.
+     */
+    public int getHeldMessageCount() {
+        return sendCredit.getHeldCount();
     }
 
 
@@ -459,6 +1109,28 @@ public class JetlangTcpClient implements JetlangClient {
         return Connected;
     }
 
+    /**
+     * @return the {@link Capabilities} negotiated on the current connection. Empty until the acceptor answers the Hello.
+     */
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * @return compression counters for all connections made by the client.
+     */
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /**
+     * Requests sent by the acceptor, answered with {@link SessionRequest#reply(Object)}. Requests that arrive with
+     * no subscriber go unanswered and time out on the acceptor.
+     */
+    public Subscriber<SessionRequest> getRequestChannel() {
+        return Requests;
+    }
+
     public Subscriber<DeadMessageEvent> getDeadMessageChannel() {
         return DeadMessage;
     }
@@ -470,19 +1142,32 @@ public class JetlangTcpClient implements JetlangClient {
     public <T> void publish(final String topic, final T msg, final Runnable onSend) {
         Runnable r = new Runnable() {
             public void run() {
-                if(socketWriter.send(topic, msg)){
-                    if (onSend != null)
-                        onSend.run();
+                if (sendCredit.tryAcquire()) {
+                    send(topic, msg, onSend);
+                } else {
+                    holdForCredit(topic, msg, new Runnable() {
+                        public void run() {
+                            send(topic, msg, onSend);
+                        }
+                    });
                 }
             }
         };
         sendFiber.execute(r);
     }
 
+    private <T> void send(String topic, T msg, Runnable onSend) {
+        final SocketWriter writer = Capabilities.has(capabilities, Capabilities.BATCH) ? batchWriter : socketWriter;
+        if(writer.send(topic, msg)){
+            if (onSend != null)
+                onSend.run();
+        }
+    }
+
     public void execOnSendThread(final Callback<SocketWriter> cb){
         Runnable r = new Runnable() {
             public void run() {
-                cb.onMessage(socketWriter);
+                cb.onMessage(creditedWriter);
             }
         };
         sendFiber.execute(r);
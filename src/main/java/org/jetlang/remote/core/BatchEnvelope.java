@@ -0,0 +1,82 @@
+package org.jetlang.remote.core;
+
+/**
+ * Wraps consecutive frames appended to a buffer in a single {@link MsgTypes#Batch} frame.
+ * The header is reserved when the envelope opens and filled in when it closes. An envelope holding
+ * a single frame is removed on close, so the frame goes out exactly as it would without batching.
+ */
+public class BatchEnvelope {
+
+    public static final int HEADER_SIZE = 5;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+
+    private final ByteArrayBuffer buffer;
+    private final int maxBatchBytes;
+    private int start = -1;
+    private int count;
+
+    public BatchEnvelope(ByteArrayBuffer buffer) {
+        this(buffer, DEFAULT_MAX_BATCH_BYTES);
+    }
+
+    public BatchEnvelope(ByteArrayBuffer buffer, int maxBatchBytes) {
+        this.buffer = buffer;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Must be called before appending a frame to the envelope.
+     */
+    public void open() {
+        if (start < 0) {
+            start = buffer.position();
+            buffer.appendIntAsByte(MsgTypes.Batch);
+            buffer.appendInt(0);
+        }
+    }
+
+    /**
+     * Must be called after appending a frame to the envelope.
+     *
+     * @return true if the envelope reached the max size and was closed.
+     */
+    public boolean added() {
+        count++;
+        if (buffer.position() - start >= maxBatchBytes) {
+            close();
+            return true;
+        }
+        return false;
+    }
+
+    public void append(byte[] frame, int offset, int length) {
+        open();
+        buffer.append(frame, offset, length);
+        added();
+    }
+
+    public boolean isOpen() {
+        return start >= 0;
+    }
+
+    public void close() {
+        if (start < 0) {
+            return;
+        }
+        if (count == 1) {
+            buffer.remove(start, HEADER_SIZE);
+        } else {
+            buffer.putInt(start + 1, buffer.position() - start - HEADER_SIZE);
+        }
+        start = -1;
+        count = 0;
+    }
+
+    /**
+     * Discards the open envelope state. Used when the underlying buffer is reset.
+     */
+    public void clear() {
+        start = -1;
+        count = 0;
+    }
+}
@@ -0,0 +1,192 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Dependency free compressor for the LZ4 block format. Greedy matching over a hash of 4 byte sequences,
+ * tuned for speed over ratio.
+ * <p>
+ * An instance keeps its hash table between calls, so compressing allocates nothing. Not thread safe.
+ */
+public class BlockCompressor {
+
+    /**
+     * Largest block a receiver will expand.
+     */
+    public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private static final int MIN_MATCH = 4;
+    //the format requires the last 5 bytes to be literals and the last match to start 12 bytes before the end.
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+    private static final int SKIP_TRIGGER = 6;
+
+    private final int[] hashTable = new int[1 << HASH_BITS];
+
+    /**
+     * @return the largest output {@link #compress} can produce for the input length.
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @param dst must have {@link #maxCompressedLength} bytes available from dstOff.
+     * @return the compressed length.
+     */
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+        final int srcEnd = srcOff + srcLen;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        int sOff = srcOff;
+        int anchor = srcOff;
+        int dOff = dstOff;
+        if (srcLen > MF_LIMIT) {
+            //positions are stored one based so zero means empty.
+            Arrays.fill(hashTable, 0);
+            int searches = 1 << SKIP_TRIGGER;
+            while (sOff < mfLimit) {
+                final int sequence = readInt(src, sOff);
+                final int h = hash(sequence);
+                final int ref = hashTable[h] - 1 + srcOff;
+                hashTable[h] = sOff - srcOff + 1;
+                if (ref < srcOff || sOff - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    //step further ahead the longer nothing matches.
+                    sOff += searches++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searches = 1 << SKIP_TRIGGER;
+                int matchStart = sOff;
+                int matchRef = ref;
+                while (matchStart > anchor && matchRef > srcOff && src[matchStart - 1] == src[matchRef - 1]) {
+                    matchStart--;
+                    matchRef--;
+                }
+                int matchLen = MIN_MATCH + (sOff - matchStart);
+                while (matchStart + matchLen < matchLimit && src[matchStart + matchLen] == src[matchRef + matchLen]) {
+                    matchLen++;
+                }
+                dOff = writeSequence(src, anchor, matchStart - anchor, matchStart - matchRef, matchLen, dst, dOff);
+                sOff = matchStart + matchLen;
+                anchor = sOff;
+            }
+        }
+        final int literals = srcEnd - anchor;
+        dOff = writeLiterals(src, anchor, literals, 0, dst, dOff);
+        return dOff - dstOff;
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literals, int offset, int matchLen, byte[] dst, int dOff) {
+        final int extraMatch = matchLen - MIN_MATCH;
+        dOff = writeLiterals(src, anchor, literals, Math.min(extraMatch, 15), dst, dOff);
+        dst[dOff++] = (byte) offset;
+        dst[dOff++] = (byte) (offset >>> 8);
+        if (extraMatch >= 15) {
+            dOff = writeLength(extraMatch - 15, dst, dOff);
+        }
+        return dOff;
+    }
+
+    private static int writeLiterals(byte[] src, int anchor, int literals, int matchToken, byte[] dst, int dOff) {
+        dst[dOff++] = (byte) ((Math.min(literals, 15) << 4) | matchToken);
+        if (literals >= 15) {
+            dOff = writeLength(literals - 15, dst, dOff);
+        }
+        System.arraycopy(src, anchor, dst, dOff, literals);
+        return dOff + literals;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dOff) {
+        while (length >= 255) {
+            dst[dOff++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dOff++] = (byte) length;
+        return dOff;
+    }
+
+    /**
+     * Restores exactly dstLen bytes.
+     *
+     * @throws IOException if the block is malformed or doesn't expand to dstLen bytes.
+     */
+    public static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int s = srcOff;
+        int d = dstOff;
+        while (true) {
+            if (s >= srcEnd) {
+                throw new IOException("Truncated compressed block");
+            }
+            final int token = src[s++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (s >= srcEnd) {
+                        throw new IOException("Truncated compressed block");
+                    }
+                    b = src[s++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > srcEnd - s || literals > dstEnd - d) {
+                throw new IOException("Corrupt compressed block");
+            }
+            System.arraycopy(src, s, dst, d, literals);
+            s += literals;
+            d += literals;
+            if (s == srcEnd) {
+                break;
+            }
+            if (srcEnd - s < 2) {
+                throw new IOException("Truncated compressed block");
+            }
+            final int offset = (src[s] & 0xFF) | ((src[s + 1] & 0xFF) << 8);
+            s += 2;
+            if (offset == 0 || offset > d - dstOff) {
+                throw new IOException("Corrupt compressed block");
+            }
+            int matchLen = token & 0x0F;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    if (s >= srcEnd) {
+                        throw new IOException("Truncated compressed block");
+                    }
+                    b = src[s++] & 0xFF;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (matchLen > dstEnd - d) {
+                throw new IOException("Corrupt compressed block");
+            }
+            final int ref = d - offset;
+            if (offset >= matchLen) {
+                System.arraycopy(dst, ref, dst, d, matchLen);
+            } else {
+                //overlapping copy repeats the last offset bytes.
+                for (int i = 0; i < matchLen; i++) {
+                    dst[d + i] = dst[ref + i];
+                }
+            }
+            d += matchLen;
+        }
+        if (d != dstEnd) {
+            throw new IOException("Compressed block expands to " + (d - dstOff) + " bytes, expected " + dstLen);
+        }
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,218 @@
+package org.jetlang.remote.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap arrays and direct buffers in power of two size classes. Buffers grow by moving to the next class, and
+ * oversized buffers go back to the pool once drained instead of being pinned by the connection that needed them.
+ * Sizes above the largest class are allocated exactly and never pooled.
+ */
+public class BufferPool {
+
+    public static final BufferPool DEFAULT = new BufferPool(1024, 16 * 1024 * 1024, 16);
+
+    private final int minSize;
+    private final int maxPooledSize;
+    private final int maxPerClass;
+    private final ArrayDeque<byte[]>[] arrays;
+    private final ArrayDeque<ByteBuffer>[] directs;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong releases = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * @param minSize       smallest size class, rounded up to a power of two.
+     * @param maxPooledSize largest size class, rounded up to a power of two.
+     * @param maxPerClass   idle buffers kept per size class and kind.
+     */
+    public BufferPool(int minSize, int maxPooledSize, int maxPerClass) {
+        this.minSize = roundUp(minSize);
+        this.maxPooledSize = roundUp(maxPooledSize);
+        this.maxPerClass = maxPerClass;
+        final int classes = index(this.maxPooledSize) + 1;
+        this.arrays = newDeques(classes);
+        this.directs = newDeques(classes);
+        for (int i = 0; i < classes; i++) {
+            arrays[i] = new ArrayDeque<byte[]>();
+            directs[i] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> ArrayDeque<T>[] newDeques(int classes) {
+        return new ArrayDeque[classes];
+    }
+
+    /**
+     * @return the smallest power of two that is at least the size, or the size itself if no int power of two is.
+     */
+    public static int roundUp(int size) {
+        if (size <= 1) {
+            return 1;
+        }
+        final int highest = Integer.highestOneBit(size - 1);
+        return highest >= (1 << 30) ? size : highest << 1;
+    }
+
+    public int sizeClass(int size) {
+        return Math.max(minSize, roundUp(size));
+    }
+
+    private int index(int sizeClass) {
+        return Integer.numberOfTrailingZeros(sizeClass) - Integer.numberOfTrailingZeros(minSize);
+    }
+
+    private boolean pooled(int capacity) {
+        return capacity >= minSize && capacity <= maxPooledSize && Integer.bitCount(capacity) == 1;
+    }
+
+    /**
+     * @return an array of at least the requested length. Contents are undefined.
+     */
+    public byte[] acquire(int minimum) {
+        final int size = sizeClass(minimum);
+        if (size <= maxPooledSize) {
+            final byte[] reused = poll(arrays[index(size)], size);
+            if (reused != null) {
+                return reused;
+            }
+        }
+        allocations.incrementAndGet();
+        return new byte[size];
+    }
+
+    /**
+     * @return a cleared big endian direct buffer with at least the requested capacity.
+     */
+    public ByteBuffer acquireDirect(int minimum) {
+        final int size = sizeClass(minimum);
+        if (size <= maxPooledSize) {
+            final ByteBuffer reused = poll(directs[index(size)], size);
+            if (reused != null) {
+                reused.clear();
+                reused.order(ByteOrder.BIG_ENDIAN);
+                return reused;
+            }
+        }
+        allocations.incrementAndGet();
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * The caller must drop every reference to the array.
+     */
+    public void release(byte[] array) {
+        if (pooled(array.length)) {
+            offer(arrays[index(array.length)], array, array.length);
+        } else {
+            discards.incrementAndGet();
+        }
+    }
+
+    /**
+     * Accepts direct buffers from {@link #acquireDirect(int)} and heap buffers that wrap a whole pooled array.
+     * The caller must drop every reference to the buffer.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            if (pooled(buffer.capacity())) {
+                offer(directs[index(buffer.capacity())], buffer, buffer.capacity());
+            } else {
+                discards.incrementAndGet();
+            }
+        } else if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.capacity() == buffer.array().length) {
+            release(buffer.array());
+        } else {
+            discards.incrementAndGet();
+        }
+    }
+
+    private <T> T poll(ArrayDeque<T> queue, int size) {
+        final T reused;
+        synchronized (queue) {
+            reused = queue.pollFirst();
+        }
+        if (reused != null) {
+            reuses.incrementAndGet();
+            pooledBytes.addAndGet(-size);
+        }
+        return reused;
+    }
+
+    private <T> void offer(ArrayDeque<T> queue, T buffer, int size) {
+        synchronized (queue) {
+            if (queue.size() >= maxPerClass) {
+                discards.incrementAndGet();
+                return;
+            }
+            queue.addFirst(buffer);
+        }
+        releases.incrementAndGet();
+        pooledBytes.addAndGet(size);
+    }
+
+    public Stats getStats() {
+        return new Stats(allocations.get(), reuses.get(), releases.get(), discards.get(), pooledBytes.get());
+    }
+
+    public static class Stats {
+        private final long allocations;
+        private final long reuses;
+        private final long releases;
+        private final long discards;
+        private final long pooledBytes;
+
+        public Stats(long allocations, long reuses, long releases, long discards, long pooledBytes) {
+            this.allocations = allocations;
+            this.reuses = reuses;
+            this.releases = releases;
+            this.discards = discards;
+            this.pooledBytes = pooledBytes;
+        }
+
+        /**
+         * Buffers created because no pooled buffer of the size class was idle.
+         */
+        public long getAllocations() {
+            return allocations;
+        }
+
+        public long getReuses() {
+            return reuses;
+        }
+
+        public long getReleases() {
+            return releases;
+        }
+
+        /**
+         * Released buffers dropped because they weren't a pooled size or their class was full.
+         */
+        public long getDiscards() {
+            return discards;
+        }
+
+        /**
+         * Bytes held by idle buffers.
+         */
+        public long getPooledBytes() {
+            return pooledBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "BufferPool.Stats{" +
+                    "allocations=" + allocations +
+                    ", reuses=" + reuses +
+                    ", releases=" + releases +
+                    ", discards=" + discards +
+                    ", pooledBytes=" + pooledBytes +
+                    '}';
+        }
+    }
+}
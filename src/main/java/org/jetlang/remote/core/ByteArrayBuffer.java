@@ -2,6 +2,8 @@ package org.jetlang.remote.core;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
  * User: mrettig
@@ -10,11 +12,40 @@ import java.io.OutputStream;
  */
 public class ByteArrayBuffer {
 
-    protected byte[] buffer = new byte[1024];
+    public static final int INITIAL_SIZE = 1024;
+    /**
+     * An empty buffer larger than this goes back to the pool and restarts at the initial size.
+     */
+    public static final int SHRINK_THRESHOLD = 64 * 1024;
+
+    private final BufferPool pool;
+    protected byte[] buffer;
     protected int position;
 
+    public ByteArrayBuffer() {
+        this(BufferPool.DEFAULT);
+    }
+
+    public ByteArrayBuffer(BufferPool pool) {
+        this.pool = pool;
+        this.buffer = pool.acquire(INITIAL_SIZE);
+    }
+
+    public BufferPool getPool() {
+        return pool;
+    }
+
     public void reset() {
         position = 0;
+        shrink();
+    }
+
+    private void shrink() {
+        if (buffer.length > SHRINK_THRESHOLD) {
+            pool.release(buffer);
+            buffer = pool.acquire(INITIAL_SIZE);
+            afterResize();
+        }
     }
 
     public void appendIntAsByte(int msgType) {
@@ -24,8 +55,9 @@ public class ByteArrayBuffer {
 
     private void resize(int i) {
         if (position + i >= buffer.length) {
-            byte[] newBuffer = new byte[buffer.length + i];
+            byte[] newBuffer = pool.acquire(Math.max(position + i + 1, buffer.length * 2));
             System.arraycopy(buffer, 0, newBuffer, 0, position);
+            pool.release(buffer);
             buffer = newBuffer;
             afterResize();
         }
@@ -42,21 +74,116 @@ public class ByteArrayBuffer {
         appendIntAsByte((v >>> 0) & 0xFF);
     }
 
+    /**
+     * Appends an unsigned LEB128 varint. Values are treated as unsigned 32 bit integers.
+     */
+    public void appendVarInt(int v) {
+        while ((v & ~0x7F) != 0) {
+            appendIntAsByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        appendIntAsByte(v);
+    }
+
+    /**
+     * Overwrites 4 bytes at the index without moving the position.
+     */
+    public void putInt(int index, int v) {
+        buffer[index] = (byte) (v >>> 24);
+        buffer[index + 1] = (byte) (v >>> 16);
+        buffer[index + 2] = (byte) (v >>> 8);
+        buffer[index + 3] = (byte) v;
+    }
+
+    /**
+     * Removes a range of bytes, shifting everything after it to the left.
+     */
+    public void remove(int offset, int length) {
+        System.arraycopy(buffer, offset + length, buffer, offset, position - offset - length);
+        position -= length;
+    }
+
     public void append(byte[] bytes, int offset, int length) {
         resize(length);
         System.arraycopy(bytes, offset, buffer, position, length);
         position += length;
     }
 
+    /**
+     * Appends an int size followed by the payload, which the writer puts directly into the free space of the buffer.
+     * The buffer doubles and the writer runs again until the payload fits.
+     */
+    public void appendSized(String topic, Object msg, ByteBufferWriter writer) throws IOException {
+        final int sizeIndex = position;
+        appendInt(0);
+        final int length = writeAt(sizeIndex + 4, topic, msg, writer);
+        putInt(sizeIndex, length);
+        position = sizeIndex + 4 + length;
+    }
+
+    /**
+     * Like {@link #appendSized} but with a varint size. One byte is reserved for the size and the payload is
+     * shifted right in the rare case that it needs more.
+     */
+    public void appendVarIntSized(String topic, Object msg, ByteBufferWriter writer) throws IOException {
+        final int sizeIndex = position;
+        appendIntAsByte(0);
+        final int length = writeAt(sizeIndex + 1, topic, msg, writer);
+        final int extra = varIntSize(length) - 1;
+        if (extra > 0) {
+            position = sizeIndex + 1 + length;
+            resize(extra);
+            System.arraycopy(buffer, sizeIndex + 1, buffer, sizeIndex + 1 + extra, length);
+        }
+        position = sizeIndex;
+        appendVarInt(length);
+        position += length;
+    }
+
+    private int writeAt(int start, String topic, Object msg, ByteBufferWriter writer) throws IOException {
+        while (true) {
+            final ByteBuffer view = ByteBuffer.wrap(buffer, start, buffer.length - start);
+            try {
+                writer.write(topic, msg, view);
+            } catch (BufferOverflowException full) {
+                resize(buffer.length);
+                continue;
+            }
+            return view.position() - start;
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link #appendVarInt} uses for the value.
+     */
+    public static int varIntSize(int v) {
+        int size = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
     public void append(byte[] bytes) {
         append(bytes, 0, bytes.length);
     }
 
+    public int position() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        byte[] copy = new byte[position];
+        System.arraycopy(buffer, 0, copy, 0, position);
+        return copy;
+    }
+
     public void flushTo(OutputStream socketOutputStream) throws IOException {
         try {
             socketOutputStream.write(buffer, 0, position);
         } finally {
-            position = 0;
+            reset();
         }
     }
 
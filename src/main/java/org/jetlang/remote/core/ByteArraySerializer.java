@@ -1,6 +1,7 @@
 package org.jetlang.remote.core;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * User: mrettig
@@ -9,20 +10,30 @@ import java.io.IOException;
  */
 public class ByteArraySerializer implements Serializer {
 
-    public static class Writer implements ObjectByteWriter {
+    public static class Writer implements ObjectByteWriter, ByteBufferWriter {
         public void write(String topic, Object msg, ByteMessageWriter writer) throws IOException {
             byte[] obj = (byte[]) msg;
             writer.writeObjectAsBytes(obj, 0, obj.length);
         }
+
+        public void write(String topic, Object msg, ByteBuffer buffer) {
+            buffer.put((byte[]) msg);
+        }
     }
 
-    public static class Reader implements ObjectByteReader {
+    public static class Reader implements ObjectByteReader, ByteBufferReader {
 
         public Object readObject(String fromTopic, byte[] buffer, int offset, int length) throws IOException {
             byte[] toReturn = new byte[length];
             System.arraycopy(buffer, offset, toReturn, 0, length);
             return toReturn;
         }
+
+        public Object readObject(String fromTopic, ByteBuffer buffer, int length) {
+            byte[] toReturn = new byte[length];
+            buffer.get(toReturn);
+            return toReturn;
+        }
     }
 
     private final Writer writer = new Writer();
@@ -0,0 +1,80 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Bridges the array based codecs to the ByteBuffer SPI. A reader or writer that also implements
+ * {@link ByteBufferReader} or {@link ByteBufferWriter} is used as is.
+ */
+public final class ByteBufferCodecs {
+
+    private ByteBufferCodecs() {
+    }
+
+    public static ByteBufferReader reader(ObjectByteReader reader) {
+        if (reader instanceof ByteBufferReader) {
+            return (ByteBufferReader) reader;
+        }
+        return new ArrayReader(reader);
+    }
+
+    public static boolean isNative(ObjectByteReader reader) {
+        return reader instanceof ByteBufferReader;
+    }
+
+    /**
+     * Heap buffers are passed through without a copy. Direct buffers are copied into a reused array.
+     */
+    public static class ArrayReader implements ByteBufferReader {
+        private final ObjectByteReader reader;
+        private byte[] scratch = new byte[0];
+
+        public ArrayReader(ObjectByteReader reader) {
+            this.reader = reader;
+        }
+
+        public Object readObject(String fromTopic, ByteBuffer buffer, int length) throws IOException {
+            if (buffer.hasArray()) {
+                return reader.readObject(fromTopic, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            }
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            buffer.get(scratch, 0, length);
+            return reader.readObject(fromTopic, scratch, 0, length);
+        }
+    }
+
+    public static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a message straight from the receive buffer, which may be direct. The payload starts at the buffer position
+ * and the limit is set to its end. The caller moves the position past the payload afterwards, so the reader is free
+ * to leave it anywhere.
+ */
+public interface ByteBufferReader {
+    Object readObject(String fromTopic, ByteBuffer buffer, int length) throws IOException;
+}
@@ -0,0 +1,14 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a message straight into the free space of the frame buffer, starting at the buffer position.
+ * If the message does not fit, the writer lets the {@link java.nio.BufferOverflowException} escape and is
+ * called again with a larger buffer, so only implement it for codecs that can size their output up front or
+ * write it cheaply. Others are better served by {@link ObjectByteWriter}.
+ */
+public interface ByteBufferWriter {
+    void write(String topic, Object msg, ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,118 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reader for {@link CachingJavaSerializer}. Keeps one ObjectInputStream over a source that is pointed at each
+ * message in turn, the descriptors defined by the writer, and the classes resolved for them.
+ */
+public class CachingJavaSerializationReader implements ObjectByteReader {
+
+    private final Source source = new Source();
+    private final List<ObjectStreamClass> descriptors = new ArrayList<>();
+    private final Map<String, Class<?>> classes = new HashMap<>();
+    private Input input;
+
+    public Object readObject(String fromTopic, byte[] buffer, int offset, int length) throws IOException {
+        source.set(buffer, offset, offset + length);
+        try {
+            if (input == null) {
+                input = new Input();
+            }
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        } catch (IOException | RuntimeException failed) {
+            input = null;
+            throw failed;
+        } finally {
+            source.set(null, 0, 0);
+        }
+    }
+
+    private class Input extends ObjectInputStream {
+
+        Input() throws IOException {
+            super(source);
+        }
+
+        @Override
+        protected void readStreamHeader() {
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            final int kind = readByte();
+            switch (kind) {
+                case CachingJavaSerializationWriter.INLINE:
+                    return super.readClassDescriptor();
+                case CachingJavaSerializationWriter.DEFINE:
+                    final ObjectStreamClass desc = super.readClassDescriptor();
+                    descriptors.add(desc);
+                    return desc;
+                case CachingJavaSerializationWriter.CACHED:
+                    final int handle = readInt();
+                    if (handle < 0 || handle >= descriptors.size()) {
+                        throw new StreamCorruptedException("Unknown class descriptor handle " + handle);
+                    }
+                    return descriptors.get(handle);
+                default:
+                    throw new StreamCorruptedException("Unknown class descriptor kind " + kind);
+            }
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> type = classes.get(desc.getName());
+            if (type == null) {
+                type = super.resolveClass(desc);
+                classes.put(desc.getName(), type);
+            }
+            return type;
+        }
+    }
+
+    private static class Source extends InputStream {
+        private byte[] buffer;
+        private int position;
+        private int end;
+
+        void set(byte[] buffer, int position, int end) {
+            this.buffer = buffer;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            return position < end ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            final int n = Math.min(len, end - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return end - position;
+        }
+    }
+}
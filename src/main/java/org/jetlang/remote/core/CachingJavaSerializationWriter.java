@@ -0,0 +1,100 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer for {@link CachingJavaSerializer}. Keeps one headerless ObjectOutputStream and resets it before each
+ * message, so object handles never span messages.
+ * <p>
+ * Class descriptors are prefixed by a kind byte. A caching writer defines each descriptor the first time it is used
+ * and afterwards sends only its handle. A non caching writer always sends descriptors inline.
+ */
+public class CachingJavaSerializationWriter implements ObjectByteWriter {
+
+    static final int INLINE = 0;
+    static final int DEFINE = 1;
+    static final int CACHED = 2;
+
+    private final JavaSerializationWriter.ByteStream bytes = new JavaSerializationWriter.ByteStream();
+    private final Map<Class<?>, Integer> handles;
+    private final List<Class<?>> defined;
+    private Output output;
+
+    public CachingJavaSerializationWriter(boolean cacheDescriptors) {
+        this.handles = cacheDescriptors ? new IdentityHashMap<>() : null;
+        this.defined = cacheDescriptors ? new ArrayList<>() : null;
+    }
+
+    public void write(String topic, Object msg, ByteMessageWriter writer) throws IOException {
+        bytes.reset();
+        final int mark = defined != null ? defined.size() : 0;
+        try {
+            if (output == null) {
+                output = new Output();
+            }
+            output.reset();
+            output.writeObject(msg);
+            output.flush();
+        } catch (IOException | RuntimeException failed) {
+            //the message is dropped, so the peer never sees descriptors defined by it.
+            forgetFrom(mark);
+            output = null;
+            throw failed;
+        }
+        writer.writeObjectAsBytes(bytes.getBuffer(), 0, bytes.size());
+    }
+
+    /**
+     * @return number of descriptors sent to the peer so far.
+     */
+    public int getDefinedDescriptors() {
+        return defined != null ? defined.size() : 0;
+    }
+
+    private void forgetFrom(int mark) {
+        if (defined == null) {
+            return;
+        }
+        while (defined.size() > mark) {
+            handles.remove(defined.remove(defined.size() - 1));
+        }
+    }
+
+    private class Output extends ObjectOutputStream {
+
+        Output() throws IOException {
+            super(bytes);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+            //the reader knows the format, so the header is never sent.
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            if (handles == null) {
+                writeByte(INLINE);
+                super.writeClassDescriptor(desc);
+                return;
+            }
+            final Class<?> type = desc.forClass();
+            final Integer handle = handles.get(type);
+            if (handle != null) {
+                writeByte(CACHED);
+                writeInt(handle);
+                return;
+            }
+            handles.put(type, defined.size());
+            defined.add(type);
+            writeByte(DEFINE);
+            super.writeClassDescriptor(desc);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.jetlang.remote.core;
+
+/**
+ * Java serialization that sends each class descriptor once per connection and refers to it by handle afterwards.
+ * Stream objects are reused across messages. Only wire compatible with itself.
+ * <p>
+ * The codecs hold per connection state, so every call to {@link #getWriter()} or {@link #getReader()} returns a new
+ * one. Call them once per connection. Writers shared by several connections, e.g. for {@link
+ * org.jetlang.remote.acceptor.NioJetlangSendFiber}, must come from {@link Factory#createForGlobalWriter()}.
+ */
+public class CachingJavaSerializer implements Serializer {
+
+    public ObjectByteWriter getWriter() {
+        return new CachingJavaSerializationWriter(true);
+    }
+
+    public ObjectByteReader getReader() {
+        return new CachingJavaSerializationReader();
+    }
+
+    public static class Factory implements SerializerFactory {
+
+        public Serializer create() {
+            return new CachingJavaSerializer();
+        }
+
+        /**
+         * Writes descriptors in full since the frames go to many connections.
+         */
+        public ObjectByteWriter createForGlobalWriter() {
+            return new CachingJavaSerializationWriter(false);
+        }
+
+    }
+}
@@ -0,0 +1,52 @@
+package org.jetlang.remote.core;
+
+/**
+ * Optional protocol features negotiated with the {@link MsgTypes#Hello} exchange.
+ * <p>
+ * The client offers the features it wants in a Hello frame. The acceptor answers with a HelloAck carrying the
+ * features both sides support, and every frame it sends after the ack uses them. The client switches its reader on
+ * the ack, then sends its own HelloAck and switches its writer. Peers that never send Hello use none of the features.
+ */
+public class Capabilities {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Topic strings are replaced by numeric aliases.
+     */
+    public static final int TOPIC_ALIASES = 1;
+    /**
+     * Queued messages are packed into batch frames.
+     */
+    public static final int BATCH = 1 << 1;
+    /**
+     * Topic lengths, payload sizes and request ids are varints.
+     */
+    public static final int VARINT_HEADERS = 1 << 2;
+    /**
+     * Frames over the sender's threshold may be compressed.
+     */
+    public static final int COMPRESSION = 1 << 3;
+    /**
+     * Replies may be streamed in parts. Without it, streamed replies are collected and sent as one list.
+     */
+    public static final int REPLY_STREAMS = 1 << 4;
+    /**
+     * Each side grants the other a window of data messages with {@link MsgTypes#Credit} frames, and holds its data
+     * messages once the granted credit is spent. Pre-serialized data frames count as one message each. Requests and
+     * replies are not counted.
+     */
+    public static final int CREDIT = 1 << 5;
+
+    private Capabilities() {
+
+    }
+
+    public static boolean has(int capabilities, int capability) {
+        return (capabilities & capability) != 0;
+    }
+
+    public static int set(int capabilities, int capability, boolean enabled) {
+        return enabled ? capabilities | capability : capabilities & ~capability;
+    }
+}
@@ -0,0 +1,95 @@
+package org.jetlang.remote.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for {@link MsgTypes#Compressed} frames on a connection. Updated by the send and receive threads.
+ */
+public class CompressionStats {
+
+    private final AtomicLong compressedFrames = new AtomicLong();
+    private final AtomicLong uncompressibleFrames = new AtomicLong();
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong decompressedFrames = new AtomicLong();
+    private final AtomicLong decompressedBytes = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    void onCompressed(int original, int compressed, long nanos) {
+        compressedFrames.incrementAndGet();
+        originalBytes.addAndGet(original);
+        compressedBytes.addAndGet(compressed);
+        compressNanos.addAndGet(nanos);
+    }
+
+    void onUncompressible(long nanos) {
+        uncompressibleFrames.incrementAndGet();
+        compressNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Counts a frame compressed, or found uncompressible, for another connection and sent to this one as is.
+     */
+    public void onShared(int original, int sent) {
+        if (sent < original) {
+            compressedFrames.incrementAndGet();
+            originalBytes.addAndGet(original);
+            compressedBytes.addAndGet(sent);
+        } else {
+            uncompressibleFrames.incrementAndGet();
+        }
+    }
+
+    void onDecompressed(int original, long nanos) {
+        decompressedFrames.incrementAndGet();
+        decompressedBytes.addAndGet(original);
+        decompressNanos.addAndGet(nanos);
+    }
+
+    public long getCompressedFrames() {
+        return compressedFrames.get();
+    }
+
+    /**
+     * Frames over the threshold that were sent as is because compressing didn't make them smaller.
+     */
+    public long getUncompressibleFrames() {
+        return uncompressibleFrames.get();
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return compressed bytes over original bytes for the frames sent compressed, or 1 if none were.
+     */
+    public double getRatio() {
+        final long original = originalBytes.get();
+        return original == 0 ? 1 : (double) compressedBytes.get() / original;
+    }
+
+    /**
+     * Time spent compressing, including frames that turned out uncompressible.
+     */
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    public long getDecompressedFrames() {
+        return decompressedFrames.get();
+    }
+
+    public long getDecompressedBytes() {
+        return decompressedBytes.get();
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+}
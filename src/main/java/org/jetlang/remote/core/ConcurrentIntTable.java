@@ -0,0 +1,182 @@
+package org.jetlang.remote.core;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open addressing hash table from int keys to values, without locks or boxed keys. Built for pending request ids:
+ * one owner thread puts, and any thread gets and removes. Keys must not be put twice while present.
+ * <p>
+ * A remove claims the entry itself, so each value is removed at most once even while the owner is rehashing. Removed
+ * entries are left as tombstones and dropped when the owner next rehashes.
+ */
+public class ConcurrentIntTable<T> {
+
+    private static final Object TOMBSTONE = new Object();
+    //rehash once live entries and tombstones fill this share of the slots.
+    private static final int LOAD_PERCENT = 50;
+
+    private static final class Entry<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Entry> REMOVED = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "removed");
+        private final int key;
+        private final T value;
+        private volatile int removed;
+
+        Entry(int key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean claim() {
+            return REMOVED.compareAndSet(this, 0, 1);
+        }
+
+        boolean isRemoved() {
+            return removed != 0;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Object> slots;
+    private volatile int size;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<ConcurrentIntTable> SIZE = AtomicIntegerFieldUpdater.newUpdater(ConcurrentIntTable.class, "size");
+    //owner thread only.
+    private int used;
+
+    /**
+     * @param capacity entries held before the first rehash.
+     */
+    public ConcurrentIntTable(int capacity) {
+        this.slots = new AtomicReferenceArray<>(tableSize(capacity));
+    }
+
+    private static int tableSize(int capacity) {
+        final long slots = Math.max(16L, (long) capacity * 100 / LOAD_PERCENT);
+        return Integer.highestOneBit((int) Math.min(slots - 1, 1 << 29)) << 1;
+    }
+
+    private static int index(int key, int mask) {
+        //spread sequential ids that differ only in high bits.
+        return (key ^ (key >>> 16)) & mask;
+    }
+
+    /**
+     * Owner thread only.
+     */
+    public void put(int key, T value) {
+        if ((used + 1) * 100L > (long) slots.length() * LOAD_PERCENT) {
+            rehash();
+        }
+        final Entry<T> entry = new Entry<>(key, value);
+        SIZE.incrementAndGet(this);
+        if (insert(slots, entry)) {
+            used++;
+        }
+    }
+
+    /**
+     * @return true if the entry took a never used slot rather than a tombstone.
+     */
+    private static boolean insert(AtomicReferenceArray<Object> table, Entry<?> entry) {
+        final int mask = table.length() - 1;
+        for (int i = index(entry.key, mask); ; i = (i + 1) & mask) {
+            final Object current = table.get(i);
+            if (current == null) {
+                table.set(i, entry);
+                return true;
+            }
+            //removers only ever swap a live entry for a tombstone, so losing the race means it is free now.
+            if ((current == TOMBSTONE || ((Entry<?>) current).isRemoved())
+                    && (table.compareAndSet(i, current, entry) || table.compareAndSet(i, TOMBSTONE, entry))) {
+                return false;
+            }
+        }
+    }
+
+    private void rehash() {
+        final AtomicReferenceArray<Object> old = slots;
+        final int live = size;
+        final int length = live * 100L * 2 > (long) old.length() * LOAD_PERCENT ? old.length() << 1 : old.length();
+        final AtomicReferenceArray<Object> fresh = new AtomicReferenceArray<>(length);
+        int count = 0;
+        for (int i = 0; i < old.length(); i++) {
+            final Object current = old.get(i);
+            if (current != null && current != TOMBSTONE && !((Entry<?>) current).isRemoved()) {
+                insert(fresh, (Entry<?>) current);
+                count++;
+            }
+        }
+        used = count;
+        slots = fresh;
+    }
+
+    /**
+     * @return the value, or null if absent or already removed.
+     */
+    public T get(int key) {
+        final Entry<T> entry = find(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @return the value, or null if absent or another thread removed it first.
+     */
+    public T remove(int key) {
+        AtomicReferenceArray<Object> table = slots;
+        final Entry<T> entry = find(table, key);
+        if (entry == null || !entry.claim()) {
+            return null;
+        }
+        SIZE.decrementAndGet(this);
+        tombstone(table, entry);
+        //the owner may have copied the entry into a new table meanwhile. it is skipped there, this just frees the slot.
+        if (slots != table) {
+            tombstone(slots, entry);
+        }
+        return entry.value;
+    }
+
+    private Entry<T> find(int key) {
+        return find(slots, key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T> find(AtomicReferenceArray<Object> table, int key) {
+        final int mask = table.length() - 1;
+        for (int i = index(key, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            final Object current = table.get(i);
+            if (current == null) {
+                return null;
+            }
+            if (current != TOMBSTONE) {
+                final Entry<T> entry = (Entry<T>) current;
+                if (entry.key == key && !entry.isRemoved()) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void tombstone(AtomicReferenceArray<Object> table, Entry<?> entry) {
+        final int mask = table.length() - 1;
+        for (int i = index(entry.key, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            final Object current = table.get(i);
+            if (current == null) {
+                return;
+            }
+            if (current == entry) {
+                table.compareAndSet(i, entry, TOMBSTONE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return entries put and not yet removed.
+     */
+    public int size() {
+        return size;
+    }
+}
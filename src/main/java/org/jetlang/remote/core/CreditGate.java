@@ -0,0 +1,124 @@
+package org.jetlang.remote.core;
+
+import java.util.ArrayDeque;
+
+/**
+ * Sender side of {@link Capabilities#CREDIT}. Data messages pass while the peer's credit lasts, then wait here and
+ * are written in order as the peer grants more. Unlimited until enabled.
+ * <p>
+ * Held writes are bounded, so a peer that stops granting credit can't grow the sender's heap without limit.
+ * <p>
+ * Used from the sending thread only. The counters may be read from any thread for monitoring.
+ */
+public class CreditGate {
+
+    public static final int DEFAULT_MAX_HELD = 8192;
+
+    private final ArrayDeque<Runnable> held = new ArrayDeque<>();
+    private int maxHeld = DEFAULT_MAX_HELD;
+    //-1 while unlimited.
+    private volatile long credit = -1;
+    private volatile int heldCount;
+
+    /**
+     * Starts counting from no credit. Called once the HelloAck negotiating credit is written.
+     */
+    public void enable() {
+        if (credit < 0) {
+            credit = 0;
+        }
+    }
+
+    public boolean isEnabled() {
+        return credit >= 0;
+    }
+
+    /**
+     * @return true if a data message may be written now, having taken one credit. False if it must be held.
+     */
+    public boolean tryAcquire() {
+        final long available = credit;
+        if (available < 0) {
+            return true;
+        }
+        if (available == 0 || !held.isEmpty()) {
+            return false;
+        }
+        credit = available - 1;
+        return true;
+    }
+
+    /**
+     * Writes held past this are refused. Set before the gate is used.
+     */
+    public void setMaxHeld(int maxHeld) {
+        this.maxHeld = maxHeld;
+    }
+
+    /**
+     * Queues a write until the peer grants credit for it.
+     *
+     * @return false, holding nothing, if the limit of held writes is reached.
+     */
+    public boolean hold(Runnable write) {
+        if (held.size() >= maxHeld) {
+            return false;
+        }
+        held.add(write);
+        heldCount = held.size();
+        return true;
+    }
+
+    /**
+     * Drops the longest held write, to make room for a newer one.
+     *
+     * @return false if none were held.
+     */
+    public boolean dropOldest() {
+        if (held.poll() == null) {
+            return false;
+        }
+        heldCount = held.size();
+        return true;
+    }
+
+    /**
+     * Adds credit, then runs held writes while it lasts. Ignored until enabled, so a Credit frame on a connection that
+     * didn't negotiate credit can't start the accounting.
+     */
+    public void grant(int messages) {
+        if (credit < 0) {
+            return;
+        }
+        long available = credit + messages;
+        while (available > 0 && !held.isEmpty()) {
+            available--;
+            credit = available;
+            held.poll().run();
+        }
+        credit = available;
+        heldCount = held.size();
+    }
+
+    /**
+     * Drops held writes, e.g. once the connection is closed.
+     */
+    public void clear() {
+        held.clear();
+        heldCount = 0;
+    }
+
+    /**
+     * @return data messages the peer accepts before writes are held, or -1 if unlimited.
+     */
+    public long getCredit() {
+        return credit;
+    }
+
+    /**
+     * @return data messages waiting for credit.
+     */
+    public int getHeldCount() {
+        return heldCount;
+    }
+}
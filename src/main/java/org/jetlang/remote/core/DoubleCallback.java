@@ -0,0 +1,10 @@
+package org.jetlang.remote.core;
+
+/**
+ * Receives double payloads without boxing.
+ *
+ * @see PrimitiveCodecs
+ */
+public interface DoubleCallback {
+    void onMessage(double value);
+}
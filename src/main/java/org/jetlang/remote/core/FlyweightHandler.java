@@ -0,0 +1,9 @@
+package org.jetlang.remote.core;
+
+/**
+ * Receives data messages in place on the read thread. The cursor and the bytes behind it are reused as soon
+ * as the callback returns, so anything needed later must be copied out.
+ */
+public interface FlyweightHandler {
+    void onMessage(MessageCursor message);
+}
@@ -0,0 +1,36 @@
+package org.jetlang.remote.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Topic to handler registry read by the receive thread on every data message. Registration copies the map, so
+ * lookups take no lock.
+ */
+public class FlyweightHandlers {
+
+    private volatile Map<String, FlyweightHandler> handlers = Collections.emptyMap();
+
+    public synchronized void register(String topic, FlyweightHandler handler) {
+        final Map<String, FlyweightHandler> copy = new HashMap<String, FlyweightHandler>(handlers);
+        copy.put(topic, handler);
+        handlers = copy;
+    }
+
+    /**
+     * Removes the handler only if it is still the one registered for the topic.
+     */
+    public synchronized void unregister(String topic, FlyweightHandler handler) {
+        if (handlers.get(topic) == handler) {
+            final Map<String, FlyweightHandler> copy = new HashMap<String, FlyweightHandler>(handlers);
+            copy.remove(topic);
+            handlers = copy;
+        }
+    }
+
+    public FlyweightHandler get(String topic) {
+        final Map<String, FlyweightHandler> current = handlers;
+        return current.isEmpty() ? null : current.get(topic);
+    }
+}
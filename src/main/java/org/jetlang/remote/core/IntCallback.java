@@ -0,0 +1,10 @@
+package org.jetlang.remote.core;
+
+/**
+ * Receives int payloads without boxing.
+ *
+ * @see PrimitiveCodecs
+ */
+public interface IntCallback {
+    void onMessage(int value);
+}
@@ -2,17 +2,26 @@ package org.jetlang.remote.core;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
 
 /**
  * User: mrettig
  * Date: 4/6/11
  * Time: 12:30 PM
  */
-public class JavaSerializationReader implements ObjectByteReader {
+public class JavaSerializationReader implements ObjectByteReader, ByteBufferReader {
 
     public Object readObject(String fromTopic, byte[] buffer, int offset, int length) throws IOException {
-        ByteArrayInputStream readStream = new ByteArrayInputStream(buffer, offset, length);
+        return read(new ByteArrayInputStream(buffer, offset, length));
+    }
+
+    public Object readObject(String fromTopic, ByteBuffer buffer, int length) throws IOException {
+        return read(new ByteBufferCodecs.ByteBufferInputStream(buffer));
+    }
+
+    private static Object read(InputStream readStream) throws IOException {
         try {
             return new ObjectInputStream(readStream).readObject();
         } catch (ClassNotFoundException e) {
@@ -30,9 +30,7 @@ public class JetlangRemotingInputStream {
             nextCommand = nextCommand.run();
         }
         buffer.compact();
-        if (nextCommand.getRequiredBytes() > buffer.capacity()) {
-            protocol.resizeBuffer(nextCommand.getRequiredBytes());
-        }
+        protocol.fitBuffer(nextCommand.getRequiredBytes());
         return true;
     }
 
@@ -6,13 +6,32 @@ import java.nio.charset.Charset;
 
 public class JetlangRemotingProtocol {
 
+    private static final int INITIAL_SIZE = 1024 * 8;
+
     public ByteBuffer buffer;
-    public byte[] bufferArray = new byte[1024 * 8];
+    //null when the buffer is direct.
+    public byte[] bufferArray;
+    private byte[] stringScratch = new byte[0];
     private final Handler session;
     private final Charset charset;
+    private final BufferPool pool = BufferPool.DEFAULT;
+    private final boolean directBuffer;
     private final DataRequest dataRequest = new DataRequest();
     private final DataRequestReply dataRequestReply = new DataRequestReply();
+    private final ReplyChunk replyChunk = new ReplyChunk();
+    private final FlyweightHandlers flyweights;
+    private final CompressionStats compressionStats;
+    private final MessageCursor cursor = new MessageCursor();
+    private boolean varIntHeaders;
+    //data messages granted to the peer, 0 unless credit is negotiated, and how many were read since the last grant.
+    private int creditWindow;
+    private int creditConsumed;
     private final DataReader d = new DataReader() {
+        @Override
+        protected FlyweightHandler flyweightFor(String dataTopicVal) {
+            return flyweights != null ? flyweights.get(dataTopicVal) : null;
+        }
+
         @Override
         protected State onObject(String dataTopicVal, Object readObject) {
             try {
@@ -20,6 +39,7 @@ public class JetlangRemotingProtocol {
             } catch (Exception failed) {
                 session.onHandlerException(failed);
             }
+            consumeCredit();
             return root;
         }
     };
@@ -47,6 +67,34 @@ public class JetlangRemotingProtocol {
                     return dataRequest.reqIdSt;
                 case MsgTypes.DataReply:
                     return dataRequestReply.reqIdSt;
+                case MsgTypes.TopicAlias:
+                    return topicAlias;
+                case MsgTypes.AliasedData:
+                    return d.aliased;
+                case MsgTypes.AliasedDataRequest:
+                    return dataRequest.aliasedReqIdSt;
+                case MsgTypes.AliasedDataReply:
+                    return dataRequestReply.aliasedReqIdSt;
+                case MsgTypes.Batch:
+                    return batch.lengthSt;
+                case MsgTypes.Hello:
+                    return hello.versionSt;
+                case MsgTypes.HelloAck:
+                    return helloAck.versionSt;
+                case MsgTypes.Compressed:
+                    return compressed.compressedLengthSt;
+                case MsgTypes.PatternSubscription:
+                    return patternSubRequest.first;
+                case MsgTypes.PatternUnsubscribe:
+                    return patternUnsubRequest.first;
+                case MsgTypes.ReplyChunk:
+                    return replyChunk.reqIdSt;
+                case MsgTypes.AliasedReplyChunk:
+                    return replyChunk.aliasedReqIdSt;
+                case MsgTypes.ReplyEnd:
+                    return replyEnd;
+                case MsgTypes.Credit:
+                    return credit;
                 default:
                     session.onUnknownMessage(read);
                     return this;
@@ -54,6 +102,29 @@ public class JetlangRemotingProtocol {
         }
     };
 
+    private final State credit = new VarIntState() {
+        @Override
+        protected State onValue(final int messages) throws IOException {
+            if (messages < 0) {
+                throw new IOException("Invalid credit " + messages);
+            }
+            execEvent(() -> session.onCredit(messages));
+            return root;
+        }
+    };
+
+    /**
+     * Grants the consumed messages back once half the window is read, so the peer rarely runs dry while the reader
+     * keeps up.
+     */
+    private void consumeCredit() {
+        if (creditWindow > 0 && ++creditConsumed >= Math.max(1, creditWindow / 2)) {
+            final int granted = creditConsumed;
+            creditConsumed = 0;
+            execEvent(() -> session.grantCredit(granted));
+        }
+    }
+
     private void execEvent(Runnable event) {
         try {
             event.run();
@@ -84,14 +155,361 @@ public class JetlangRemotingProtocol {
             return root;
         }
     };
-    private final ObjectByteReader reader;
+    private final StringState patternSubRequest = new StringState() {
+        @Override
+        protected State onString(String val) {
+            try {
+                session.onPatternSubscriptionRequest(val);
+            } catch (Exception failed) {
+                session.onHandlerException(failed);
+            }
+            return root;
+        }
+    };
+    private final StringState patternUnsubRequest = new StringState() {
+        @Override
+        protected State onString(String val) {
+            try {
+                session.onPatternUnsubscribeRequest(val);
+            } catch (Exception failed) {
+                session.onHandlerException(failed);
+            }
+            return root;
+        }
+    };
+    private final ByteBufferReader reader;
+    private String[] topicAliases = new String[16];
+
+    private final State topicAlias = new VarIntState() {
+        @Override
+        protected State onValue(int aliasId) throws IOException {
+            if (aliasId < 0 || aliasId >= TopicAliases.MAX_ALIASES) {
+                throw new IOException("Invalid topic alias " + aliasId);
+            }
+            aliasDeclaration.aliasId = aliasId;
+            return aliasDeclaration.first;
+        }
+    };
+
+    private final AliasDeclaration aliasDeclaration = new AliasDeclaration();
+
+    private class AliasDeclaration extends StringState {
+        int aliasId;
+
+        @Override
+        protected State onString(String val) {
+            if (aliasId >= topicAliases.length) {
+                String[] resized = new String[Math.max(aliasId + 1, topicAliases.length * 2)];
+                System.arraycopy(topicAliases, 0, resized, 0, topicAliases.length);
+                topicAliases = resized;
+            }
+            topicAliases[aliasId] = val.intern();
+            return root;
+        }
+    }
+
+    private String resolveAlias(int aliasId) throws IOException {
+        final String topic = aliasId >= 0 && aliasId < topicAliases.length ? topicAliases[aliasId] : null;
+        if (topic == null) {
+            throw new IOException("Undeclared topic alias " + aliasId);
+        }
+        return topic;
+    }
+
+    private final HelloReader hello = new HelloReader(false);
+    private final HelloReader helloAck = new HelloReader(true);
+
+    private class HelloReader {
+        private final boolean ack;
+        private int version;
+
+        HelloReader(boolean ack) {
+            this.ack = ack;
+        }
+
+        State versionSt = new VarIntState() {
+            @Override
+            protected State onValue(int value) {
+                version = value;
+                return capabilitiesSt;
+            }
+        };
+
+        State capabilitiesSt = new VarIntState() {
+            @Override
+            protected State onValue(final int capabilities) {
+                final int peerVersion = version;
+                if (ack) {
+                    //the peer writes every later frame with the negotiated features.
+                    varIntHeaders = Capabilities.has(capabilities, Capabilities.VARINT_HEADERS);
+                    execEvent(() -> session.onHelloAck(peerVersion, capabilities));
+                    if (Capabilities.has(capabilities, Capabilities.CREDIT)) {
+                        //after onHelloAck, so a client answers the ack before granting.
+                        creditWindow = session.getCreditWindow();
+                        final int window = creditWindow;
+                        if (window > 0) {
+                            execEvent(() -> session.grantCredit(window));
+                        }
+                    }
+                } else {
+                    execEvent(() -> session.onHello(peerVersion, capabilities));
+                }
+                return root;
+            }
+        };
+    }
+
+    private final BatchReader batch = new BatchReader();
+
+    /**
+     * Waits for the complete envelope, then runs the contained frames against the buffer limited to the
+     * envelope so a corrupt inner frame cannot read past it.
+     */
+    private class BatchReader {
+        private int batchLength;
+        private boolean inBatch;
+
+        State lengthSt = new State() {
+            public int getRequiredBytes() {
+                return 4;
+            }
+
+            public State run() throws IOException {
+                if (inBatch) {
+                    throw new IOException("Nested batch");
+                }
+                batchLength = buffer.getInt();
+                if (batchLength < 0) {
+                    throw new IOException("Invalid batch length " + batchLength);
+                }
+                return framesSt;
+            }
+        };
+
+        State framesSt = new State() {
+            public int getRequiredBytes() {
+                return batchLength;
+            }
+
+            public State run() throws IOException {
+                final int limit = buffer.limit();
+                buffer.limit(buffer.position() + batchLength);
+                inBatch = true;
+                try {
+                    runFrames("batch");
+                } finally {
+                    inBatch = false;
+                    buffer.limit(limit);
+                }
+                return root;
+            }
+        };
+    }
+
+    /**
+     * Runs the complete frames between the buffer's position and limit.
+     */
+    private void runFrames(String container) throws IOException {
+        State state = root;
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < state.getRequiredBytes()) {
+                throw new IOException("Truncated frame in " + container);
+            }
+            state = state.run();
+        }
+        if (state != root) {
+            throw new IOException("Truncated frame in " + container);
+        }
+    }
+
+    private final CompressedReader compressed = new CompressedReader();
+
+    /**
+     * Waits for the complete block, expands it into a scratch array and runs the frames it holds against that array.
+     */
+    private class CompressedReader {
+        private int compressedLength;
+        private int originalLength;
+        private boolean inCompressed;
+        private byte[] compressedScratch = new byte[0];
+        private byte[] expanded = new byte[0];
+
+        State compressedLengthSt = new VarIntState() {
+            @Override
+            protected State onValue(int value) throws IOException {
+                if (inCompressed) {
+                    throw new IOException("Nested compressed frame");
+                }
+                if (value < 0 || value > BlockCompressor.maxCompressedLength(BlockCompressor.MAX_BLOCK_SIZE)) {
+                    throw new IOException("Invalid compressed length " + value);
+                }
+                compressedLength = value;
+                return originalLengthSt;
+            }
+        };
+
+        State originalLengthSt = new VarIntState() {
+            @Override
+            protected State onValue(int value) throws IOException {
+                if (value < 0 || value > BlockCompressor.MAX_BLOCK_SIZE) {
+                    throw new IOException("Invalid original length " + value);
+                }
+                originalLength = value;
+                return blockSt;
+            }
+        };
+
+        State blockSt = new State() {
+            public int getRequiredBytes() {
+                return compressedLength;
+            }
+
+            public State run() throws IOException {
+                final long begin = System.nanoTime();
+                final byte[] src;
+                final int srcOffset;
+                if (bufferArray != null) {
+                    src = bufferArray;
+                    srcOffset = buffer.position();
+                    buffer.position(srcOffset + compressedLength);
+                } else {
+                    compressedScratch = fit(compressedScratch, compressedLength);
+                    buffer.get(compressedScratch, 0, compressedLength);
+                    src = compressedScratch;
+                    srcOffset = 0;
+                }
+                expanded = fit(expanded, originalLength);
+                BlockCompressor.decompress(src, srcOffset, compressedLength, expanded, 0, originalLength);
+                if (compressionStats != null) {
+                    compressionStats.onDecompressed(originalLength, System.nanoTime() - begin);
+                }
+                final ByteBuffer received = buffer;
+                final byte[] receivedArray = bufferArray;
+                buffer = ByteBuffer.wrap(expanded, 0, originalLength);
+                bufferArray = expanded;
+                inCompressed = true;
+                try {
+                    runFrames("compressed frame");
+                } finally {
+                    inCompressed = false;
+                    buffer = received;
+                    bufferArray = receivedArray;
+                    shrink();
+                }
+                return root;
+            }
+        };
+
+        private byte[] fit(byte[] scratch, int size) {
+            if (scratch.length >= size) {
+                return scratch;
+            }
+            release(scratch);
+            return pool.acquire(size);
+        }
+
+        private void shrink() {
+            if (expanded.length > ByteArrayBuffer.SHRINK_THRESHOLD) {
+                release(expanded);
+                expanded = new byte[0];
+            }
+            if (compressedScratch.length > ByteArrayBuffer.SHRINK_THRESHOLD) {
+                release(compressedScratch);
+                compressedScratch = new byte[0];
+            }
+        }
+
+        void release() {
+            release(expanded);
+            expanded = new byte[0];
+            release(compressedScratch);
+            compressedScratch = new byte[0];
+        }
+
+        private void release(byte[] scratch) {
+            if (scratch.length > 0) {
+                pool.release(scratch);
+            }
+        }
+    }
 
     public void resizeBuffer(int requiredBytes) {
-        bufferArray = new byte[requiredBytes];
-        ByteBuffer b = ByteBuffer.wrap(bufferArray);
+        final ByteBuffer b;
+        if (buffer.isDirect()) {
+            b = pool.acquireDirect(requiredBytes);
+        } else {
+            b = ByteBuffer.wrap(pool.acquire(requiredBytes));
+        }
         buffer.flip();
         b.put(buffer);
+        pool.release(buffer);
         buffer = b;
+        bufferArray = b.isDirect() ? null : b.array();
+    }
+
+    /**
+     * Call after compacting the buffer. Grows it to hold the next frame, or returns an oversized buffer to the pool
+     * once the large frame that needed it has been consumed.
+     */
+    public void fitBuffer(int requiredBytes) {
+        if (requiredBytes > buffer.capacity()) {
+            resizeBuffer(requiredBytes);
+        } else if (buffer.capacity() > ByteArrayBuffer.SHRINK_THRESHOLD
+                && requiredBytes <= INITIAL_SIZE && buffer.position() <= INITIAL_SIZE) {
+            resizeBuffer(INITIAL_SIZE);
+        }
+    }
+
+    /**
+     * Returns the receive buffer and decompression scratch to the pool if no partial frame is buffered, so an idle
+     * connection holds no receive memory. Call after compacting the buffer.
+     *
+     * @return true if the buffer is parked. {@link #unparkBuffer} provides one for the next read.
+     */
+    public boolean parkBuffer() {
+        if (buffer == null) {
+            return true;
+        }
+        if (buffer.position() != 0) {
+            return false;
+        }
+        compressed.release();
+        pool.release(buffer);
+        buffer = null;
+        bufferArray = null;
+        return true;
+    }
+
+    /**
+     * @return the receive buffer, taking a new one from the pool if it was parked.
+     */
+    public ByteBuffer unparkBuffer(int requiredBytes) {
+        if (buffer == null) {
+            allocateBuffer(Math.max(INITIAL_SIZE, requiredBytes));
+        }
+        return buffer;
+    }
+
+    private void allocateBuffer(int size) {
+        if (directBuffer) {
+            this.buffer = pool.acquireDirect(size);
+            this.bufferArray = null;
+        } else {
+            this.bufferArray = pool.acquire(size);
+            this.buffer = ByteBuffer.wrap(this.bufferArray);
+        }
+    }
+
+    /**
+     * Returns the receive buffer to the pool. The protocol must not be used afterwards.
+     */
+    public void releaseBuffer() {
+        compressed.release();
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            bufferArray = null;
+        }
     }
 
     public interface Handler {
@@ -113,13 +531,123 @@ public class JetlangRemotingProtocol {
         void onRequestReply(int reqId, String dataTopicVal, Object readObject);
 
         void onHandlerException(Exception failed);
+
+        /**
+         * The peer subscribes to every topic matching a {@link TopicTrie} pattern.
+         */
+        default void onPatternSubscriptionRequest(String pattern) {
+            onUnknownMessage(MsgTypes.PatternSubscription);
+        }
+
+        default void onPatternUnsubscribeRequest(String pattern) {
+            onUnknownMessage(MsgTypes.PatternUnsubscribe);
+        }
+
+        /**
+         * One part of a streamed reply. Parts arrive in order and end with {@link #onReplyEnd}.
+         */
+        default void onReplyChunk(int reqId, String dataTopicVal, Object readObject) {
+            onUnknownMessage(MsgTypes.ReplyChunk);
+        }
+
+        default void onReplyEnd(int reqId) {
+            onUnknownMessage(MsgTypes.ReplyEnd);
+        }
+
+        /**
+         * The peer accepts this many more data messages. See {@link Capabilities#CREDIT}.
+         */
+        default void onCredit(int messages) {
+            onUnknownMessage(MsgTypes.Credit);
+        }
+
+        /**
+         * Data messages granted to the peer once credit is negotiated, 0 to grant none. Read when the peer's
+         * HelloAck arrives.
+         */
+        default int getCreditWindow() {
+            return 0;
+        }
+
+        /**
+         * Writes a {@link MsgTypes#Credit} frame. Called with the window after the HelloAck, then with the messages
+         * read each time half the window is consumed.
+         */
+        default void grantCredit(int messages) {
+        }
+
+        /**
+         * The peer offers {@link Capabilities}. Answer with a {@link MsgTypes#HelloAck}.
+         */
+        default void onHello(int version, int capabilities) {
+        }
+
+        /**
+         * The peer's frames after this one use the negotiated {@link Capabilities}. The protocol has already
+         * switched its reader.
+         */
+        default void onHelloAck(int version, int capabilities) {
+        }
+
+        /**
+         * Data messages on topics with a registered handler skip deserialization and {@link #onMessage}.
+         * Read once when the protocol is created.
+         */
+        default FlyweightHandlers getFlyweightHandlers() {
+            return null;
+        }
+
+        /**
+         * Receives decompression counters. Read once when the protocol is created.
+         */
+        default CompressionStats getCompressionStats() {
+            return null;
+        }
     }
 
     public JetlangRemotingProtocol(Handler session, ObjectByteReader reader, Charset charset) {
+        this(session, reader, charset, false);
+    }
+
+    /**
+     * @param directBuffer receive into a direct buffer, which a channel fills without the JDK's temporary direct copy.
+     *                     Payloads are copied out to an array unless the reader implements {@link ByteBufferReader}.
+     *                     Direct buffers can't be filled from an InputStream.
+     */
+    public JetlangRemotingProtocol(Handler session, ObjectByteReader reader, Charset charset, boolean directBuffer) {
         this.session = session;
         this.charset = charset;
-        this.buffer = ByteBuffer.wrap(this.bufferArray);
-        this.reader = reader;
+        this.directBuffer = directBuffer;
+        allocateBuffer(INITIAL_SIZE);
+        this.reader = ByteBufferCodecs.reader(reader);
+        this.flyweights = session.getFlyweightHandlers();
+        this.compressionStats = session.getCompressionStats();
+    }
+
+    /**
+     * Reads topic lengths, payload sizes and request ids as unsigned varints. Switch only between frames.
+     */
+    public void setVarIntHeaders(boolean varIntHeaders) {
+        this.varIntHeaders = varIntHeaders;
+    }
+
+    public boolean getVarIntHeaders() {
+        return varIntHeaders;
+    }
+
+    private String readString(int size) {
+        final String val;
+        if (bufferArray != null) {
+            val = new String(bufferArray, buffer.position(), size, charset);
+            buffer.position(buffer.position() + size);
+        } else {
+            if (stringScratch.length < size) {
+                stringScratch = new byte[Math.max(size, 64)];
+            }
+            buffer.get(stringScratch, 0, size);
+            val = new String(stringScratch, 0, size, charset);
+        }
+        return val;
     }
 
     public interface State {
@@ -128,6 +656,38 @@ public class JetlangRemotingProtocol {
         State run() throws IOException;
     }
 
+    /**
+     * Reads an unsigned LEB128 varint one byte at a time.
+     */
+    private abstract class VarIntState implements State {
+        private int value;
+        private int shift;
+
+        public int getRequiredBytes() {
+            return 1;
+        }
+
+        public State run() throws IOException {
+            final int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                final int result = value;
+                value = 0;
+                shift = 0;
+                return onValue(result);
+            }
+            shift += 7;
+            if (shift > 28) {
+                value = 0;
+                shift = 0;
+                throw new IOException("Malformed varint");
+            }
+            return this;
+        }
+
+        protected abstract State onValue(int value) throws IOException;
+    }
+
     private abstract class StringState {
         private int stringSize;
         State getSubRequestString = new State() {
@@ -136,9 +696,13 @@ public class JetlangRemotingProtocol {
             }
 
             public State run() throws IOException {
-                String val = new String(bufferArray, buffer.position(), stringSize, charset);
-                buffer.position(buffer.position() + stringSize);
-                return onString(val);
+                return onString(readString(stringSize));
+            }
+        };
+        private final State varIntSize = new VarIntState() {
+            @Override
+            protected State onValue(int value) throws IOException {
+                return onSize(value);
             }
         };
         State first = new State() {
@@ -146,12 +710,22 @@ public class JetlangRemotingProtocol {
                 return 1;
             }
 
-            public State run() {
-                stringSize = buffer.get();
-                return getSubRequestString;
+            public State run() throws IOException {
+                if (varIntHeaders) {
+                    return varIntSize.run();
+                }
+                return onSize(buffer.get());
             }
         };
 
+        private State onSize(int size) throws IOException {
+            if (size < 0) {
+                throw new IOException("Invalid string length " + size);
+            }
+            stringSize = size;
+            return getSubRequestString;
+        }
+
         protected abstract State onString(String val) throws IOException;
     }
 
@@ -164,17 +738,53 @@ public class JetlangRemotingProtocol {
             }
 
             public State run() throws IOException {
-                final Object readObject = reader.readObject(dataTopicVal, bufferArray, buffer.position(), dataSizeVal);
-                buffer.position(buffer.position() + dataSizeVal);
+                final int start = buffer.position();
+                final FlyweightHandler flyweight = flyweightFor(dataTopicVal);
+                if (flyweight != null) {
+                    cursor.set(dataTopicVal, buffer, start, dataSizeVal);
+                    try {
+                        flyweight.onMessage(cursor);
+                    } catch (Exception failed) {
+                        session.onHandlerException(failed);
+                    } finally {
+                        cursor.clear();
+                        buffer.position(start + dataSizeVal);
+                    }
+                    //only data messages have flyweights.
+                    consumeCredit();
+                    return root;
+                }
+                final int limit = buffer.limit();
+                final Object readObject;
+                buffer.limit(start + dataSizeVal);
+                try {
+                    readObject = reader.readObject(dataTopicVal, buffer, dataSizeVal);
+                } finally {
+                    buffer.limit(limit);
+                    buffer.position(start + dataSizeVal);
+                }
                 return onObject(dataTopicVal, readObject);
             }
         };
+        private final State varIntDataSize = new VarIntState() {
+            @Override
+            protected State onValue(int value) throws IOException {
+                if (value < 0) {
+                    throw new IOException("Invalid data size " + value);
+                }
+                dataSizeVal = value;
+                return dataSizeRead;
+            }
+        };
         State dataSize = new State() {
             public int getRequiredBytes() {
-                return 4;
+                return varIntHeaders ? 1 : 4;
             }
 
-            public State run() {
+            public State run() throws IOException {
+                if (varIntHeaders) {
+                    return varIntDataSize.run();
+                }
                 dataSizeVal = buffer.getInt();
                 return dataSizeRead;
             }
@@ -186,6 +796,17 @@ public class JetlangRemotingProtocol {
                 return dataSize;
             }
         };
+        State aliased = new VarIntState() {
+            @Override
+            protected State onValue(int aliasId) throws IOException {
+                dataTopicVal = resolveAlias(aliasId);
+                return dataSize;
+            }
+        };
+
+        protected FlyweightHandler flyweightFor(String dataTopicVal) {
+            return null;
+        }
 
         protected abstract State onObject(String dataTopicVal, Object readObject) throws IOException;
     }
@@ -205,6 +826,43 @@ public class JetlangRemotingProtocol {
         }
     }
 
+    private class ReplyChunk extends DataRequestBase {
+
+        @Override
+        protected void handleRequest(int reqId, String dataTopicVal, Object readObject) {
+            session.onReplyChunk(reqId, dataTopicVal, readObject);
+        }
+    }
+
+    private final State varIntReplyEnd = new VarIntState() {
+        @Override
+        protected State onValue(int reqId) {
+            return onReplyEnd(reqId);
+        }
+    };
+
+    private final State replyEnd = new State() {
+        public int getRequiredBytes() {
+            return varIntHeaders ? 1 : 4;
+        }
+
+        public State run() throws IOException {
+            if (varIntHeaders) {
+                return varIntReplyEnd.run();
+            }
+            return onReplyEnd(buffer.getInt());
+        }
+    };
+
+    private State onReplyEnd(int reqId) {
+        try {
+            session.onReplyEnd(reqId);
+        } catch (Exception failed) {
+            session.onHandlerException(failed);
+        }
+        return root;
+    }
+
     private abstract class DataRequestBase {
         int reqId;
 
@@ -222,16 +880,32 @@ public class JetlangRemotingProtocol {
 
         protected abstract void handleRequest(int reqId, String dataTopicVal, Object readObject);
 
-        State reqIdSt = new State() {
-            public int getRequiredBytes() {
-                return 4;
-            }
+        State reqIdSt = reqIdState(data.first.first);
 
-            public State run() {
-                reqId = buffer.getInt();
-                return data.first.first;
-            }
-        };
+        State aliasedReqIdSt = reqIdState(data.aliased);
+
+        private State reqIdState(final State next) {
+            final State varIntReqId = new VarIntState() {
+                @Override
+                protected State onValue(int value) {
+                    reqId = value;
+                    return next;
+                }
+            };
+            return new State() {
+                public int getRequiredBytes() {
+                    return varIntHeaders ? 1 : 4;
+                }
+
+                public State run() throws IOException {
+                    if (varIntHeaders) {
+                        return varIntReqId.run();
+                    }
+                    reqId = buffer.getInt();
+                    return next;
+                }
+            };
+        }
     }
 
 }
@@ -0,0 +1,10 @@
+package org.jetlang.remote.core;
+
+/**
+ * Receives long payloads without boxing.
+ *
+ * @see PrimitiveCodecs
+ */
+public interface LongCallback {
+    void onMessage(long value);
+}
@@ -0,0 +1,82 @@
+package org.jetlang.remote.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable view of a payload in the receive buffer. Indexes passed to the getters are relative to the start of the
+ * payload and use the byte order of the buffer (big endian by default).
+ */
+public class MessageCursor {
+
+    private String topic;
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    void set(String topic, ByteBuffer buffer, int offset, int length) {
+        this.topic = topic;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    void clear() {
+        this.topic = null;
+        this.buffer = null;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * The whole receive buffer, which may be direct. Use absolute gets starting at {@link #getOffset()}.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte getByte(int index) {
+        return buffer.get(offset + index);
+    }
+
+    public short getShort(int index) {
+        return buffer.getShort(offset + index);
+    }
+
+    public int getInt(int index) {
+        return buffer.getInt(offset + index);
+    }
+
+    public long getLong(int index) {
+        return buffer.getLong(offset + index);
+    }
+
+    public double getDouble(int index) {
+        return buffer.getDouble(offset + index);
+    }
+
+    public void copyTo(byte[] target, int targetOffset) {
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, target, targetOffset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                target[targetOffset + i] = buffer.get(offset + i);
+            }
+        }
+    }
+
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        copyTo(copy, 0);
+        return copy;
+    }
+}
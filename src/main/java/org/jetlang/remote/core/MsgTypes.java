@@ -9,6 +9,52 @@ public class MsgTypes {
     public static final int Unsubscribe = 5;
     public static final int DataRequest = 6;
     public static final int DataReply = 7;
+    /**
+     * Declares a topic alias for the connection: varint alias id followed by the topic string.
+     */
+    public static final int TopicAlias = 8;
+    /**
+     * Same as Data, DataRequest and DataReply except the topic is replaced by a varint alias id.
+     */
+    public static final int AliasedData = 9;
+    public static final int AliasedDataRequest = 10;
+    public static final int AliasedDataReply = 11;
+    /**
+     * Int byte length followed by that many bytes of complete frames. Batches are not nested.
+     */
+    public static final int Batch = 12;
+    /**
+     * Varint protocol version followed by the varint {@link Capabilities} the client offers. Changes no framing.
+     */
+    public static final int Hello = 13;
+    /**
+     * Same layout as Hello. Carries the negotiated capabilities, which every later frame from the sender uses.
+     */
+    public static final int HelloAck = 14;
+    /**
+     * Varint compressed length, varint original length, then complete frames compressed with {@link BlockCompressor}.
+     * Compressed frames are not nested.
+     */
+    public static final int Compressed = 15;
+    /**
+     * Same layout as Subscription and Unsubscribe, with a {@link TopicTrie} pattern in place of the topic.
+     */
+    public static final int PatternSubscription = 16;
+    public static final int PatternUnsubscribe = 17;
+    /**
+     * Same layout as DataReply and AliasedDataReply. One part of a streamed reply, followed by more parts and a ReplyEnd
+     * with the same request id.
+     */
+    public static final int ReplyChunk = 18;
+    public static final int AliasedReplyChunk = 19;
+    /**
+     * Request id alone. Ends a streamed reply.
+     */
+    public static final int ReplyEnd = 20;
+    /**
+     * Varint count of further data messages the receiver accepts. See {@link Capabilities#CREDIT}.
+     */
+    public static final int Credit = 21;
 
     private MsgTypes() {
 
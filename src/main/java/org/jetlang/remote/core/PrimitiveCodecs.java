@@ -0,0 +1,133 @@
+package org.jetlang.remote.core;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size big endian codecs for topics that carry a single long, double or int, and flyweight handlers that
+ * decode those payloads in place so subscribers receive primitives without boxing or allocating.
+ * <p>
+ * Each codec serves as the {@link Serializer} for a connection whose topics all carry the same primitive. The
+ * handlers only need the payload format, so they also work with a serializer that writes primitives this way for
+ * some topics and delegates the rest.
+ */
+public final class PrimitiveCodecs {
+
+    private PrimitiveCodecs() {
+    }
+
+    public static FlyweightHandler longHandler(final LongCallback callback) {
+        return msg -> callback.onMessage(checked(msg, 8).getLong(0));
+    }
+
+    public static FlyweightHandler doubleHandler(final DoubleCallback callback) {
+        return msg -> callback.onMessage(checked(msg, 8).getDouble(0));
+    }
+
+    public static FlyweightHandler intHandler(final IntCallback callback) {
+        return msg -> callback.onMessage(checked(msg, 4).getInt(0));
+    }
+
+    private static MessageCursor checked(MessageCursor msg, int size) {
+        if (msg.getLength() != size) {
+            throw new IllegalArgumentException(msg.getTopic() + " payload is " + msg.getLength() + " bytes, expected " + size);
+        }
+        return msg;
+    }
+
+    /**
+     * Shared by the fixed size codecs. The writer keeps a scratch array, so an instance is not thread safe.
+     */
+    public static abstract class Codec implements Serializer, ObjectByteWriter, ByteBufferWriter, ObjectByteReader, ByteBufferReader {
+        private final int size;
+        private final byte[] bytes;
+        private final ByteBuffer scratch;
+
+        Codec(int size) {
+            this.size = size;
+            this.bytes = new byte[size];
+            this.scratch = ByteBuffer.wrap(bytes);
+        }
+
+        public ObjectByteWriter getWriter() {
+            return this;
+        }
+
+        public ObjectByteReader getReader() {
+            return this;
+        }
+
+        public void write(String topic, Object msg, ByteMessageWriter writer) throws IOException {
+            scratch.clear();
+            put(msg, scratch);
+            writer.writeObjectAsBytes(bytes, 0, size);
+        }
+
+        public void write(String topic, Object msg, ByteBuffer buffer) {
+            put(msg, buffer);
+        }
+
+        public Object readObject(String fromTopic, byte[] buffer, int offset, int length) throws IOException {
+            checkLength(fromTopic, length);
+            return get(ByteBuffer.wrap(buffer, offset, length));
+        }
+
+        public Object readObject(String fromTopic, ByteBuffer buffer, int length) throws IOException {
+            checkLength(fromTopic, length);
+            return get(buffer);
+        }
+
+        private void checkLength(String topic, int length) throws StreamCorruptedException {
+            if (length != size) {
+                throw new StreamCorruptedException(topic + " payload is " + length + " bytes, expected " + size);
+            }
+        }
+
+        abstract void put(Object msg, ByteBuffer buffer);
+
+        abstract Object get(ByteBuffer buffer);
+    }
+
+    public static class LongCodec extends Codec {
+        public LongCodec() {
+            super(8);
+        }
+
+        void put(Object msg, ByteBuffer buffer) {
+            buffer.putLong(((Number) msg).longValue());
+        }
+
+        Object get(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    }
+
+    public static class DoubleCodec extends Codec {
+        public DoubleCodec() {
+            super(8);
+        }
+
+        void put(Object msg, ByteBuffer buffer) {
+            buffer.putDouble(((Number) msg).doubleValue());
+        }
+
+        Object get(ByteBuffer buffer) {
+            return buffer.getDouble();
+        }
+    }
+
+    public static class IntCodec extends Codec {
+        public IntCodec() {
+            super(4);
+        }
+
+        void put(Object msg, ByteBuffer buffer) {
+            buffer.putInt(((Number) msg).intValue());
+        }
+
+        Object get(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    }
+}
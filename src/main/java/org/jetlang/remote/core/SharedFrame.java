@@ -0,0 +1,70 @@
+package org.jetlang.remote.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable serialized frame shared by every session it is queued for, so fan-out to backed up sessions holds one
+ * copy per message rather than one per session. Each holder releases its reference once done, and the last release
+ * returns the array to the pool.
+ * <p>
+ * References are counted without synchronization, so a frame is shared by the sessions of one send fiber only.
+ */
+public final class SharedFrame {
+
+    private final BufferPool pool;
+    private final byte[] bytes;
+    private final int length;
+    private int refs = 1;
+
+    private SharedFrame(BufferPool pool, byte[] bytes, int length) {
+        this.pool = pool;
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    /**
+     * @return a frame holding one reference, owned by the caller.
+     */
+    public static SharedFrame copyOf(BufferPool pool, byte[] src, int offset, int length) {
+        final byte[] bytes = pool.acquire(length);
+        System.arraycopy(src, offset, bytes, 0, length);
+        return new SharedFrame(pool, bytes, length);
+    }
+
+    public SharedFrame retain() {
+        if (refs <= 0) {
+            throw new IllegalStateException("Frame already released");
+        }
+        refs++;
+        return this;
+    }
+
+    /**
+     * @return true if this was the last reference.
+     */
+    public boolean release() {
+        if (refs <= 0) {
+            throw new IllegalStateException("Frame already released");
+        }
+        if (--refs == 0) {
+            pool.release(bytes);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return a new read only view of the frame, with its own position.
+     */
+    public ByteBuffer view() {
+        return ByteBuffer.wrap(bytes, 0, length).asReadOnlyBuffer();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int refCount() {
+        return refs;
+    }
+}
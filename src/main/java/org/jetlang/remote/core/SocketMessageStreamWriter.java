@@ -5,6 +5,8 @@ import org.jetlang.remote.acceptor.MessageStreamWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * User: mrettig
@@ -14,29 +16,105 @@ import java.nio.charset.Charset;
 public class SocketMessageStreamWriter implements MessageStreamWriter {
     private final Charset charset;
     private final ObjectByteWriter writer;
+    //non-null when the codec writes straight into the frame buffer.
+    private final ByteBufferWriter bufferWriter;
     private final ByteArrayBuffer buffer;
     private final Out socketOutputStream;
+    private final BatchEnvelope batch;
+    private TopicAliases aliases;
+    private BitSet declaredAliases;
+    private boolean varIntHeaders;
+    private int compressionThreshold = -1;
+    private CompressionStats compressionStats = new CompressionStats();
+    private BlockCompressor compressor;
+    private byte[] compressed = new byte[0];
+    //length of the frame last offered to the compressor, or -1 if it was under the threshold.
+    private int lastCompressionInput = -1;
 
     public SocketMessageStreamWriter(Out socket, Charset charset, ObjectByteWriter writer) {
         this.charset = charset;
         this.writer = writer;
+        this.bufferWriter = writer instanceof ByteBufferWriter ? (ByteBufferWriter) writer : null;
         this.socketOutputStream = socket;
         this.buffer = socketOutputStream.getBuffer();
+        this.batch = new BatchEnvelope(buffer);
     }
 
     public SocketMessageStreamWriter(ClosableOutputStream socket, Charset charset, ObjectByteWriter writer) throws IOException {
         this(new BufferedStream(new ByteArrayBuffer(), socket), charset, writer);
     }
 
+    /**
+     * Enables topic aliases for subsequent data, request and reply frames. Aliases not yet in the declared set
+     * are declared inline ahead of the frame that first uses them.
+     *
+     * @param aliases         alias table, or null to send topics as strings.
+     * @param declaredAliases ids already declared to the receiving connection.
+     */
+    public void setTopicAliases(TopicAliases aliases, BitSet declaredAliases) {
+        this.aliases = aliases;
+        this.declaredAliases = declaredAliases;
+    }
+
+    /**
+     * Switches topic lengths, payload sizes and request ids to unsigned varints. The receiving protocol must be
+     * switched too. Without varint headers, topics longer than 127 bytes are rejected.
+     */
+    public void setVarIntHeaders(boolean varIntHeaders) {
+        this.varIntHeaders = varIntHeaders;
+    }
+
+    public boolean getVarIntHeaders() {
+        return varIntHeaders;
+    }
+
+    /**
+     * Applies negotiated {@link Capabilities} to subsequent frames. Aliases start from a new table the first time
+     * they are enabled. Batching is up to the caller.
+     */
+    public void setCapabilities(int capabilities) {
+        if (Capabilities.has(capabilities, Capabilities.TOPIC_ALIASES)) {
+            if (aliases == null) {
+                setTopicAliases(new TopicAliases(charset), new BitSet());
+            }
+        } else {
+            setTopicAliases(null, null);
+        }
+        setVarIntHeaders(Capabilities.has(capabilities, Capabilities.VARINT_HEADERS));
+    }
+
+    /**
+     * Compresses data, request and reply frames of at least the threshold size. The receiver must have
+     * negotiated {@link Capabilities#COMPRESSION}.
+     *
+     * @param threshold smallest frame to compress, or -1 to disable compression.
+     */
+    public void setCompression(int threshold, CompressionStats stats) {
+        this.compressionThreshold = threshold;
+        this.compressionStats = stats;
+        if (threshold >= 0 && compressor == null) {
+            compressor = new BlockCompressor();
+        }
+    }
+
+    public void writeHello(int msgType, int version, int capabilities) throws IOException {
+        batch.close();
+        buffer.appendIntAsByte(msgType);
+        buffer.appendVarInt(version);
+        buffer.appendVarInt(capabilities);
+        socketOutputStream.flush();
+    }
+
     public void writeByteAsInt(int byteToWrite) throws IOException {
+        flushBatch();
         socketOutputStream.write(byteToWrite);
     }
 
     public void writeSubscription(int msgType, String subject, Charset charset) throws IOException {
-        byte[] bytes = subject.getBytes(charset);
+        batch.close();
+        byte[] bytes = topicBytes(subject, charset);
         buffer.appendIntAsByte(msgType);
-        buffer.appendIntAsByte(bytes.length);
-        buffer.append(bytes);
+        appendTopic(bytes);
         socketOutputStream.flush();
     }
 
@@ -46,19 +124,46 @@ public class SocketMessageStreamWriter implements MessageStreamWriter {
 
     private final ByteMessageWriter byteMessageWriter = new ByteMessageWriter() {
         public void writeObjectAsBytes(byte[] data, int offset, int length) {
-            buffer.appendInt(length);
+            appendSize(length);
             buffer.append(data, offset, length);
         }
     };
 
     public void write(String topic, Object msg) throws IOException {
-        buffer.appendIntAsByte(MsgTypes.Data);
-        writeData(topic, msg);
+        batch.close();
+        writeWithoutFlush(topic, msg);
+        socketOutputStream.flush();
+    }
+
+    public void writeToBatch(String topic, Object msg) throws IOException {
+        batch.open();
+        writeWithoutFlush(topic, msg);
+        if (batch.added()) {
+            socketOutputStream.flush();
+        }
+    }
+
+    public void flushBatch() throws IOException {
+        if (batch.isOpen()) {
+            batch.close();
+            socketOutputStream.flush();
+        }
     }
 
     public int writeWithoutFlush(String topic, Object msg) throws IOException {
-        buffer.appendIntAsByte(MsgTypes.Data);
-        writeIntoBuffer(topic, msg);
+        final int start = buffer.position;
+        final TopicAliases.Alias alias = aliasFor(topic);
+        if (alias != null) {
+            buffer.appendIntAsByte(MsgTypes.AliasedData);
+            buffer.appendVarInt(alias.getId());
+            writePayload(topic, msg);
+        } else {
+            final byte[] topicBytes = topicBytes(topic, charset);
+            buffer.appendIntAsByte(MsgTypes.Data);
+            appendTopic(topicBytes);
+            writePayload(topic, msg);
+        }
+        compressFrom(start);
         return buffer.position;
     }
 
@@ -68,30 +173,181 @@ public class SocketMessageStreamWriter implements MessageStreamWriter {
     }
 
     public void writeRequest(int id, String reqTopic, Object req) throws IOException {
-        buffer.appendIntAsByte(MsgTypes.DataRequest);
-        buffer.appendInt(id);
-        writeData(reqTopic, req);
+        writeWithRequestId(MsgTypes.DataRequest, MsgTypes.AliasedDataRequest, id, reqTopic, req);
+    }
+
+    public void writeRequests(int firstReqId, String reqTopic, List<?> reqs) throws IOException {
+        for (int i = 0; i < reqs.size(); i++) {
+            appendWithRequestId(MsgTypes.DataRequest, MsgTypes.AliasedDataRequest, firstReqId + i, reqTopic, reqs.get(i));
+        }
+        socketOutputStream.flush();
     }
 
     public void writeReply(int reqId, String requestTopic, Object replyMsg) throws IOException {
-        buffer.appendIntAsByte(MsgTypes.DataReply);
-        buffer.appendInt(reqId);
-        writeData(requestTopic, replyMsg);
+        writeWithRequestId(MsgTypes.DataReply, MsgTypes.AliasedDataReply, reqId, requestTopic, replyMsg);
+    }
+
+    public void writeReplyChunk(int reqId, String requestTopic, Object chunk) throws IOException {
+        writeWithRequestId(MsgTypes.ReplyChunk, MsgTypes.AliasedReplyChunk, reqId, requestTopic, chunk);
+    }
+
+    public void writeReplyEnd(int reqId) throws IOException {
+        batch.close();
+        buffer.appendIntAsByte(MsgTypes.ReplyEnd);
+        appendRequestId(reqId);
+        socketOutputStream.flush();
+    }
+
+    public void writeCredit(int messages) throws IOException {
+        batch.close();
+        buffer.appendIntAsByte(MsgTypes.Credit);
+        buffer.appendVarInt(messages);
+        socketOutputStream.flush();
     }
 
-    private void writeData(String topic, Object req) throws IOException {
-        writeIntoBuffer(topic, req);
+    private void writeWithRequestId(int msgType, int aliasedMsgType, int reqId, String topic, Object msg) throws IOException {
+        appendWithRequestId(msgType, aliasedMsgType, reqId, topic, msg);
         socketOutputStream.flush();
     }
 
+    private void appendWithRequestId(int msgType, int aliasedMsgType, int reqId, String topic, Object msg) throws IOException {
+        batch.close();
+        final int start = buffer.position;
+        final TopicAliases.Alias alias = aliasFor(topic);
+        if (alias != null) {
+            buffer.appendIntAsByte(aliasedMsgType);
+            appendRequestId(reqId);
+            buffer.appendVarInt(alias.getId());
+            writePayload(topic, msg);
+        } else {
+            final byte[] topicBytes = topicBytes(topic, charset);
+            buffer.appendIntAsByte(msgType);
+            appendRequestId(reqId);
+            appendTopic(topicBytes);
+            writePayload(topic, msg);
+        }
+        compressFrom(start);
+    }
+
+    private TopicAliases.Alias aliasFor(String topic) {
+        if (aliases == null) {
+            return null;
+        }
+        final TopicAliases.Alias alias = aliases.get(topic);
+        if (alias == null || (alias.requiresVarIntHeaders() && !varIntHeaders)) {
+            return null;
+        }
+        if (!declaredAliases.get(alias.getId())) {
+            buffer.append(alias.getDeclaration());
+            declaredAliases.set(alias.getId());
+        }
+        return alias;
+    }
+
+    /**
+     * @return length before compression of the last frame offered to the compressor, or -1 if the last frame
+     * wasn't. The frame was compressed if it is now shorter.
+     */
+    public int getLastCompressionInput() {
+        return lastCompressionInput;
+    }
+
+    /**
+     * Replaces the frames appended since start with a compressed frame, unless they are under the threshold or
+     * don't get smaller.
+     */
+    private void compressFrom(int start) {
+        final int length = buffer.position - start;
+        lastCompressionInput = -1;
+        if (compressionThreshold < 0 || length < compressionThreshold || length > BlockCompressor.MAX_BLOCK_SIZE) {
+            return;
+        }
+        lastCompressionInput = length;
+        final long begin = System.nanoTime();
+        final int max = BlockCompressor.maxCompressedLength(length);
+        if (compressed.length < max) {
+            releaseCompressed();
+            compressed = BufferPool.DEFAULT.acquire(max);
+        }
+        final int size = compressor.compress(buffer.buffer, start, length, compressed, 0);
+        final int frameSize = 1 + ByteArrayBuffer.varIntSize(size) + ByteArrayBuffer.varIntSize(length) + size;
+        if (frameSize >= length) {
+            compressionStats.onUncompressible(System.nanoTime() - begin);
+        } else {
+            buffer.position = start;
+            buffer.appendIntAsByte(MsgTypes.Compressed);
+            buffer.appendVarInt(size);
+            buffer.appendVarInt(length);
+            buffer.append(compressed, 0, size);
+            compressionStats.onCompressed(length, frameSize, System.nanoTime() - begin);
+        }
+        if (compressed.length > ByteArrayBuffer.SHRINK_THRESHOLD) {
+            releaseCompressed();
+        }
+    }
+
+    private void releaseCompressed() {
+        if (compressed.length > 0) {
+            BufferPool.DEFAULT.release(compressed);
+            compressed = new byte[0];
+        }
+    }
+
     public void writeIntoBuffer(String topic, Object req) throws IOException {
-        byte[] topicBytes = topic.getBytes(charset);
-        buffer.appendIntAsByte(topicBytes.length);
+        appendTopic(topicBytes(topic, charset));
+        writePayload(topic, req);
+    }
+
+    /**
+     * Checked before any part of the frame is written, so a rejected topic leaves the stream intact.
+     */
+    private byte[] topicBytes(String topic, Charset charset) {
+        final byte[] bytes = topic.getBytes(charset);
+        if (!varIntHeaders && bytes.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Topic longer than " + Byte.MAX_VALUE + " bytes requires varint headers: " + topic);
+        }
+        return bytes;
+    }
+
+    private void appendTopic(byte[] topicBytes) {
+        if (varIntHeaders) {
+            buffer.appendVarInt(topicBytes.length);
+        } else {
+            buffer.appendIntAsByte(topicBytes.length);
+        }
         buffer.append(topicBytes);
-        writer.write(topic, req, byteMessageWriter);
+    }
+
+    private void appendRequestId(int reqId) {
+        if (varIntHeaders) {
+            buffer.appendVarInt(reqId);
+        } else {
+            buffer.appendInt(reqId);
+        }
+    }
+
+    private void appendSize(int size) {
+        if (varIntHeaders) {
+            buffer.appendVarInt(size);
+        } else {
+            buffer.appendInt(size);
+        }
+    }
+
+    private void writePayload(String topic, Object msg) throws IOException {
+        if (bufferWriter != null) {
+            if (varIntHeaders) {
+                buffer.appendVarIntSized(topic, msg, bufferWriter);
+            } else {
+                buffer.appendSized(topic, msg, bufferWriter);
+            }
+        } else {
+            writer.write(topic, msg, byteMessageWriter);
+        }
     }
 
     public void writeBytes(byte[] bytes) throws IOException {
+        flushBatch();
         socketOutputStream.writeBytes(bytes);
     }
 
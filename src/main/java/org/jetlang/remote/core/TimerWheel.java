@@ -0,0 +1,197 @@
+package org.jetlang.remote.core;
+
+import org.jetlang.core.Callback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for large numbers of timeouts owned by one thread. Scheduling and cancelling are O(1) and
+ * expiry is checked once per tick, so timeouts fire up to one tick late. Deadlines further out than one turn of the
+ * wheel wait in their slot for the later turn.
+ * <p>
+ * Not thread safe. The owner calls {@link #advance} regularly, which also updates the coarse clock returned by
+ * {@link #now()}.
+ */
+public class TimerWheel<T> {
+
+    private static final int IDLE = -1;
+    //due on the tick being advanced but not fired yet.
+    private static final int FIRING = -2;
+
+    private final long tickMs;
+    private final Timeout<T>[] slots;
+    private final int mask;
+    private final long startMs;
+    private final List<Timeout<T>> expired = new ArrayList<>();
+    private long tick;
+    private long nowMs;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMs, int wheelSize, long nowMs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tick must be positive: " + tickMs);
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.slots = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startMs = nowMs;
+        this.nowMs = nowMs;
+    }
+
+    public static final class Timeout<T> {
+        private final TimerWheel<T> wheel;
+        private final T value;
+        private long deadlineTick;
+        private int slot = IDLE;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(TimerWheel<T> wheel, T value) {
+            this.wheel = wheel;
+            this.value = value;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public boolean isPending() {
+            return slot != IDLE;
+        }
+
+        /**
+         * @return false if the timeout already fired or was cancelled.
+         */
+        public boolean cancel() {
+            if (slot == IDLE) {
+                return false;
+            }
+            if (slot == FIRING) {
+                slot = IDLE;
+            } else {
+                wheel.unlink(this);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param delayMs from the wheel's clock. Rounded up to whole ticks, at least one.
+     */
+    public Timeout<T> schedule(T value, long delayMs) {
+        final Timeout<T> timeout = new Timeout<>(this, value);
+        reschedule(timeout, delayMs);
+        return timeout;
+    }
+
+    /**
+     * Schedules a timeout again, whether or not it is pending, so periodic timers reuse their entry.
+     */
+    public void reschedule(Timeout<T> timeout, long delayMs) {
+        if (timeout.slot >= 0) {
+            unlink(timeout);
+        }
+        final long elapsedMs = nowMs - startMs + Math.max(delayMs, 0);
+        timeout.deadlineTick = Math.max(tick + 1, (elapsedMs + tickMs - 1) / tickMs);
+        final int slot = (int) (timeout.deadlineTick & mask);
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = IDLE;
+        size--;
+    }
+
+    /**
+     * Moves the clock to now and fires every timeout that is due, in tick order. Callbacks may schedule and cancel
+     * timeouts.
+     *
+     * @return timeouts fired.
+     */
+    public int advance(long nowMs, Callback<T> onExpired) {
+        if (nowMs <= this.nowMs) {
+            return 0;
+        }
+        this.nowMs = nowMs;
+        final long target = (nowMs - startMs) / tickMs;
+        if (size == 0) {
+            //nothing to fire, so a clock left idle catches up without walking the slots.
+            tick = Math.max(tick, target);
+            return 0;
+        }
+        int fired = 0;
+        while (tick < target) {
+            tick++;
+            Timeout<T> timeout = slots[(int) (tick & mask)];
+            while (timeout != null) {
+                final Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= tick) {
+                    unlink(timeout);
+                    timeout.slot = FIRING;
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+            //collected first, so a callback cancelling or rescheduling another timeout can't break the walk.
+            for (int i = 0; i < expired.size(); i++) {
+                final Timeout<T> due = expired.get(i);
+                if (due.slot == FIRING) {
+                    due.slot = IDLE;
+                    fired++;
+                    onExpired.onMessage(due.value);
+                }
+            }
+            expired.clear();
+        }
+        return fired;
+    }
+
+    /**
+     * @return milliseconds from the monotonic clock, which the wall clock stepping back or forward doesn't move. Only
+     * meaningful as a difference, so use it for the wheel's clock rather than System.currentTimeMillis.
+     */
+    public static long monotonicMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * @return the time of the last advance. Cheaper than reading the system clock.
+     */
+    public long now() {
+        return nowMs;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    /**
+     * @return pending timeouts.
+     */
+    public int size() {
+        return size;
+    }
+}
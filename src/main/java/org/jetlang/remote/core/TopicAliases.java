@@ -0,0 +1,112 @@
+package org.jetlang.remote.core;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns numeric aliases to topics so data frames can carry a varint id instead of the topic string.
+ * An alias must be declared to a connection with a {@link MsgTypes#TopicAlias} frame before it is used.
+ * Ids are assigned sequentially. Once the table is full, topics are no longer aliased and are sent as strings.
+ * <p>
+ * Not thread safe. Must be used from a single send thread.
+ */
+public class TopicAliases {
+
+    /**
+     * Largest alias id a receiver will accept.
+     */
+    public static final int MAX_ALIASES = 1 << 16;
+
+    //cached for topics looked up once the table is full, so they cost a lookup and no encoding.
+    private static final Alias NOT_ALIASED = new Alias(-1, null, new byte[0]);
+
+    private final Map<String, Alias> aliases = new HashMap<String, Alias>();
+    private final Charset charset;
+    private final int maxAliases;
+    private int assigned;
+    private int unaliased;
+
+    public TopicAliases(Charset charset) {
+        this(charset, 4096);
+    }
+
+    public TopicAliases(Charset charset, int maxAliases) {
+        if (maxAliases > MAX_ALIASES) {
+            throw new IllegalArgumentException("maxAliases " + maxAliases + " > " + MAX_ALIASES);
+        }
+        this.charset = charset;
+        this.maxAliases = maxAliases;
+    }
+
+    /**
+     * @return the alias for the topic, or null if the table is full.
+     */
+    public Alias get(String topic) {
+        Alias alias = aliases.get(topic);
+        if (alias == null) {
+            if (assigned < maxAliases) {
+                alias = new Alias(assigned++, topic, topic.getBytes(charset));
+                aliases.put(topic, alias);
+            } else if (unaliased < maxAliases) {
+                //bounded, so topics that never repeat can't grow the map without limit.
+                unaliased++;
+                aliases.put(topic, NOT_ALIASED);
+                return null;
+            } else {
+                return null;
+            }
+        }
+        return alias != NOT_ALIASED ? alias : null;
+    }
+
+    /**
+     * @return aliases assigned.
+     */
+    public int size() {
+        return assigned;
+    }
+
+    public static class Alias {
+        private final int id;
+        private final String topic;
+        private final byte[] declaration;
+        private final boolean varIntLength;
+
+        Alias(int id, String topic, byte[] topicBytes) {
+            this.id = id;
+            this.topic = topic;
+            ByteArrayBuffer frame = new ByteArrayBuffer();
+            frame.appendIntAsByte(MsgTypes.TopicAlias);
+            frame.appendVarInt(id);
+            //up to 127 bytes the varint is the one byte length every receiver reads.
+            frame.appendVarInt(topicBytes.length);
+            frame.append(topicBytes);
+            this.declaration = frame.toByteArray();
+            this.varIntLength = topicBytes.length > Byte.MAX_VALUE;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * @return true if the topic is too long for a one byte length, so only receivers with
+         * {@link Capabilities#VARINT_HEADERS} can read the declaration.
+         */
+        public boolean requiresVarIntHeaders() {
+            return varIntLength;
+        }
+
+        /**
+         * @return the complete TopicAlias frame that declares this alias.
+         */
+        public byte[] getDeclaration() {
+            return declaration;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.jetlang.remote.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Values registered under topic patterns, looked up by concrete topic. Topics are split into segments on '.'. In a
+ * pattern, {@value #ANY} matches exactly one segment and a final {@value #REST} matches one or more, so
+ * <code>prices.EUR.*</code> matches <code>prices.EUR.USD</code> and <code>prices.&gt;</code> matches every topic
+ * under <code>prices</code>.
+ * <p>
+ * Matches are cached per topic until the patterns change, so repeat lookups are a hash lookup. Not thread safe.
+ */
+public class TopicTrie<T> {
+
+    public static final String ANY = "*";
+    public static final String REST = ">";
+    //the cache is dropped rather than grown past this, for publishers with unbounded topics.
+    private static final int MAX_CACHED = 64 * 1024;
+
+    private final Node<T> root = new Node<>();
+    private final Map<String, List<T>> cache = new HashMap<>();
+    private int size;
+
+    private static class Node<T> {
+        private Map<String, Node<T>> children;
+        private Node<T> any;
+        //patterns ending here.
+        private List<T> values;
+        //patterns ending here with the rest wildcard.
+        private List<T> rest;
+
+        Node<T> child(String segment, boolean create) {
+            if (ANY.equals(segment)) {
+                if (any == null && create) {
+                    any = new Node<>();
+                }
+                return any;
+            }
+            if (children == null) {
+                if (!create) {
+                    return null;
+                }
+                children = new HashMap<>();
+            }
+            Node<T> child = children.get(segment);
+            if (child == null && create) {
+                child = new Node<>();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * @return false if the value was already registered under the pattern.
+     */
+    public boolean add(String pattern, T value) {
+        final String[] segments = split(pattern);
+        Node<T> node = root;
+        for (int i = 0; i < segments.length - 1; i++) {
+            node = node.child(segments[i], true);
+        }
+        final String last = segments[segments.length - 1];
+        final List<T> values;
+        if (REST.equals(last)) {
+            if (node.rest == null) {
+                node.rest = new ArrayList<>(1);
+            }
+            values = node.rest;
+        } else {
+            node = node.child(last, true);
+            if (node.values == null) {
+                node.values = new ArrayList<>(1);
+            }
+            values = node.values;
+        }
+        if (values.contains(value)) {
+            return false;
+        }
+        values.add(value);
+        size++;
+        cache.clear();
+        return true;
+    }
+
+    /**
+     * @return false if the value wasn't registered under the pattern. Emptied nodes are kept for reuse.
+     */
+    public boolean remove(String pattern, T value) {
+        final String[] segments = split(pattern);
+        Node<T> node = root;
+        for (int i = 0; i < segments.length - 1 && node != null; i++) {
+            node = node.child(segments[i], false);
+        }
+        if (node == null) {
+            return false;
+        }
+        final String last = segments[segments.length - 1];
+        final List<T> values;
+        if (REST.equals(last)) {
+            values = node.rest;
+        } else {
+            node = node.child(last, false);
+            values = node == null ? null : node.values;
+        }
+        if (values == null || !values.remove(value)) {
+            return false;
+        }
+        size--;
+        cache.clear();
+        return true;
+    }
+
+    /**
+     * @return values of every pattern matching the topic, each once, in no particular order. Shared and unmodifiable.
+     */
+    public List<T> match(String topic) {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<T> matched = cache.get(topic);
+        if (matched == null) {
+            final Set<T> found = new LinkedHashSet<>();
+            collect(root, topic, 0, found);
+            matched = found.isEmpty() ? Collections.<T>emptyList() : Collections.unmodifiableList(new ArrayList<>(found));
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(topic, matched);
+        }
+        return matched;
+    }
+
+    private void collect(Node<T> node, String topic, int from, Set<T> found) {
+        if (node.rest != null) {
+            found.addAll(node.rest);
+        }
+        final int end = topic.indexOf('.', from);
+        final String segment = end == -1 ? topic.substring(from) : topic.substring(from, end);
+        final Node<T> exact = node.children == null ? null : node.children.get(segment);
+        if (exact != null) {
+            visit(exact, topic, end, found);
+        }
+        if (node.any != null) {
+            visit(node.any, topic, end, found);
+        }
+    }
+
+    private void visit(Node<T> node, String topic, int end, Set<T> found) {
+        if (end == -1) {
+            if (node.values != null) {
+                found.addAll(node.values);
+            }
+        } else {
+            collect(node, topic, end + 1, found);
+        }
+    }
+
+    /**
+     * @return registered pattern and value pairs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pattern has an empty segment or {@value #REST} before the end.
+     */
+    public static void checkPattern(String pattern) {
+        split(pattern);
+    }
+
+    private static String[] split(String pattern) {
+        final String[] segments = pattern.split("\\.", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].isEmpty()) {
+                throw new IllegalArgumentException("Empty segment in pattern: " + pattern);
+            }
+            if (REST.equals(segments[i]) && i != segments.length - 1) {
+                throw new IllegalArgumentException(REST + " must be the last segment: " + pattern);
+            }
+        }
+        return segments;
+    }
+}
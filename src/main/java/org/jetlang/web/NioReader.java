@@ -3,6 +3,8 @@ package org.jetlang.web;
 import org.jetlang.fibers.NioChannelHandler;
 import org.jetlang.fibers.NioControls;
 import org.jetlang.fibers.NioFiber;
+import org.jetlang.remote.core.BufferPool;
+import org.jetlang.remote.core.ByteArrayBuffer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -17,6 +19,7 @@ public class NioReader<T> implements NioChannelHandler {
     private ByteBuffer bb;
     private final SocketChannel channel;
     private final int maxReadLoops;
+    private final int readBufferSizeInBytes;
     private State current;
 
     public NioReader(SocketChannel channel, NioFiber fiber, NioControls controls, HttpRequestHandler<T> handler, int readBufferSizeInBytes, int maxReadLoops, SessionFactory<T> fact, SessionDispatcherFactory<T> dispatcherFact) {
@@ -24,7 +27,8 @@ public class NioReader<T> implements NioChannelHandler {
         this.maxReadLoops = maxReadLoops;
         this.headerReader = new HeaderReader<>(channel, fiber, controls, handler, fact, dispatcherFact);
         this.current = headerReader.start();
-        this.bb = bufferAllocate(readBufferSizeInBytes);
+        this.readBufferSizeInBytes = readBufferSizeInBytes;
+        this.bb = pooledAllocate(readBufferSizeInBytes);
     }
 
     public boolean onRead() throws IOException {
@@ -44,9 +48,9 @@ public class NioReader<T> implements NioChannelHandler {
                 }
                 bb.compact();
                 if (bb.remaining() == 0 || bb.remaining() < current.minRequiredBytes()) {
-                    ByteBuffer resize = bufferAllocate(bb.capacity() + Math.max(1024, current.minRequiredBytes()));
-                    bb.flip();
-                    bb = resize.put(bb);
+                    resize(Math.max(bb.capacity() * 2, bb.position() + current.minRequiredBytes()));
+                } else if (bb.position() == 0 && bb.capacity() > Math.max(readBufferSizeInBytes, ByteArrayBuffer.SHRINK_THRESHOLD)) {
+                    resize(readBufferSizeInBytes);
                 }
             } else {
                 break;
@@ -55,6 +59,18 @@ public class NioReader<T> implements NioChannelHandler {
         return current.continueReading();
     }
 
+    private void resize(int size) {
+        ByteBuffer resize = pooledAllocate(size);
+        bb.flip();
+        resize.put(bb);
+        BufferPool.DEFAULT.release(bb);
+        bb = resize;
+    }
+
+    private static ByteBuffer pooledAllocate(int size) {
+        return ByteBuffer.wrap(BufferPool.DEFAULT.acquire(size)).order(ByteOrder.BIG_ENDIAN);
+    }
+
     public static ByteBuffer bufferAllocate(int size) {
         return ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
     }
@@ -67,6 +83,10 @@ public class NioReader<T> implements NioChannelHandler {
     public void onClosed() {
         this.headerReader.onClose();
         current.onClosed();
+        if (bb != null) {
+            BufferPool.DEFAULT.release(bb);
+            bb = null;
+        }
     }
 
     public interface State {
@@ -3,6 +3,8 @@ package org.jetlang.web;
 import org.jetlang.fibers.NioControls;
 import org.jetlang.fibers.NioFiber;
 import org.jetlang.fibers.NioFiberImpl;
+import org.jetlang.remote.core.BufferPool;
+import org.jetlang.remote.core.ByteArrayBuffer;
 
 import java.io.IOException;
 import java.net.SocketAddress;
@@ -160,13 +162,22 @@ public class NioWriter {
                 }
             }
             bb.flip();
-            return doSend(bb);
+            final SendResult result = doSend(bb);
+            if (reusedWsWriteBuffer.capacity() > ByteArrayBuffer.SHRINK_THRESHOLD) {
+                //don't pin the buffer for one large message.
+                BufferPool.DEFAULT.release(reusedWsWriteBuffer);
+                reusedWsWriteBuffer = null;
+            }
+            return result;
         }
     }
 
     private ByteBuffer wsbufferAllocate(int requiredSize) {
         if (reusedWsWriteBuffer == null || reusedWsWriteBuffer.capacity() < requiredSize) {
-            reusedWsWriteBuffer = NioReader.bufferAllocateDirect(requiredSize);
+            if (reusedWsWriteBuffer != null) {
+                BufferPool.DEFAULT.release(reusedWsWriteBuffer);
+            }
+            reusedWsWriteBuffer = BufferPool.DEFAULT.acquireDirect(requiredSize);
         } else {
             reusedWsWriteBuffer.clear();
         }
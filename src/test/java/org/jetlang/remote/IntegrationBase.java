@@ -31,6 +31,7 @@ public abstract class IntegrationBase {
     JetlangClientConfig clientConfig = new JetlangClientConfig();
     JavaSerializer.Factory serializerFactory = new JavaSerializer.Factory();
     SerializerAdapter serAdapter = new SerializerAdapter(serializerFactory);
+    ErrorHandler sessionErrors = new ErrorHandler.SysOut();
 
 
     SocketConnector conn = new SocketConnector("localhost", 8081);
@@ -410,6 +411,149 @@ public abstract class IntegrationBase {
     }
 
 
+    @Test
+    public void topicAliasing() throws IOException {
+        sessionConfig.setTopicAliasing(true);
+        clientConfig.setTopicAliasing(true);
+        publishBothWays("aliased.topic");
+    }
+
+    @Test
+    public void batchPublishing() throws IOException {
+        sessionConfig.setBatchPublishing(true);
+        clientConfig.setBatchPublishing(true);
+        publishBothWays("batched.topic");
+    }
+
+    @Test
+    public void varIntHeadersAllowLongTopics() throws IOException {
+        sessionConfig.setVarIntHeaders(true);
+        clientConfig.setVarIntHeaders(true);
+        StringBuilder topic = new StringBuilder();
+        while (topic.length() < 200) {
+            topic.append("region.desk.book.");
+        }
+        publishBothWays(topic.toString());
+    }
+
+    @Test
+    public void varIntSessionIsDisconnectedForEnqueuedRawFrame() throws IOException, InterruptedException {
+        assertRawFrameDisconnectsVarIntSession(true);
+    }
+
+    @Test
+    public void varIntSessionIsDisconnectedForPublishedRawFrame() throws IOException, InterruptedException {
+        assertRawFrameDisconnectsVarIntSession(false);
+    }
+
+    @Test
+    public void enqueuedFrameWithMessageReachesVarIntSession() throws IOException {
+        sessionConfig.setVarIntHeaders(true);
+        clientConfig.setVarIntHeaders(true);
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        NewSessionHandler sessionCallback = wrap(new NewFiberSessionHandler() {
+            public void onNewSession(ClientPublisher pub, JetlangFiberSession session) {
+                subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            }
+        });
+        Acceptor acceptor = createAcceptor(sessionCallback);
+
+        Thread runner = new Thread(acceptor);
+        runner.start();
+
+        EventAssert<Object> msgReceived = new EventAssert<Object>(1);
+        JetlangClient client = createClient();
+        client.subscribe("topic", msgReceived.asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+
+        handler.enqueueToAllSubscribedClients("topic", "mymsg", serAdapter.createBuffered().createArray("topic", "mymsg"));
+
+        msgReceived.assertEvent();
+        assertEquals("mymsg", msgReceived.takeFromReceived());
+        close(client);
+        acceptor.stop();
+    }
+
+    private void assertRawFrameDisconnectsVarIntSession(final boolean enqueue) throws IOException, InterruptedException {
+        sessionConfig.setVarIntHeaders(true);
+        clientConfig.setVarIntHeaders(true);
+        final byte[] frame = serAdapter.createBuffered().createArray("topic", "raw");
+        final EventAssert<Exception> refused = EventAssert.create(1);
+        sessionErrors = new ErrorHandler() {
+            public void onException(Exception e) {
+                refused.receiveMessage(e);
+            }
+        };
+        final EventAssert<JetlangSession> openEvent = new EventAssert<JetlangSession>(1);
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        NewSessionHandler sessionCallback = wrap(new NewFiberSessionHandler() {
+            public void onNewSession(ClientPublisher pub, JetlangFiberSession session) {
+                subscriptions.subscribe(session.getSubscriptionRequestChannel());
+                openEvent.receiveMessage(session);
+            }
+        });
+        Acceptor acceptor = createAcceptor(sessionCallback);
+
+        Thread runner = new Thread(acceptor);
+        runner.start();
+
+        //don't allow reconnects
+        clientConfig.setReconnectDelayInMs(-1);
+        EventAssert<Object> msgReceived = new EventAssert<Object>(0);
+        JetlangClient client = createClient();
+        EventAssert<CloseEvent> clientClose = EventAssert.expect(1, client.getCloseChannel());
+        client.subscribe("topic", msgReceived.asSubscribable());
+        client.start();
+        openEvent.assertEvent();
+        subscriptions.assertEvent();
+        if (enqueue) {
+            handler.enqueueToAllSubscribedClients("topic", frame);
+        } else {
+            openEvent.takeFromReceived().publish(frame);
+        }
+        refused.assertEvent();
+        assertTrue(refused.takeFromReceived().getMessage().startsWith("Raw frame with fixed headers"));
+        clientClose.assertEvent();
+        msgReceived.assertEvent();
+        acceptor.stop();
+    }
+
+    private void publishBothWays(String topicName) throws IOException {
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<SessionMessage<?>> serverMessageReceive = new EventAssert<SessionMessage<?>>(2);
+        NewSessionHandler sessionCallback = wrap(new NewFiberSessionHandler() {
+            public void onNewSession(ClientPublisher pub, JetlangFiberSession session) {
+                subscriptions.subscribe(session.getSubscriptionRequestChannel());
+                serverMessageReceive.subscribe(session.getSessionMessageChannel());
+            }
+        });
+        Acceptor acceptor = createAcceptor(sessionCallback);
+
+        Thread runner = new Thread(acceptor);
+        runner.start();
+
+        EventAssert<Object> msgReceived = new EventAssert<Object>(2);
+        JetlangClient client = createClient();
+        client.subscribe(topicName, msgReceived.asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+        SessionTopic topic = subscriptions.takeFromReceived();
+        topic.publish("first");
+        topic.publish("second");
+        msgReceived.assertEvent();
+        assertEquals("first", msgReceived.takeFromReceived());
+        assertEquals("second", msgReceived.takeFromReceived());
+
+        client.publish("toServer", "one");
+        client.publish("toServer", "two");
+        serverMessageReceive.assertEvent();
+        assertEquals("one", serverMessageReceive.takeFromReceived().getMessage());
+        assertEquals("two", serverMessageReceive.takeFromReceived().getMessage());
+        close(client);
+        acceptor.stop();
+    }
+
     @Test
     public void regression() throws IOException, InterruptedException {
         final EventAssert<SessionTopic> subscriptionReceived = new EventAssert<SessionTopic>(1);
@@ -481,7 +625,7 @@ public abstract class IntegrationBase {
     private Acceptor createAcceptor(NewSessionHandler newSession) throws IOException {
         handler = new JetlangClientHandler(serializerFactory, newSession,
                 service, sessionConfig, new JetlangClientHandler.FiberFactory.ThreadFiberFactory(),
-                new ErrorHandler.SysOut());
+                sessionErrors);
         return new Acceptor(
                 new ServerSocket(8081),
                 new Acceptor.ErrorHandler.SysOut(),
@@ -0,0 +1,1206 @@
+package org.jetlang.remote;
+
+import org.jetlang.core.Callback;
+import org.jetlang.core.SynchronousDisposingExecutor;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.NioFiber;
+import org.jetlang.fibers.NioFiberImpl;
+import org.jetlang.fibers.ThreadFiber;
+import org.jetlang.remote.acceptor.BufferedSerializer;
+import org.jetlang.remote.acceptor.JetlangNioSession;
+import org.jetlang.remote.acceptor.JetlangSessionConfig;
+import org.jetlang.remote.acceptor.NioAcceptorHandler;
+import org.jetlang.remote.acceptor.NioJetlangReaderPool;
+import org.jetlang.remote.acceptor.NioJetlangRemotingClientFactory;
+import org.jetlang.remote.acceptor.NioJetlangSendFiber;
+import org.jetlang.remote.acceptor.NioJetlangSendFiberGroup;
+import org.jetlang.remote.acceptor.ReplyStream;
+import org.jetlang.remote.acceptor.SendBufferEvent;
+import org.jetlang.remote.acceptor.SessionCloseEvent;
+import org.jetlang.remote.acceptor.SessionMessage;
+import org.jetlang.remote.acceptor.SessionRequest;
+import org.jetlang.remote.acceptor.SessionTopic;
+import org.jetlang.remote.acceptor.SlowConsumerPolicy;
+import org.jetlang.remote.client.ConnectEvent;
+import org.jetlang.remote.client.JetlangClientConfig;
+import org.jetlang.remote.client.JetlangTcpClient;
+import org.jetlang.remote.client.SocketConnector;
+import org.jetlang.remote.client.TimeoutControls;
+import org.jetlang.remote.core.CachingJavaSerializer;
+import org.jetlang.remote.core.Capabilities;
+import org.jetlang.remote.core.ErrorHandler;
+import org.jetlang.remote.core.JavaSerializationReader;
+import org.jetlang.remote.core.JavaSerializer;
+import org.jetlang.remote.core.MsgTypes;
+import org.jetlang.remote.core.PrimitiveCodecs;
+import org.jetlang.remote.core.ReadTimeoutEvent;
+import org.jetlang.remote.core.Serializer;
+import org.jetlang.remote.core.SerializerFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioAcceptorTest {
+
+    private static final int PORT = 8082;
+    private final Charset charset = Charset.forName("US-ASCII");
+    private final JetlangSessionConfig sessionConfig = new JetlangSessionConfig();
+    private final JetlangClientConfig clientConfig = new JetlangClientConfig();
+    private final NioFiber nioFiber = new NioFiberImpl();
+    private final Fiber sendFiber = new ThreadFiber();
+    private SerializerFactory serializers = new JavaSerializer.Factory();
+    private int shards = 1;
+    private boolean writeCoalescing;
+    private NioJetlangSendFiber singleSender;
+    private SlowConsumerPolicy slowConsumerPolicy;
+    private final List<NioFiber> readFibers = new ArrayList<>();
+    private NioAcceptorHandler.ClientFactory clientFactory;
+    private NioJetlangSendFiberGroup sender;
+
+    private final CountDownLatch acceptorClosed = new CountDownLatch(1);
+
+    @After
+    public void shutdown() throws InterruptedException {
+        nioFiber.dispose();
+        sendFiber.dispose();
+        for (NioFiber readFiber : readFibers) {
+            readFiber.dispose();
+        }
+        if (sender != null) {
+            sender.dispose();
+        }
+        //the next test binds the same port.
+        assertTrue(acceptorClosed.await(5, TimeUnit.SECONDS));
+    }
+
+    private void start(Callback<JetlangNioSession> onSession) {
+        final Serializer serializer = serializers.create();
+        if (shards == 1) {
+            singleSender = new NioJetlangSendFiber(sendFiber, nioFiber, serializers.createForGlobalWriter(), charset, new NioFiberImpl.NoOpBuffer());
+            singleSender.setWriteCoalescing(writeCoalescing);
+            if (slowConsumerPolicy != null) {
+                singleSender.setSendBufferLimits(256 * 1024, 1024 * 1024, slowConsumerPolicy);
+            }
+            sender = new NioJetlangSendFiberGroup(singleSender);
+        } else {
+            sender = NioJetlangSendFiberGroup.create(shards, nioFiber, serializers, charset, new NioFiberImpl.NoOpBuffer());
+        }
+        NioJetlangRemotingClientFactory.Handler sessions = new NioJetlangRemotingClientFactory.Handler() {
+            @Override
+            public void onNewSession(JetlangNioSession session) {
+                onSession.onMessage(session);
+            }
+
+            @Override
+            public void onUnhandledReplyMsg(SelectionKey key, SocketChannel channel, String dataTopicVal, Object readObject) {
+            }
+
+            @Override
+            public void onUnknownMessage(SelectionKey key, SocketChannel channel, int read) {
+            }
+
+            @Override
+            public void onHandlerException(Exception failed) {
+                failed.printStackTrace();
+            }
+        };
+        if (readFibers.isEmpty()) {
+            clientFactory = new NioJetlangRemotingClientFactory(serializer, sessionConfig, sessions, sender, charset);
+        } else {
+            clientFactory = NioJetlangReaderPool.create(readFibers, serializer, sessionConfig, sessions, sender, charset, NioJetlangReaderPool.Balancing.LEAST_LOADED);
+            readFibers.forEach(NioFiber::start);
+        }
+        nioFiber.addHandler(NioAcceptorHandler.create(PORT, clientFactory, acceptorClosed::countDown));
+        nioFiber.start();
+        sendFiber.start();
+        sender.start();
+    }
+
+    private JetlangTcpClient createClient() {
+        return new JetlangTcpClient(new SocketConnector("localhost", PORT), new ThreadFiber(), clientConfig, serializers.create(), new ErrorHandler.SysOut());
+    }
+
+    private void roundTrip() throws InterruptedException {
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<SessionMessage<?>> serverReceive = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            serverReceive.subscribe(session.getSessionMessageChannel());
+            session.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> req.reply("reply:" + req.getRequest()));
+        });
+        JetlangTcpClient client = createClient();
+        EventAssert<Object> received = EventAssert.create(3);
+        client.subscribe("prices", received.asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+        SessionTopic topic = subscriptions.takeFromReceived();
+        topic.publish("direct");
+        sender.publishToAllSubscribedClients("prices", "bulk1");
+        sender.publishToAllSubscribedClients("prices", "bulk2");
+        received.assertEvent();
+        assertEquals("direct", received.takeFromReceived());
+        assertEquals("bulk1", received.takeFromReceived());
+        assertEquals("bulk2", received.takeFromReceived());
+
+        client.publish("toServer", "hello");
+        serverReceive.assertEvent();
+        assertEquals("hello", serverReceive.takeFromReceived().getMessage());
+
+        EventAssert<Object> reply = EventAssert.create(1);
+        client.request("req", "ping", new SynchronousDisposingExecutor(), reply.createCallback(), CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+        reply.assertEvent();
+        assertEquals("reply:ping", reply.takeFromReceived());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void subscribePublishAndRequest() throws InterruptedException {
+        roundTrip();
+    }
+
+    @Test
+    public void topicAliasing() throws InterruptedException {
+        sessionConfig.setTopicAliasing(true);
+        clientConfig.setTopicAliasing(true);
+        roundTrip();
+    }
+
+    @Test
+    public void flyweightHandlers() throws InterruptedException {
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<Object> serverReceive = EventAssert.create(1);
+        final Callback<Object> onServerMessage = serverReceive.createCallback();
+        final JavaSerializationReader reader = new JavaSerializationReader();
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            session.registerFlyweight("toServer", msg -> onServerMessage.onMessage(msg.getTopic() + ":" + msg.getLength()));
+        });
+        clientConfig.setTopicAliasing(true);
+        JetlangTcpClient client = createClient();
+        EventAssert<Object> received = EventAssert.create(2);
+        final Callback<Object> onClientMessage = received.createCallback();
+        client.subscribeFlyweight("prices", msg -> {
+            try {
+                onClientMessage.onMessage(reader.readObject(msg.getTopic(), msg.toByteArray(), 0, msg.getLength()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client.start();
+        subscriptions.assertEvent();
+        sender.publishToAllSubscribedClients("prices", "bulk1");
+        subscriptions.takeFromReceived().publish("direct");
+        received.assertEvent();
+        assertEquals("bulk1", received.takeFromReceived());
+        assertEquals("direct", received.takeFromReceived());
+
+        client.publish("toServer", "hello");
+        serverReceive.assertEvent();
+        assertTrue(((String) serverReceive.takeFromReceived()).startsWith("toServer:"));
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchPublishing() throws InterruptedException {
+        sessionConfig.setBatchPublishing(true);
+        clientConfig.setBatchPublishing(true);
+        sessionConfig.setTopicAliasing(true);
+        roundTrip();
+    }
+
+    @Test
+    public void negotiatesCapabilitiesBothSidesSupport() throws InterruptedException {
+        sessionConfig.setTopicAliasing(true);
+        sessionConfig.setVarIntHeaders(true);
+        clientConfig.setVarIntHeaders(true);
+        clientConfig.setBatchPublishing(true);
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        JetlangTcpClient client = createClient();
+        client.subscribe("prices", EventAssert.create(0).asSubscribable());
+        client.start();
+        sessions.assertEvent();
+        //subscriptions are sent once the client has switched to the negotiated capabilities.
+        subscriptions.assertEvent();
+        assertEquals(Capabilities.VARINT_HEADERS, sessions.takeFromReceived().getCapabilities());
+        assertEquals(Capabilities.VARINT_HEADERS, client.getCapabilities());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void compression() throws InterruptedException {
+        sessionConfig.setCompression(true);
+        sessionConfig.setCompressionThreshold(256);
+        clientConfig.setCompression(true);
+        clientConfig.setCompressionThreshold(256);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("symbol=EUR/USD;bid=1.1;");
+        }
+        final String large = text.toString();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<SessionMessage<?>> serverReceive = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            serverReceive.subscribe(session.getSessionMessageChannel());
+        });
+        JetlangTcpClient client = createClient();
+        EventAssert<Object> received = EventAssert.create(2);
+        client.subscribe("prices", received.asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+        SessionTopic topic = subscriptions.takeFromReceived();
+        topic.publish(large);
+        sender.publishToAllSubscribedClients("prices", large);
+        received.assertEvent();
+        assertEquals(large, received.takeFromReceived());
+        assertEquals(large, received.takeFromReceived());
+        assertEquals(2, client.getCompressionStats().getDecompressedFrames());
+
+        client.publish("toServer", large);
+        serverReceive.assertEvent();
+        assertEquals(large, serverReceive.takeFromReceived().getMessage());
+        assertEquals(1, client.getCompressionStats().getCompressedFrames());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fanOutCompressesOnlyForSessionsThatNegotiatedIt() throws IOException, InterruptedException {
+        sessionConfig.setCompression(true);
+        sessionConfig.setCompressionThreshold(256);
+        clientConfig.setCompression(true);
+        clientConfig.setCompressionThreshold(256);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("symbol=EUR/USD;bid=1.1;");
+        }
+        final String large = text.toString();
+        final CountDownLatch subscriptions = new CountDownLatch(3);
+        final List<JetlangNioSession> sessions = new CopyOnWriteArrayList<>();
+        start(session -> {
+            session.getSubscriptionRequestChannel().subscribe(new SynchronousDisposingExecutor(), topic -> subscriptions.countDown());
+            sessions.add(session);
+        });
+        final List<JetlangTcpClient> clients = new ArrayList<>();
+        final EventAssert<Object> received = EventAssert.create(2);
+        for (int i = 0; i < 2; i++) {
+            JetlangTcpClient client = createClient();
+            client.subscribe("prices", received.asSubscribable());
+            client.start();
+            clients.add(client);
+        }
+        //the compressing sessions come first, so they serialize the frame.
+        for (int i = 0; i < 500 && subscriptions.getCount() > 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, subscriptions.getCount());
+        try (Socket baseline = new Socket("localhost", PORT)) {
+            baseline.setSoTimeout(5000);
+            final OutputStream out = baseline.getOutputStream();
+            out.write(MsgTypes.Subscription);
+            out.write("prices".length());
+            out.write("prices".getBytes(charset));
+            out.flush();
+            assertTrue(subscriptions.await(5, TimeUnit.SECONDS));
+            sender.publishToAllSubscribedClients("prices", large);
+            received.assertEvent();
+            assertEquals(large, received.takeFromReceived());
+            assertEquals(large, received.takeFromReceived());
+            assertEquals(MsgTypes.Data, baseline.getInputStream().read());
+        }
+        for (JetlangNioSession session : sessions) {
+            final boolean compressing = Capabilities.has(session.getCapabilities(), Capabilities.COMPRESSION);
+            assertEquals(compressing ? 1 : 0, session.getCompressionStats().getCompressedFrames());
+        }
+        for (JetlangTcpClient client : clients) {
+            assertEquals(1, client.getCompressionStats().getDecompressedFrames());
+            assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void varIntHeaders() throws InterruptedException {
+        sessionConfig.setVarIntHeaders(true);
+        clientConfig.setVarIntHeaders(true);
+        sessionConfig.setTopicAliasing(true);
+        roundTrip();
+    }
+
+    @Test
+    public void cachingJavaSerializer() throws InterruptedException {
+        serializers = new CachingJavaSerializer.Factory();
+        roundTrip();
+    }
+
+    @Test
+    public void primitiveCallbacks() throws InterruptedException {
+        serializers = PrimitiveCodecs.LongCodec::new;
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<Long> serverReceive = EventAssert.create(1);
+        final Callback<Long> onServerMessage = serverReceive.createCallback();
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            session.registerLong("toServer", onServerMessage::onMessage);
+        });
+        JetlangTcpClient client = createClient();
+        EventAssert<Long> received = EventAssert.create(2);
+        final Callback<Long> onClientMessage = received.createCallback();
+        client.subscribeLong("prices", onClientMessage::onMessage);
+        client.start();
+        subscriptions.assertEvent();
+        subscriptions.takeFromReceived().publish(42L);
+        sender.publishToAllSubscribedClients("prices", 43L);
+        received.assertEvent();
+        assertEquals(42L, (long) received.takeFromReceived());
+        assertEquals(43L, (long) received.takeFromReceived());
+
+        client.publish("toServer", 7L);
+        serverReceive.assertEvent();
+        assertEquals(7L, (long) serverReceive.takeFromReceived());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shardedSendFibers() throws InterruptedException {
+        shards = 3;
+        sessionConfig.setTopicAliasing(true);
+        final int clientCount = 4;
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(clientCount);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            session.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> req.reply("reply:" + req.getRequest()));
+        });
+        final List<JetlangTcpClient> clients = new ArrayList<>();
+        final List<EventAssert<Object>> received = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            JetlangTcpClient client = createClient();
+            EventAssert<Object> events = EventAssert.create(2);
+            client.subscribe("prices", events.asSubscribable());
+            client.start();
+            clients.add(client);
+            received.add(events);
+        }
+        subscriptions.assertEvent();
+        sender.publishToAllSubscribedClients("prices", "bulk1");
+        sender.publishToAllSubscribedClients("prices", "bulk2");
+        for (int i = 0; i < clientCount; i++) {
+            received.get(i).assertEvent();
+            assertEquals("bulk1", received.get(i).takeFromReceived());
+            assertEquals("bulk2", received.get(i).takeFromReceived());
+
+            EventAssert<Object> reply = EventAssert.create(1);
+            clients.get(i).request("req", i, new SynchronousDisposingExecutor(), reply.createCallback(), CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+            reply.assertEvent();
+            assertEquals("reply:" + i, reply.takeFromReceived());
+            assertTrue(clients.get(i).close(true).await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void readerPool() throws InterruptedException {
+        readFibers.add(new NioFiberImpl());
+        readFibers.add(new NioFiberImpl());
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(3);
+        final EventAssert<Thread> readThreads = EventAssert.create(3);
+        final Callback<Thread> onReadThread = readThreads.createCallback();
+        start(session -> {
+            onReadThread.onMessage(Thread.currentThread());
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+        });
+        final List<JetlangTcpClient> clients = new ArrayList<>();
+        final List<EventAssert<Object>> received = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            JetlangTcpClient client = createClient();
+            EventAssert<Object> events = EventAssert.create(1);
+            client.subscribe("prices", events.asSubscribable());
+            client.start();
+            clients.add(client);
+            received.add(events);
+        }
+        subscriptions.assertEvent();
+        readThreads.assertEvent();
+        //sessions start on the two reader threads.
+        assertEquals(2, new HashSet<>(readThreads.received).size());
+        final int[] counts = ((NioJetlangReaderPool) clientFactory).getSessionCounts();
+        assertEquals(2, Math.max(counts[0], counts[1]));
+        assertEquals(1, Math.min(counts[0], counts[1]));
+        sender.publishToAllSubscribedClients("prices", "bulk");
+        for (int i = 0; i < 3; i++) {
+            received.get(i).assertEvent();
+            assertEquals("bulk", received.get(i).takeFromReceived());
+            assertTrue(clients.get(i).close(true).await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void backedUpSessionWaitsOnItsReadFiber() throws IOException, InterruptedException {
+        readFibers.add(new NioFiberImpl());
+        slowConsumerPolicy = SlowConsumerPolicy.BUFFER;
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> subscriptions.subscribe(session.getSubscriptionRequestChannel()));
+        final CountDownLatch high = new CountDownLatch(1);
+        final CountDownLatch low = new CountDownLatch(1);
+        singleSender.setSendBufferEvents(e -> {
+            if (e.getType() == SendBufferEvent.Type.HIGH_WATERMARK) {
+                high.countDown();
+            } else if (e.getType() == SendBufferEvent.Type.LOW_WATERMARK) {
+                low.countDown();
+            }
+        });
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", PORT));
+            final OutputStream out = stalled.getOutputStream();
+            out.write(MsgTypes.Subscription);
+            out.write("prices".length());
+            out.write("prices".getBytes(charset));
+            out.flush();
+            subscriptions.assertEvent();
+            final char[] payload = new char[64 * 1024];
+            Arrays.fill(payload, 'x');
+            final String large = new String(payload);
+            for (int i = 0; i < 200 && high.getCount() > 0; i++) {
+                sender.publishToAllSubscribedClients("prices", large);
+                Thread.sleep(1);
+            }
+            assertTrue(high.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 500 && writeInterest(readFibers.get(0)) == 0; i++) {
+                Thread.sleep(10);
+            }
+            //selected with the session's reads rather than on the acceptor's selector.
+            assertEquals(1, writeInterest(readFibers.get(0)));
+            assertEquals(0, writeInterest(nioFiber));
+            final InputStream in = stalled.getInputStream();
+            final byte[] drain = new byte[64 * 1024];
+            while (low.getCount() > 0 && in.read(drain) > 0) {
+            }
+            assertTrue(low.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * @return sessions waiting for their socket to accept more on the fiber's selector.
+     */
+    private static int writeInterest(NioFiber fiber) throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger(-1);
+        final CountDownLatch counted = new CountDownLatch(1);
+        fiber.execute(controls -> {
+            int waiting = 0;
+            for (SelectionKey key : controls.getSelector().keys()) {
+                if (key.isValid() && key.channel() instanceof SocketChannel && (key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                    waiting++;
+                }
+            }
+            count.set(waiting);
+            counted.countDown();
+        });
+        assertTrue(counted.await(5, TimeUnit.SECONDS));
+        return count.get();
+    }
+
+    @Test
+    public void writeCoalescing() throws InterruptedException {
+        writeCoalescing = true;
+        final int count = 50;
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        JetlangTcpClient client = createClient();
+        EventAssert<Object> received = EventAssert.create(count * 3);
+        client.subscribe("prices", received.asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+        sessions.assertEvent();
+        final JetlangNioSession session = sessions.takeFromReceived();
+        final BufferedSerializer frames = new BufferedSerializer(charset, serializers.createForGlobalWriter());
+        final NioJetlangSendFiber.WriteStats stats = singleSender.getWriteStats();
+        final long[] before = new long[2];
+        //hold the send fiber so the whole burst is queued before it drains.
+        final CountDownLatch queued = new CountDownLatch(1);
+        sendFiber.execute(() -> {
+            before[0] = stats.getMessages();
+            before[1] = stats.getWrites();
+            try {
+                queued.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            sender.publishToAllSubscribedClients("prices", "bulk" + i);
+            session.publish("prices", "direct" + i);
+            session.publish(frames.createArray("prices", "bytes" + i));
+        }
+        queued.countDown();
+        received.assertEvent();
+        for (int i = 0; i < count; i++) {
+            assertEquals("bulk" + i, received.takeFromReceived());
+            assertEquals("direct" + i, received.takeFromReceived());
+            assertEquals("bytes" + i, received.takeFromReceived());
+        }
+        //counted on the send fiber, so read once the burst has been flushed there.
+        final long[] burst = new long[2];
+        final CountDownLatch counted = new CountDownLatch(1);
+        sendFiber.execute(() -> {
+            burst[0] = stats.getMessages() - before[0];
+            burst[1] = stats.getWrites() - before[1];
+            counted.countDown();
+        });
+        assertTrue(counted.await(5, TimeUnit.SECONDS));
+        assertTrue(burst[0] >= count * 3);
+        assertTrue(burst[1] + " writes for " + burst[0] + " messages", burst[1] < burst[0]);
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    private SendBufferEvent stallClient(SendBufferEvent.Type expected) throws IOException, InterruptedException {
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", PORT));
+            final OutputStream out = stalled.getOutputStream();
+            out.write(MsgTypes.Subscription);
+            out.write("prices".length());
+            out.write("prices".getBytes(charset));
+            out.flush();
+            subscriptions.assertEvent();
+            sessions.assertEvent();
+            final char[] payload = new char[64 * 1024];
+            Arrays.fill(payload, 'x');
+            final String large = new String(payload);
+            final CountDownLatch event = new CountDownLatch(1);
+            final SendBufferEvent[] found = new SendBufferEvent[1];
+            singleSender.setSendBufferEvents(e -> {
+                if (e.getType() == expected && found[0] == null) {
+                    found[0] = e;
+                    event.countDown();
+                }
+            });
+            for (int i = 0; i < 200 && event.getCount() > 0; i++) {
+                sender.publishToAllSubscribedClients("prices", large);
+                Thread.sleep(1);
+            }
+            assertTrue(event.await(10, TimeUnit.SECONDS));
+            assertTrue(sessions.takeFromReceived().getBufferedBytes() <= 1024 * 1024 + 128 * 1024);
+            return found[0];
+        }
+    }
+
+    @Test
+    public void slowConsumerDisconnected() throws IOException, InterruptedException {
+        slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+        final SendBufferEvent disconnected = stallClient(SendBufferEvent.Type.DISCONNECTED);
+        assertEquals(0, disconnected.getBufferedBytes());
+        assertTrue(disconnected.getDroppedBytes() > 0);
+    }
+
+    @Test
+    public void slowConsumerDropsNewest() throws IOException, InterruptedException {
+        slowConsumerPolicy = SlowConsumerPolicy.DROP_NEWEST;
+        final SendBufferEvent dropped = stallClient(SendBufferEvent.Type.DROPPED);
+        assertTrue(dropped.getBufferedBytes() <= 1024 * 1024);
+    }
+
+    @Test
+    public void slowConsumerDropsOldest() throws IOException, InterruptedException {
+        slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+        final SendBufferEvent dropped = stallClient(SendBufferEvent.Type.DROPPED);
+        assertTrue(dropped.getDroppedBytes() > 0);
+        assertTrue(dropped.getBufferedBytes() <= 256 * 1024);
+    }
+
+    @Test
+    public void replyArrivesWhileSlowConsumerDropsNewest() throws InterruptedException {
+        slowConsumerPolicy = SlowConsumerPolicy.DROP_NEWEST;
+        replyArrivesWhileDropping();
+    }
+
+    @Test
+    public void replyArrivesWhileSlowConsumerDropsOldest() throws InterruptedException {
+        slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+        replyArrivesWhileDropping();
+    }
+
+    private void replyArrivesWhileDropping() throws InterruptedException {
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final CountDownLatch replied = new CountDownLatch(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            session.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> {
+                req.reply("pong");
+                replied.countDown();
+            });
+        });
+        final AtomicInteger drops = new AtomicInteger();
+        singleSender.setSendBufferEvents(e -> {
+            if (e.getType() == SendBufferEvent.Type.DROPPED) {
+                drops.incrementAndGet();
+            }
+        });
+        final CountDownLatch resume = new CountDownLatch(1);
+        JetlangTcpClient client = createClient();
+        //blocking the read thread stalls the socket.
+        client.subscribeFlyweight("prices", msg -> {
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client.start();
+        subscriptions.assertEvent();
+        final char[] payload = new char[64 * 1024];
+        Arrays.fill(payload, 'x');
+        final String large = new String(payload);
+        publishUntilDropped(drops, large);
+        //fills the buffer to within the smallest frame of the high watermark.
+        publishUntilDropped(drops, "");
+        final EventAssert<Object> reply = EventAssert.create(1);
+        client.request("req", "ping", new SynchronousDisposingExecutor(), reply.createCallback(), CallbackList.<TimeoutControls>create(), 10, TimeUnit.SECONDS);
+        assertTrue(replied.await(5, TimeUnit.SECONDS));
+        //drops again with the reply buffered.
+        publishUntilDropped(drops, large);
+        resume.countDown();
+        reply.assertEvent();
+        assertEquals("pong", reply.takeFromReceived());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    private void publishUntilDropped(AtomicInteger drops, String msg) throws InterruptedException {
+        final int before = drops.get();
+        for (int i = 0; i < 100000 && drops.get() == before; i++) {
+            sender.publishToAllSubscribedClients("prices", msg);
+            if (i % 100 == 0) {
+                final CountDownLatch published = new CountDownLatch(1);
+                sendFiber.execute(published::countDown);
+                assertTrue(published.await(10, TimeUnit.SECONDS));
+            }
+        }
+        assertTrue(drops.get() > before);
+    }
+
+    @Test
+    public void conflationKeepsLatestPerKeyForSlowConsumer() throws InterruptedException {
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        singleSender.conflate("prices", msg -> ((String) msg).charAt(0));
+        final JavaSerializationReader reader = new JavaSerializationReader();
+        final CountDownLatch resume = new CountDownLatch(1);
+        final CountDownLatch latest = new CountDownLatch(2);
+        final List<String> received = new ArrayList<>();
+        final int count = 2000;
+        JetlangTcpClient client = createClient();
+        //blocking the read thread stalls the socket.
+        client.subscribeFlyweight("prices", msg -> {
+            try {
+                resume.await();
+                final String value = ((String) reader.readObject(msg.getTopic(), msg.toByteArray(), 0, msg.getLength())).substring(0, 6);
+                received.add(value);
+                if (value.endsWith(":" + (count - 1))) {
+                    latest.countDown();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client.start();
+        subscriptions.assertEvent();
+        sessions.assertEvent();
+        final char[] padding = new char[8 * 1024];
+        Arrays.fill(padding, 'x');
+        for (int i = 0; i < count; i++) {
+            sender.publishToAllSubscribedClients("prices", "a:" + i + ":" + new String(padding));
+            sender.publishToAllSubscribedClients("prices", "b:" + i + ":" + new String(padding));
+        }
+        final CountDownLatch published = new CountDownLatch(1);
+        sendFiber.execute(published::countDown);
+        assertTrue(published.await(10, TimeUnit.SECONDS));
+        //held back messages replace each other rather than filling the buffer.
+        assertTrue(sessions.takeFromReceived().getBufferedBytes() <= 64 * 1024);
+        resume.countDown();
+        assertTrue(latest.await(10, TimeUnit.SECONDS));
+        assertTrue(received.size() < count * 2);
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void heartbeatsAndReadTimeouts() throws IOException, InterruptedException {
+        sessionConfig.setHeartbeatIntervalInMs(20);
+        sessionConfig.setReadTimeoutInMs(100);
+        final EventAssert<ReadTimeoutEvent> timeout = EventAssert.create(1);
+        start(session -> timeout.subscribe(session.getReadTimeoutChannel()));
+        try (Socket silent = new Socket("localhost", PORT)) {
+            silent.setSoTimeout(5000);
+            final InputStream in = silent.getInputStream();
+            assertEquals(MsgTypes.Heartbeat, in.read());
+            assertEquals(MsgTypes.Heartbeat, in.read());
+            timeout.assertEvent();
+        }
+    }
+
+    @Test
+    public void patternSubscriptions() throws InterruptedException {
+        final EventAssert<String> patterns = EventAssert.create(1);
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            patterns.subscribe(session.getPatternSubscriptionChannel());
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+        });
+        JetlangTcpClient client = createClient();
+        final EventAssert<SessionMessage<String>> matched = EventAssert.create(3);
+        client.subscribePattern("prices.EUR.*", matched.asSubscribable());
+        final EventAssert<Object> exact = EventAssert.create(2);
+        client.subscribe("prices.EUR.USD", exact.asSubscribable());
+        client.start();
+        patterns.assertEvent();
+        subscriptions.assertEvent();
+        sender.publishToAllSubscribedClients("prices.GBP.USD", "unmatched");
+        sender.publishToAllSubscribedClients("prices.EUR.GBP", "gbp");
+        sender.publishToAllSubscribedClients("prices.EUR.USD", "usd");
+        sender.publishToAllSubscribedClients("prices.EUR.USD", "last");
+        matched.assertEvent();
+        exact.assertEvent();
+        assertEquals("prices.EUR.GBP", matched.takeFromReceived().getTopic());
+        final SessionMessage<String> usd = matched.takeFromReceived();
+        assertEquals("prices.EUR.USD", usd.getTopic());
+        assertEquals("usd", usd.getMessage());
+        //sent once even though the exact subscription matches too.
+        assertEquals("usd", exact.takeFromReceived());
+        assertEquals("last", exact.takeFromReceived());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void serverRequestsClient() throws InterruptedException {
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final AtomicReference<JetlangNioSession> session = new AtomicReference<>();
+        start(nioSession -> {
+            session.set(nioSession);
+            subscriptions.subscribe(nioSession.getSubscriptionRequestChannel());
+        });
+        JetlangTcpClient client = createClient();
+        client.getRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> {
+            if (!"ignored".equals(req.getRequest())) {
+                req.reply("pong:" + req.getRequest());
+            }
+        });
+        client.subscribe("ready", EventAssert.create(0).asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+
+        final EventAssert<Object> reply = EventAssert.create(1);
+        session.get().request("req", "ping", new SynchronousDisposingExecutor(), reply.createCallback(), null, 5, TimeUnit.SECONDS);
+        reply.assertEvent();
+        assertEquals("pong:ping", reply.takeFromReceived());
+
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        final EventAssert<Object> noReply = EventAssert.create(0);
+        session.get().request("req", "ignored", new SynchronousDisposingExecutor(), noReply.createCallback(), timedOut::countDown, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+        assertEquals(0, session.get().getPendingRequestCount());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void clientRequestTimeouts() throws InterruptedException {
+        start(session -> session.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> {
+            if (!"ignored".equals(req.getRequest())) {
+                req.reply("pong");
+            }
+        }));
+        JetlangTcpClient client = createClient();
+        final EventAssert<ConnectEvent> connected = EventAssert.create(1);
+        connected.subscribe(client.getConnectChannel());
+        client.start();
+        connected.assertEvent();
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        final AtomicReference<TimeoutControls> controls = new AtomicReference<>();
+        client.request("req", "ignored", new SynchronousDisposingExecutor(), EventAssert.create(0).createCallback(), timeout -> {
+            controls.set(timeout);
+            timedOut.countDown();
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+        assertEquals(1, client.getRequestTimeoutCount());
+        //still waiting until the timeout handler cancels it.
+        assertEquals(1, client.getPendingRequestCount());
+        controls.get().cancelRequest();
+        assertEquals(0, client.getPendingRequestCount());
+
+        final EventAssert<Object> reply = EventAssert.create(1);
+        final EventAssert<TimeoutControls> answeredTimeout = EventAssert.create(0);
+        client.request("req", "ping", new SynchronousDisposingExecutor(), reply.createCallback(), answeredTimeout.createCallback(), 100, TimeUnit.MILLISECONDS);
+        reply.assertEvent();
+        assertEquals(0, client.getPendingRequestCount());
+        //the answered request stays on the wheel until its deadline, then is dropped without timing out.
+        for (int i = 0; i < 500 && client.getScheduledTimeoutCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, client.getScheduledTimeoutCount());
+        assertEquals(1, client.getRequestTimeoutCount());
+        answeredTimeout.assertEvent();
+
+        //the tick restarts for the next timed request.
+        final CountDownLatch timedOutAgain = new CountDownLatch(1);
+        client.request("req", "ignored", new SynchronousDisposingExecutor(), EventAssert.create(0).createCallback(), timeout -> {
+            timeout.cancelRequest();
+            timedOutAgain.countDown();
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timedOutAgain.await(5, TimeUnit.SECONDS));
+        assertEquals(2, client.getRequestTimeoutCount());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void clientStopsWaitingForHelloAckFromOlderAcceptor() throws IOException, InterruptedException {
+        //no acceptor of ours to close.
+        acceptorClosed.countDown();
+        clientConfig.setReplyStreams(true);
+        clientConfig.setHelloAckTimeoutInMs(100);
+        final EventAssert<Exception> errors = EventAssert.create(1);
+        try (ServerSocket older = new ServerSocket(0)) {
+            JetlangTcpClient client = new JetlangTcpClient(new SocketConnector("localhost", older.getLocalPort()), new ThreadFiber(), clientConfig, serializers.create(), errors::receiveMessage);
+            client.subscribe("prices", EventAssert.create(0).asSubscribable());
+            client.start();
+            try (Socket accepted = older.accept()) {
+                accepted.setSoTimeout(5000);
+                final InputStream in = accepted.getInputStream();
+                assertEquals(MsgTypes.Hello, in.read());
+                assertEquals(Capabilities.VERSION, in.read());
+                assertEquals(Capabilities.REPLY_STREAMS, in.read());
+                final CountDownLatch refused = new CountDownLatch(1);
+                client.requestStream("req", "ping", new SynchronousDisposingExecutor(), EventAssert.create(0).createCallback(), null, timeout -> refused.countDown(), 5, TimeUnit.SECONDS);
+                //held back until the client stops waiting.
+                assertEquals(MsgTypes.Subscription, in.read());
+                assertEquals("prices".length(), in.read());
+                final byte[] topic = new byte["prices".length()];
+                assertEquals(topic.length, in.read(topic));
+                assertEquals("prices", new String(topic, charset));
+                //without reply streams the stream request is refused rather than left waiting.
+                assertTrue(refused.await(5, TimeUnit.SECONDS));
+                assertEquals(0, client.getCapabilities());
+                errors.assertEvent();
+                client.close(false);
+            }
+        }
+    }
+
+    @Test
+    public void replyStreams() throws InterruptedException {
+        sessionConfig.setReplyStreams(true);
+        clientConfig.setReplyStreams(true);
+        streamedReply();
+    }
+
+    @Test
+    public void replyStreamCollectedForClientsWithoutSupport() throws InterruptedException {
+        sessionConfig.setReplyStreams(true);
+        start(NioAcceptorTest::replyRows);
+        JetlangTcpClient client = createClient();
+        final EventAssert<ConnectEvent> connected = EventAssert.create(1);
+        connected.subscribe(client.getConnectChannel());
+        client.start();
+        connected.assertEvent();
+
+        final EventAssert<Object> whole = EventAssert.create(1);
+        client.request("rows", 2, new SynchronousDisposingExecutor(), whole.createCallback(), CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+        whole.assertEvent();
+        assertEquals(Arrays.asList("row0", "row1"), whole.takeFromReceived());
+        try {
+            client.requestStream("rows", 2, new SynchronousDisposingExecutor(), EventAssert.create(0).createCallback(), () -> {
+            }, CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void streamRequestFailsFastWhenAcceptorRefusesReplyStreams() throws InterruptedException {
+        clientConfig.setReplyStreams(true);
+        start(NioAcceptorTest::replyRows);
+        JetlangTcpClient client = createClient();
+        final EventAssert<ConnectEvent> connected = EventAssert.create(1);
+        connected.subscribe(client.getConnectChannel());
+        client.start();
+        connected.assertEvent();
+
+        final CountDownLatch refused = new CountDownLatch(1);
+        client.requestStream("rows", 2, new SynchronousDisposingExecutor(), EventAssert.create(0).createCallback(), () -> {
+        }, timeout -> refused.countDown(), 60, TimeUnit.SECONDS);
+        assertTrue(refused.await(5, TimeUnit.SECONDS));
+        assertEquals(0, client.getPendingRequestCount());
+        assertEquals(0, client.getRequestTimeoutCount());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void plainListReplyIsOnePartOfAStream() throws InterruptedException {
+        sessionConfig.setReplyStreams(true);
+        clientConfig.setReplyStreams(true);
+        start(session -> session.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> req.reply(new ArrayList<>(Arrays.asList("a", "b")))));
+        JetlangTcpClient client = createClient();
+        final EventAssert<ConnectEvent> connected = EventAssert.create(1);
+        connected.subscribe(client.getConnectChannel());
+        client.start();
+        connected.assertEvent();
+
+        final List<Object> parts = new CopyOnWriteArrayList<>();
+        final CountDownLatch ended = new CountDownLatch(1);
+        client.requestStream("list", "req", new SynchronousDisposingExecutor(), parts::add, ended::countDown, CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.<Object>asList(Arrays.asList("a", "b")), parts);
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    private static void replyRows(JetlangNioSession session) {
+        session.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), (SessionRequest req) -> {
+            ReplyStream rows = req.replyStream();
+            for (int i = 0; i < (Integer) req.getRequest(); i++) {
+                rows.write("row" + i);
+            }
+            rows.end();
+        });
+    }
+
+    private void streamedReply() throws InterruptedException {
+        start(NioAcceptorTest::replyRows);
+        JetlangTcpClient client = createClient();
+        final EventAssert<ConnectEvent> connected = EventAssert.create(1);
+        connected.subscribe(client.getConnectChannel());
+        client.start();
+        connected.assertEvent();
+
+        final EventAssert<Object> parts = EventAssert.create(3);
+        final CountDownLatch ended = new CountDownLatch(1);
+        client.requestStream("rows", 3, new SynchronousDisposingExecutor(), parts.createCallback(), ended::countDown, CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        parts.assertEvent();
+        assertEquals("row0", parts.takeFromReceived());
+        assertEquals("row1", parts.takeFromReceived());
+        assertEquals("row2", parts.takeFromReceived());
+
+        //plain requests get the parts as one list.
+        final EventAssert<Object> whole = EventAssert.create(1);
+        client.request("rows", 2, new SynchronousDisposingExecutor(), whole.createCallback(), CallbackList.<TimeoutControls>create(), 5, TimeUnit.SECONDS);
+        whole.assertEvent();
+        assertEquals(Arrays.asList("row0", "row1"), whole.takeFromReceived());
+        assertEquals(0, client.getPendingRequestCount());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void publishesWaitForClientCredit() throws IOException, InterruptedException {
+        sessionConfig.setCreditWindow(8);
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        try (Socket client = new Socket("localhost", PORT)) {
+            final OutputStream out = client.getOutputStream();
+            out.write(new byte[]{MsgTypes.Hello, Capabilities.VERSION, Capabilities.CREDIT});
+            out.write(new byte[]{MsgTypes.HelloAck, Capabilities.VERSION, Capabilities.CREDIT});
+            out.write(MsgTypes.Subscription);
+            out.write("prices".length());
+            out.write("prices".getBytes(charset));
+            out.flush();
+            subscriptions.assertEvent();
+            sessions.assertEvent();
+            final JetlangNioSession session = sessions.takeFromReceived();
+            for (int i = 0; i < 5; i++) {
+                sender.publishToAllSubscribedClients("prices", "price" + i);
+            }
+            final CountDownLatch published = new CountDownLatch(1);
+            sendFiber.execute(published::countDown);
+            assertTrue(published.await(5, TimeUnit.SECONDS));
+            assertEquals(0, session.getSendCredit());
+            assertEquals(5, session.getHeldMessageCount());
+
+            out.write(new byte[]{MsgTypes.Credit, 3});
+            out.flush();
+            for (int i = 0; i < 500 && session.getHeldMessageCount() > 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, session.getHeldMessageCount());
+            assertEquals(0, session.getSendCredit());
+        }
+    }
+
+    @Test
+    public void preSerializedPublishesTakeCredit() throws InterruptedException {
+        sessionConfig.setCreditWindow(4);
+        clientConfig.setCreditWindow(4);
+        final int count = 50;
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        JetlangTcpClient client = createClient();
+        final EventAssert<Object> received = EventAssert.create(count * 3);
+        client.subscribe("prices", received.asSubscribable());
+        client.start();
+        subscriptions.assertEvent();
+        sessions.assertEvent();
+        final JetlangNioSession session = sessions.takeFromReceived();
+        final BufferedSerializer frames = new BufferedSerializer(charset, serializers.createForGlobalWriter());
+        for (int i = 0; i < count; i++) {
+            session.publish("prices", "object" + i);
+            session.publish(frames.createArray("prices", "bytes" + i));
+            session.publishIfSubscribed("prices", frames.createArray("prices", "ifSubscribed" + i));
+        }
+        received.assertEvent();
+        for (int i = 0; i < count; i++) {
+            assertEquals("object" + i, received.takeFromReceived());
+            assertEquals("bytes" + i, received.takeFromReceived());
+            assertEquals("ifSubscribed" + i, received.takeFromReceived());
+        }
+        //grants for the last messages may still be in flight, but never raise credit past the window.
+        final CountDownLatch drained = new CountDownLatch(1);
+        sendFiber.execute(drained::countDown);
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+        assertTrue(session.getSendCredit() >= 0 && session.getSendCredit() <= 4);
+        assertEquals(0, session.getHeldMessageCount());
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void clientGrantingNoCreditIsDisconnectedPastHeldLimit() throws IOException, InterruptedException {
+        sessionConfig.setCreditWindow(8);
+        sessionConfig.setMaxHeldMessages(10);
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        final EventAssert<SessionCloseEvent> closed = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            closed.subscribe(session.getSessionCloseChannel());
+        });
+        try (Socket client = new Socket("localhost", PORT)) {
+            final OutputStream out = client.getOutputStream();
+            out.write(new byte[]{MsgTypes.Hello, Capabilities.VERSION, Capabilities.CREDIT});
+            out.write(new byte[]{MsgTypes.HelloAck, Capabilities.VERSION, Capabilities.CREDIT});
+            out.write(MsgTypes.Subscription);
+            out.write("prices".length());
+            out.write("prices".getBytes(charset));
+            out.flush();
+            subscriptions.assertEvent();
+            for (int i = 0; i < 11; i++) {
+                sender.publishToAllSubscribedClients("prices", "price" + i);
+            }
+            closed.assertEvent();
+        }
+    }
+
+    @Test
+    public void heldLimitDropsNewestWithPolicy() throws IOException, InterruptedException {
+        slowConsumerPolicy = SlowConsumerPolicy.DROP_NEWEST;
+        sessionConfig.setCreditWindow(8);
+        sessionConfig.setMaxHeldMessages(10);
+        final EventAssert<JetlangNioSession> sessions = EventAssert.create(1);
+        final Callback<JetlangNioSession> onSession = sessions.createCallback();
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+            onSession.onMessage(session);
+        });
+        final List<SendBufferEvent> dropped = new CopyOnWriteArrayList<>();
+        singleSender.setSendBufferEvents(dropped::add);
+        try (Socket client = new Socket("localhost", PORT)) {
+            final OutputStream out = client.getOutputStream();
+            out.write(new byte[]{MsgTypes.Hello, Capabilities.VERSION, Capabilities.CREDIT});
+            out.write(new byte[]{MsgTypes.HelloAck, Capabilities.VERSION, Capabilities.CREDIT});
+            out.write(MsgTypes.Subscription);
+            out.write("prices".length());
+            out.write("prices".getBytes(charset));
+            out.flush();
+            subscriptions.assertEvent();
+            sessions.assertEvent();
+            final JetlangNioSession session = sessions.takeFromReceived();
+            for (int i = 0; i < 15; i++) {
+                sender.publishToAllSubscribedClients("prices", "price" + i);
+            }
+            final CountDownLatch published = new CountDownLatch(1);
+            sendFiber.execute(published::countDown);
+            assertTrue(published.await(5, TimeUnit.SECONDS));
+            assertEquals(10, session.getHeldMessageCount());
+            assertEquals(5, dropped.size());
+            assertEquals(SendBufferEvent.Type.DROPPED, dropped.get(0).getType());
+        }
+    }
+
+    @Test
+    public void creditFlowsBothWays() throws InterruptedException {
+        sessionConfig.setCreditWindow(4);
+        clientConfig.setCreditWindow(4);
+        final int count = 100;
+        final EventAssert<SessionMessage<?>> fromClient = EventAssert.create(count);
+        final EventAssert<SessionTopic> subscriptions = EventAssert.create(1);
+        start(session -> {
+            fromClient.subscribe(session.getSessionMessageChannel());
+            subscriptions.subscribe(session.getSubscriptionRequestChannel());
+        });
+        JetlangTcpClient client = createClient();
+        final EventAssert<Object> toClient = EventAssert.create(count);
+        client.subscribe("prices", new SynchronousDisposingExecutor(), toClient.createCallback());
+        client.start();
+        subscriptions.assertEvent();
+        assertTrue(Capabilities.has(client.getCapabilities(), Capabilities.CREDIT));
+        for (int i = 0; i < count; i++) {
+            client.publish("orders", i);
+            sender.publishToAllSubscribedClients("prices", i);
+        }
+        fromClient.assertEvent();
+        toClient.assertEvent();
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, fromClient.takeFromReceived().getMessage());
+            assertEquals(i, toClient.takeFromReceived());
+        }
+        assertEquals(0, client.getHeldMessageCount());
+        assertTrue(client.getSendCredit() >= 0);
+        assertTrue(client.close(true).await(5, TimeUnit.SECONDS));
+    }
+}
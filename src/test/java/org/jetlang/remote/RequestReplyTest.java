@@ -12,12 +12,18 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RequestReplyTest {
     ExecutorService service = Executors.newCachedThreadPool();
@@ -85,6 +91,54 @@ public class RequestReplyTest {
         acceptor.stop();
     }
 
+    @Test
+    public void pipelinedFutureRequests() throws Exception {
+        NewSessionHandler sessionCallback = new NewSessionHandler() {
+            public void onNewSession(ClientPublisher pub, JetlangSession jetlangSession) {
+                Callback<SessionRequest> onRequest = new Callback<SessionRequest>() {
+                    public void onMessage(SessionRequest sessionRequest) {
+                        if (!"ignored".equals(sessionRequest.getRequest())) {
+                            sessionRequest.reply("reply:" + sessionRequest.getRequest());
+                        }
+                    }
+                };
+                jetlangSession.getSessionRequestChannel().subscribe(new SynchronousDisposingExecutor(), onRequest);
+            }
+        };
+
+        Acceptor acceptor = createAcceptor(sessionCallback);
+        Thread runner = new Thread(acceptor);
+        runner.start();
+
+        JetlangClient client = createClient();
+        EventAssert<ConnectEvent> connected = new EventAssert<ConnectEvent>(1);
+        connected.subscribe(client.getConnectChannel());
+        client.start();
+        connected.assertEvent();
+
+        CompletableFuture<String> single = client.requestAsync("reqTopic", "one", 2, TimeUnit.SECONDS);
+        assertEquals("reply:one", single.get(2, TimeUnit.SECONDS));
+
+        List<Object> reqs = new ArrayList<Object>();
+        for (int i = 0; i < 500; i++) {
+            reqs.add(i);
+        }
+        List<CompletableFuture<String>> replies = client.requestAll("reqTopic", reqs, service, 2, TimeUnit.SECONDS);
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture[replies.size()])).get(2, TimeUnit.SECONDS);
+        for (int i = 0; i < reqs.size(); i++) {
+            assertEquals("reply:" + i, replies.get(i).get());
+        }
+
+        CompletableFuture<String> timedOut = client.requestAsync("reqTopic", "ignored", 50, TimeUnit.MILLISECONDS);
+        try {
+            timedOut.get(2, TimeUnit.SECONDS);
+            fail("expected timeout");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+        close(client);
+        acceptor.stop();
+    }
 
     private JetlangClient createClient() {
         return new JetlangTcpClient(conn, new ThreadFiber(), clientConfig, new JavaSerializer(), new ErrorHandler.SysOut());
@@ -0,0 +1,78 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockCompressorTest {
+
+    private final BlockCompressor compressor = new BlockCompressor();
+
+    private int roundTrip(byte[] input) throws IOException {
+        byte[] compressed = new byte[BlockCompressor.maxCompressedLength(input.length) + 3];
+        int size = compressor.compress(input, 0, input.length, compressed, 3);
+        byte[] restored = new byte[input.length + 2];
+        BlockCompressor.decompress(compressed, 3, size, restored, 2, input.length);
+        assertArrayEquals(input, Arrays.copyOfRange(restored, 2, restored.length));
+        return size;
+    }
+
+    @Test
+    public void shortInputsAreLiterals() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            byte[] input = new byte[i];
+            Arrays.fill(input, (byte) 'a');
+            roundTrip(input);
+        }
+    }
+
+    @Test
+    public void repetitiveInputShrinks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("price=").append(i % 17).append(";symbol=EUR/USD;");
+        }
+        byte[] input = text.toString().getBytes(Charset.forName("US-ASCII"));
+        assertTrue(roundTrip(input) < input.length / 4);
+    }
+
+    @Test
+    public void longRunsAndFarMatches() throws IOException {
+        byte[] input = new byte[200000];
+        Random random = new Random(7);
+        random.nextBytes(input);
+        //a run longer than the 4 bit length fields and a repeat further back than the match window.
+        Arrays.fill(input, 1000, 5000, (byte) 3);
+        System.arraycopy(input, 0, input, 100000, 50000);
+        roundTrip(input);
+    }
+
+    @Test
+    public void randomInputRoundTrips() throws IOException {
+        byte[] input = new byte[5000];
+        new Random(3).nextBytes(input);
+        assertTrue(roundTrip(input) <= BlockCompressor.maxCompressedLength(input.length));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongLengthFails() throws IOException {
+        byte[] input = new byte[100];
+        byte[] compressed = new byte[BlockCompressor.maxCompressedLength(input.length)];
+        int size = compressor.compress(input, 0, input.length, compressed, 0);
+        BlockCompressor.decompress(compressed, 0, size, new byte[200], 0, 101);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBlockFails() throws IOException {
+        byte[] input = new byte[1000];
+        byte[] compressed = new byte[BlockCompressor.maxCompressedLength(input.length)];
+        int size = compressor.compress(input, 0, input.length, compressed, 0);
+        BlockCompressor.decompress(compressed, 0, size - 3, new byte[1000], 0, 1000);
+    }
+}
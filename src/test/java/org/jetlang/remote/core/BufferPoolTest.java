@@ -0,0 +1,71 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+
+    private final BufferPool pool = new BufferPool(1024, 1024 * 1024, 2);
+
+    @Test
+    public void sizeClassesArePowersOfTwo() {
+        assertEquals(1024, pool.acquire(1).length);
+        assertEquals(1024, pool.acquire(1024).length);
+        assertEquals(2048, pool.acquire(1025).length);
+        assertEquals(4 * 1024 * 1024, pool.acquire(3 * 1024 * 1024).length);
+        assertEquals(1 << 30, BufferPool.roundUp((1 << 29) + 1));
+        assertEquals(Integer.MAX_VALUE - 8, BufferPool.roundUp(Integer.MAX_VALUE - 8));
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        byte[] array = pool.acquire(5000);
+        pool.release(array);
+        assertSame(array, pool.acquire(8192));
+        ByteBuffer direct = pool.acquireDirect(100);
+        direct.put((byte) 1);
+        pool.release(direct);
+        ByteBuffer reused = pool.acquireDirect(1000);
+        assertSame(direct, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.limit());
+        BufferPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.getAllocations());
+        assertEquals(2, stats.getReuses());
+        assertEquals(0, stats.getPooledBytes());
+    }
+
+    @Test
+    public void fullClassesAndUnpooledSizesAreDiscarded() {
+        pool.release(new byte[1024]);
+        pool.release(new byte[1024]);
+        pool.release(new byte[1024]);
+        pool.release(new byte[1000]);
+        pool.release(new byte[4 * 1024 * 1024]);
+        BufferPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.getReleases());
+        assertEquals(3, stats.getDiscards());
+        assertEquals(2048, stats.getPooledBytes());
+    }
+
+    @Test
+    public void byteArrayBufferGrowsGeometricallyAndShrinksWhenEmpty() {
+        ByteArrayBuffer buffer = new ByteArrayBuffer(pool);
+        byte[] chunk = new byte[1000];
+        for (int i = 0; i < 200; i++) {
+            buffer.append(chunk);
+        }
+        assertEquals(200 * 1000, buffer.position());
+        //1k, 2k, 4k ... 256k
+        assertEquals(9, pool.getStats().getAllocations());
+        assertTrue(pool.getStats().getReleases() > 0);
+        buffer.reset();
+        assertEquals(1024, pool.acquire(1).length);
+        assertTrue(pool.getStats().getPooledBytes() >= 256 * 1024);
+    }
+}
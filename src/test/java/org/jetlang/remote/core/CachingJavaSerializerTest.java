@@ -0,0 +1,111 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingJavaSerializerTest {
+
+    public static class Quote implements Serializable {
+        final String symbol;
+        final double bid;
+
+        Quote(String symbol, double bid) {
+            this.symbol = symbol;
+            this.bid = bid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Quote && ((Quote) o).symbol.equals(symbol) && ((Quote) o).bid == bid;
+        }
+
+        @Override
+        public int hashCode() {
+            return symbol.hashCode();
+        }
+    }
+
+    private final Serializer serializer = new CachingJavaSerializer();
+
+    private static byte[] write(ObjectByteWriter writer, Object msg) throws IOException {
+        final List<byte[]> frames = new ArrayList<>();
+        writer.write("topic", msg, (buffer, offset, length) -> frames.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+        return frames.get(0);
+    }
+
+    private static Object read(ObjectByteReader reader, byte[] frame) throws IOException {
+        return reader.readObject("topic", frame, 0, frame.length);
+    }
+
+    @Test
+    public void descriptorsAreSentOnce() throws IOException {
+        ObjectByteWriter writer = serializer.getWriter();
+        ObjectByteReader reader = serializer.getReader();
+        byte[] first = write(writer, new Quote("EUR/USD", 1.1));
+        byte[] second = write(writer, new Quote("EUR/USD", 1.2));
+        assertTrue(second.length + " < " + first.length, second.length < first.length / 2);
+        assertEquals(new Quote("EUR/USD", 1.1), read(reader, first));
+        assertEquals(new Quote("EUR/USD", 1.2), read(reader, second));
+        assertEquals(1, ((CachingJavaSerializationWriter) writer).getDefinedDescriptors());
+    }
+
+    @Test
+    public void mixedTypesRoundTrip() throws IOException {
+        ObjectByteWriter writer = serializer.getWriter();
+        ObjectByteReader reader = serializer.getReader();
+        List<Object> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add("text" + i);
+            messages.add(new Quote("GBP/USD", i));
+            messages.add(new ArrayList<>(Arrays.asList(i, (long) i, new Quote("X", i))));
+            messages.add(new int[]{i, i + 1});
+        }
+        for (Object msg : messages) {
+            Object read = read(reader, write(writer, msg));
+            if (msg instanceof int[]) {
+                assertTrue(Arrays.equals((int[]) msg, (int[]) read));
+            } else {
+                assertEquals(msg, read);
+            }
+        }
+    }
+
+    @Test
+    public void globalWriterIsReadableByAnyConnection() throws IOException {
+        ObjectByteWriter global = new CachingJavaSerializer.Factory().createForGlobalWriter();
+        byte[] frame = write(global, new Quote("EUR/USD", 1.1));
+        assertEquals(frame.length, write(global, new Quote("EUR/USD", 1.1)).length);
+        for (int i = 0; i < 3; i++) {
+            ObjectByteReader reader = serializer.getReader();
+            ObjectByteWriter writer = serializer.getWriter();
+            read(reader, write(writer, new Quote("A", i)));
+            assertEquals(new Quote("EUR/USD", 1.1), read(reader, frame));
+            assertEquals(new Quote("B", i), read(reader, write(writer, new Quote("B", i))));
+        }
+    }
+
+    @Test
+    public void failedWriteDoesNotLeaveDescriptorsBehind() throws IOException {
+        ObjectByteWriter writer = serializer.getWriter();
+        ObjectByteReader reader = serializer.getReader();
+        List<Object> bad = new ArrayList<>();
+        bad.add(new Quote("EUR/USD", 1.1));
+        bad.add(new Object());
+        try {
+            write(writer, bad);
+            fail();
+        } catch (NotSerializableException expected) {
+        }
+        assertEquals(new Quote("EUR/USD", 1.3), read(reader, write(writer, new Quote("EUR/USD", 1.3))));
+    }
+}
@@ -0,0 +1,78 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConcurrentIntTableTest {
+
+    private final ConcurrentIntTable<String> table = new ConcurrentIntTable<>(4);
+    private volatile int putCount;
+
+    @Test
+    public void putGetAndRemove() {
+        table.put(1, "one");
+        table.put(-7, "minus seven");
+        assertEquals("one", table.get(1));
+        assertEquals("minus seven", table.get(-7));
+        assertNull(table.get(2));
+        assertEquals(2, table.size());
+        assertEquals("one", table.remove(1));
+        assertNull(table.remove(1));
+        assertNull(table.get(1));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void growsPastCapacityAndReusesRemovedSlots() {
+        for (int i = 0; i < 10000; i++) {
+            table.put(i, "v" + i);
+            if (i >= 3) {
+                assertEquals("v" + (i - 3), table.remove(i - 3));
+            }
+        }
+        assertEquals(3, table.size());
+        for (int i = 0; i < 1000; i++) {
+            table.put(20000 + i, "w" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("w" + i, table.get(20000 + i));
+        }
+        assertEquals("v9999", table.get(9999));
+        assertEquals(1003, table.size());
+    }
+
+    @Test
+    public void concurrentRemoversClaimEachEntryOnce() throws InterruptedException {
+        final int count = 100000;
+        final AtomicInteger removed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable remover = () -> {
+            int next = 0;
+            while (next < count) {
+                //only move on from ids put before the attempt, so neither thread skips one.
+                final boolean put = next < putCount;
+                if (table.remove(next) != null) {
+                    removed.incrementAndGet();
+                }
+                if (put) {
+                    next++;
+                }
+            }
+            done.countDown();
+        };
+        new Thread(remover).start();
+        new Thread(remover).start();
+        for (int i = 0; i < count; i++) {
+            table.put(i, "v");
+            putCount = i + 1;
+        }
+        done.await();
+        assertEquals(count, removed.get());
+        assertEquals(0, table.size());
+    }
+}
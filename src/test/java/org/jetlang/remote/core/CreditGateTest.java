@@ -0,0 +1,92 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CreditGateTest {
+
+    private final CreditGate gate = new CreditGate();
+    private final List<String> written = new ArrayList<>();
+
+    private void send(String msg) {
+        if (gate.tryAcquire()) {
+            written.add(msg);
+        } else {
+            gate.hold(() -> written.add(msg));
+        }
+    }
+
+    @Test
+    public void unlimitedUntilEnabled() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(gate.tryAcquire());
+        }
+        assertFalse(gate.isEnabled());
+        assertEquals(-1, gate.getCredit());
+    }
+
+    @Test
+    public void grantIgnoredUntilEnabled() {
+        gate.grant(5);
+        assertFalse(gate.isEnabled());
+        assertEquals(-1, gate.getCredit());
+        gate.enable();
+        assertEquals(0, gate.getCredit());
+        gate.grant(5);
+        assertEquals(5, gate.getCredit());
+    }
+
+    @Test
+    public void holdsOnceCreditIsSpentAndWritesInOrderAsItIsGranted() {
+        gate.enable();
+        send("a");
+        assertEquals(1, gate.getHeldCount());
+        gate.grant(2);
+        send("b");
+        send("c");
+        send("d");
+        assertEquals(Arrays.asList("a", "b"), written);
+        assertEquals(0, gate.getCredit());
+        gate.grant(1);
+        //held messages go first, so a new one waits behind them.
+        send("e");
+        assertEquals(Arrays.asList("a", "b", "c"), written);
+        assertEquals(2, gate.getHeldCount());
+        gate.grant(5);
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), written);
+        assertEquals(0, gate.getHeldCount());
+        assertEquals(3, gate.getCredit());
+    }
+
+    @Test
+    public void refusesWritesPastHeldLimit() {
+        gate.setMaxHeld(2);
+        gate.enable();
+        assertTrue(gate.hold(() -> written.add("a")));
+        assertTrue(gate.hold(() -> written.add("b")));
+        assertFalse(gate.hold(() -> written.add("c")));
+        assertTrue(gate.dropOldest());
+        assertTrue(gate.hold(() -> written.add("c")));
+        gate.grant(5);
+        assertEquals(Arrays.asList("b", "c"), written);
+        assertFalse(gate.dropOldest());
+    }
+
+    @Test
+    public void clearDropsHeldWrites() {
+        gate.enable();
+        send("a");
+        gate.clear();
+        gate.grant(1);
+        assertTrue(written.isEmpty());
+        assertEquals(0, gate.getHeldCount());
+        assertEquals(1, gate.getCredit());
+    }
+}
@@ -0,0 +1,489 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JetlangRemotingProtocolTest {
+
+    private final Charset charset = Charset.forName("US-ASCII");
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Recorder received = new Recorder();
+    private boolean varIntHeaders;
+
+    private SocketMessageStreamWriter createWriter() throws IOException {
+        return new SocketMessageStreamWriter(new ClosableOutputStream() {
+            public OutputStream getOutputStream() {
+                return bytes;
+            }
+
+            public boolean close() {
+                return true;
+            }
+        }, charset, new JavaSerializationWriter());
+    }
+
+    private void readAll() throws IOException {
+        JetlangRemotingProtocol protocol = new JetlangRemotingProtocol(received, new JavaSerializationReader(), charset);
+        protocol.setVarIntHeaders(varIntHeaders);
+        JetlangRemotingInputStream input = new JetlangRemotingInputStream(new ByteArrayInputStream(bytes.toByteArray()), protocol, new Runnable() {
+            public void run() {
+            }
+        });
+        while (input.readFromStream()) {
+
+        }
+    }
+
+    /**
+     * Feeds the bytes through a direct receive buffer in small chunks, the way the nio handler does, parking the
+     * buffer whenever no partial frame is left.
+     */
+    private JetlangRemotingProtocol readAllDirect(ObjectByteReader reader) throws IOException {
+        JetlangRemotingProtocol protocol = new JetlangRemotingProtocol(received, reader, charset, true);
+        protocol.setVarIntHeaders(varIntHeaders);
+        JetlangRemotingProtocol.State next = protocol.root;
+        byte[] all = bytes.toByteArray();
+        int offset = 0;
+        while (offset < all.length) {
+            ByteBuffer buffer = protocol.unparkBuffer(next.getRequiredBytes());
+            final int read = Math.min(Math.min(7, all.length - offset), buffer.remaining());
+            buffer.put(all, offset, read);
+            offset += read;
+            buffer.flip();
+            while (buffer.remaining() >= next.getRequiredBytes()) {
+                next = next.run();
+            }
+            buffer.compact();
+            protocol.fitBuffer(next.getRequiredBytes());
+            protocol.parkBuffer();
+        }
+        assertSame(protocol.root, next);
+        return protocol;
+    }
+
+    @Test
+    public void receiveBufferIsParkedOnceFramesAreComplete() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.write("topic", "msg");
+        writer.write("topic", "msg2");
+        JetlangRemotingProtocol protocol = readAllDirect(new JavaSerializationReader());
+        assertEquals(2, received.events.size());
+        assertNull(protocol.buffer);
+        assertTrue(protocol.parkBuffer());
+        assertTrue(protocol.unparkBuffer(1).isDirect());
+    }
+
+    @Test
+    public void byteBufferCodecReadsFromDirectBuffer() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.write("topic", "msg");
+        writer.writeRequest(1, "req", new byte[20000]);
+        writer.writeReply(2, "reply", "replyMsg");
+        readAllDirect(new JavaSerializationReader());
+        assertEquals(3, received.events.size());
+        assertEquals("msg:topic=msg", received.events.get(0));
+        assertEquals("reply:2:reply=replyMsg", received.events.get(2));
+    }
+
+    @Test
+    public void arrayCodecIsAdaptedToDirectBuffer() throws IOException {
+        SocketMessageStreamWriter writer = new SocketMessageStreamWriter(new ClosableOutputStream() {
+            public OutputStream getOutputStream() {
+                return bytes;
+            }
+
+            public boolean close() {
+                return true;
+            }
+        }, charset, new ObjectByteWriter() {
+            final ObjectByteWriter arrays = new JavaSerializationWriter();
+
+            public void write(String topic, Object msg, ByteMessageWriter writer) throws IOException {
+                arrays.write(topic, msg, writer);
+            }
+        });
+        writer.write("topic", "msg");
+        writer.writeToBatch("a", "1");
+        writer.writeToBatch("b", "2");
+        writer.flushBatch();
+        final ObjectByteReader arrays = new JavaSerializationReader();
+        readAllDirect(new ObjectByteReader() {
+            public Object readObject(String fromTopic, byte[] buffer, int offset, int length) throws IOException {
+                return arrays.readObject(fromTopic, buffer, offset, length);
+            }
+        });
+        assertEquals("[msg:topic=msg, msg:a=1, msg:b=2]", received.events.toString());
+    }
+
+    @Test
+    public void plainFrames() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.write("topic", "msg");
+        writer.writeRequest(1, "req", "request");
+        writer.writeReply(2, "reply", "replyMsg");
+        readAll();
+        assertEquals("[msg:topic=msg, req:1:req=request, reply:2:reply=replyMsg]", received.events.toString());
+    }
+
+    @Test
+    public void replyStreamFrames() throws IOException {
+        for (boolean varInt : new boolean[]{false, true}) {
+            received.events.clear();
+            bytes.reset();
+            varIntHeaders = varInt;
+            SocketMessageStreamWriter writer = createWriter();
+            writer.setVarIntHeaders(varInt);
+            writer.writeReplyChunk(300, "rows", "a");
+            writer.writeReplyChunk(300, "rows", "b");
+            writer.writeReplyEnd(300);
+            readAll();
+            assertEquals("[chunk:300:rows=a, chunk:300:rows=b, end:300]", received.events.toString());
+        }
+    }
+
+    @Test
+    public void creditIsGrantedBackAsDataMessagesAreRead() throws IOException {
+        received.creditWindow = 4;
+        received.flyweights.register("fly", new FlyweightHandler() {
+            public void onMessage(MessageCursor message) {
+                received.events.add("fly:" + message.getTopic());
+            }
+        });
+        SocketMessageStreamWriter writer = createWriter();
+        writer.writeCredit(300);
+        writer.write("topic", "before");
+        writer.writeHello(MsgTypes.HelloAck, Capabilities.VERSION, Capabilities.CREDIT);
+        writer.write("topic", "a");
+        writer.write("fly", "b");
+        writer.writeRequest(1, "req", "ignored");
+        writer.writeReply(2, "reply", "ignored");
+        writer.write("topic", "c");
+        readAll();
+        assertEquals("[credit:300, msg:topic=before, helloAck:" + Capabilities.VERSION + ":" + Capabilities.CREDIT
+                + ", grant:4, msg:topic=a, fly:fly, grant:2, req:1:req=ignored, reply:2:reply=ignored, msg:topic=c]",
+                received.events.toString());
+    }
+
+    @Test
+    public void varIntHeadersCarryLongTopicsAndLargePayloads() throws IOException {
+        final String longTopic = longTopic();
+        varIntHeaders = true;
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setVarIntHeaders(true);
+        writer.writeSubscription(MsgTypes.Subscription, longTopic, charset);
+        writer.write(longTopic, "msg");
+        writer.writeRequest(300000, longTopic, new byte[20000]);
+        writer.writeReply(-1, "reply", "replyMsg");
+        readAll();
+        readAllDirect(new JavaSerializationReader());
+        for (int i = 0; i < 2; i++) {
+            List<String> events = received.events.subList(i * 4, i * 4 + 4);
+            assertEquals("sub:" + longTopic, events.get(0));
+            assertEquals("msg:" + longTopic + "=msg", events.get(1));
+            assertTrue(events.get(2).startsWith("req:300000:" + longTopic + "="));
+            assertEquals("reply:-1:reply=replyMsg", events.get(3));
+        }
+    }
+
+    @Test
+    public void varIntHeadersShrinkSmallFrames() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.writeRequest(1, "topic", "msg");
+        final int fixed = bytes.size();
+        bytes.reset();
+        writer.setVarIntHeaders(true);
+        writer.writeRequest(1, "topic", "msg");
+        assertEquals(fixed - 6, bytes.size());
+    }
+
+    @Test
+    public void longTopicIsRejectedWithoutVarIntHeaders() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setTopicAliases(new TopicAliases(charset), new BitSet());
+        try {
+            writer.write(longTopic(), "msg");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        writer.write("topic", "msg");
+        readAll();
+        assertEquals("[msg:topic=msg]", received.events.toString());
+    }
+
+    @Test
+    public void helloAckSwitchesTheReader() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.writeHello(MsgTypes.Hello, Capabilities.VERSION, Capabilities.VARINT_HEADERS | Capabilities.BATCH);
+        writer.write("before", "1");
+        writer.writeHello(MsgTypes.HelloAck, Capabilities.VERSION, Capabilities.VARINT_HEADERS);
+        writer.setCapabilities(Capabilities.VARINT_HEADERS);
+        writer.write(longTopic(), "2");
+        readAll();
+        assertEquals("hello:1:6", received.events.get(0));
+        assertEquals("msg:before=1", received.events.get(1));
+        assertEquals("helloAck:1:4", received.events.get(2));
+        assertEquals("msg:" + longTopic() + "=2", received.events.get(3));
+    }
+
+    @Test
+    public void largeFramesAreCompressed() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("symbol=EUR/USD;bid=1.1;");
+        }
+        final String large = text.toString();
+        final CompressionStats sent = new CompressionStats();
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setCompression(256, sent);
+        writer.write("small", "msg");
+        writer.write("large", large);
+        writer.writeToBatch("a", large);
+        writer.writeToBatch("b", "2");
+        writer.flushBatch();
+        writer.writeReply(3, "reply", large);
+        assertEquals(3, sent.getCompressedFrames());
+        assertTrue(sent.getRatio() < 0.25);
+        readAll();
+        readAllDirect(new JavaSerializationReader());
+        final String expected = "[msg:small=msg, msg:large=" + large + ", msg:a=" + large + ", msg:b=2, reply:3:reply=" + large + "]";
+        assertEquals(expected, received.events.subList(0, 5).toString());
+        assertEquals(expected, received.events.subList(5, 10).toString());
+        assertEquals(6, received.compressionStats.getDecompressedFrames());
+    }
+
+    private static String longTopic() {
+        StringBuilder topic = new StringBuilder();
+        while (topic.length() < 300) {
+            topic.append("region.desk.book.");
+        }
+        return topic.toString();
+    }
+
+    @Test
+    public void topicAliasesAreDeclaredOnceAndResolvedToInternedTopics() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setTopicAliases(new TopicAliases(charset), new BitSet());
+        writer.write("prices.EUR", "1");
+        int afterFirst = bytes.size();
+        writer.write("prices.EUR", "2");
+        int secondFrame = bytes.size() - afterFirst;
+        writer.writeRequest(7, "prices.EUR", "3");
+        writer.writeReply(8, "prices.USD", "4");
+        readAll();
+        assertEquals("[msg:prices.EUR=1, msg:prices.EUR=2, req:7:prices.EUR=3, reply:8:prices.USD=4]", received.events.toString());
+        assertSame("prices.EUR".intern(), received.topics.get(1));
+        assertTrue(secondFrame < afterFirst);
+    }
+
+    @Test
+    public void aliasTableFullFallsBackToTopicStrings() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setTopicAliases(new TopicAliases(charset, 1), new BitSet());
+        writer.write("a", "1");
+        writer.write("b", "2");
+        writer.write("a", "3");
+        readAll();
+        assertEquals("[msg:a=1, msg:b=2, msg:a=3]", received.events.toString());
+    }
+
+    @Test
+    public void longTopicsAreAliasedWithVarIntHeaders() throws IOException {
+        final String longTopic = longTopic();
+        varIntHeaders = true;
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setVarIntHeaders(true);
+        final TopicAliases aliases = new TopicAliases(charset);
+        writer.setTopicAliases(aliases, new BitSet());
+        writer.write(longTopic, "1");
+        final int afterFirst = bytes.size();
+        writer.write(longTopic, "2");
+        readAll();
+        assertEquals(1, aliases.size());
+        assertTrue(bytes.size() - afterFirst < longTopic.length());
+        assertEquals("msg:" + longTopic + "=1", received.events.get(0));
+        assertEquals("msg:" + longTopic + "=2", received.events.get(1));
+    }
+
+    @Test
+    public void fullAliasTableRemembersUnaliasedTopics() {
+        final TopicAliases aliases = new TopicAliases(charset, 1);
+        assertEquals(0, aliases.get("a").getId());
+        assertNull(aliases.get("b"));
+        assertNull(aliases.get("b"));
+        assertEquals(0, aliases.get("a").getId());
+        assertEquals(1, aliases.size());
+    }
+
+    @Test
+    public void batchedFramesAreSentAsOneEnvelope() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.setTopicAliases(new TopicAliases(charset), new BitSet());
+        writer.writeToBatch("a", "1");
+        writer.writeToBatch("b", "2");
+        writer.writeToBatch("a", "3");
+        assertEquals(0, bytes.size());
+        writer.flushBatch();
+        assertEquals(MsgTypes.Batch, bytes.toByteArray()[0]);
+        writer.writeToBatch("a", "4");
+        writer.writeByteAsInt(MsgTypes.Heartbeat);
+        writer.writeToBatch("b", "5");
+        writer.writeReply(1, "c", "6");
+        readAll();
+        assertEquals("[msg:a=1, msg:b=2, msg:a=3, msg:a=4, hb, msg:b=5, reply:1:c=6]", received.events.toString());
+    }
+
+    @Test
+    public void singleFrameBatchIsUnwrapped() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.writeToBatch("topic", "msg");
+        writer.flushBatch();
+        byte[] batched = bytes.toByteArray();
+        bytes.reset();
+        writer.write("topic", "msg");
+        assertArrayEquals(bytes.toByteArray(), batched);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFrameInBatchFails() throws IOException {
+        SocketMessageStreamWriter writer = createWriter();
+        writer.writeToBatch("a", "1");
+        writer.writeToBatch("b", "2");
+        writer.flushBatch();
+        byte[] frames = bytes.toByteArray();
+        //shrink the envelope so the last frame crosses its end.
+        frames[4]--;
+        bytes.reset();
+        bytes.write(frames, 0, frames.length);
+        readAll();
+    }
+
+    @Test
+    public void flyweightHandlerReadsPayloadInPlace() throws IOException {
+        SocketMessageStreamWriter writer = new SocketMessageStreamWriter(new ClosableOutputStream() {
+            public OutputStream getOutputStream() {
+                return bytes;
+            }
+
+            public boolean close() {
+                return true;
+            }
+        }, charset, new ByteArraySerializer.Writer());
+        writer.setTopicAliases(new TopicAliases(charset), new BitSet());
+        final ByteBuffer quote = ByteBuffer.allocate(12);
+        quote.putInt(42).putLong(7L);
+        writer.write("quotes", quote.array());
+        writer.write("other", new byte[]{1});
+        writer.writeToBatch("quotes", quote.array());
+        writer.writeToBatch("quotes", quote.array());
+        writer.flushBatch();
+        received.flyweights.register("quotes", new FlyweightHandler() {
+            public void onMessage(MessageCursor message) {
+                received.events.add("fly:" + message.getTopic() + "=" + message.getInt(0) + "," + message.getLong(4) + "/" + message.getLength());
+            }
+        });
+        readAllDirect(new ByteArraySerializer.Reader());
+        assertEquals(4, received.events.size());
+        assertEquals("fly:quotes=42,7/12", received.events.get(0));
+        assertTrue(received.events.get(1).startsWith("msg:other="));
+        assertEquals("fly:quotes=42,7/12", received.events.get(3));
+    }
+
+    static class Recorder implements JetlangRemotingProtocol.Handler {
+        final List<String> events = new ArrayList<String>();
+        final List<String> topics = new ArrayList<String>();
+        final FlyweightHandlers flyweights = new FlyweightHandlers();
+        final CompressionStats compressionStats = new CompressionStats();
+        int creditWindow;
+
+        public int getCreditWindow() {
+            return creditWindow;
+        }
+
+        public void grantCredit(int messages) {
+            events.add("grant:" + messages);
+        }
+
+        public void onCredit(int messages) {
+            events.add("credit:" + messages);
+        }
+
+        public CompressionStats getCompressionStats() {
+            return compressionStats;
+        }
+
+        public FlyweightHandlers getFlyweightHandlers() {
+            return flyweights;
+        }
+
+        public void onMessage(String dataTopicVal, Object readObject) {
+            topics.add(dataTopicVal);
+            events.add("msg:" + dataTopicVal + "=" + readObject);
+        }
+
+        public void onSubscriptionRequest(String val) {
+            events.add("sub:" + val);
+        }
+
+        public void onRequest(int reqId, String dataTopicVal, Object readObject) {
+            topics.add(dataTopicVal);
+            events.add("req:" + reqId + ":" + dataTopicVal + "=" + readObject);
+        }
+
+        public void onUnsubscribeRequest(String val) {
+            events.add("unsub:" + val);
+        }
+
+        public void onHb() {
+            events.add("hb");
+        }
+
+        public void onLogout() {
+            events.add("logout");
+        }
+
+        public void onUnknownMessage(int read) {
+            events.add("unknown:" + read);
+        }
+
+        public void onRequestReply(int reqId, String dataTopicVal, Object readObject) {
+            topics.add(dataTopicVal);
+            events.add("reply:" + reqId + ":" + dataTopicVal + "=" + readObject);
+        }
+
+        public void onReplyChunk(int reqId, String dataTopicVal, Object readObject) {
+            events.add("chunk:" + reqId + ":" + dataTopicVal + "=" + readObject);
+        }
+
+        public void onReplyEnd(int reqId) {
+            events.add("end:" + reqId);
+        }
+
+        public void onHandlerException(Exception failed) {
+            throw new RuntimeException(failed);
+        }
+
+        public void onHello(int version, int capabilities) {
+            events.add("hello:" + version + ":" + capabilities);
+        }
+
+        public void onHelloAck(int version, int capabilities) {
+            events.add("helloAck:" + version + ":" + capabilities);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedFrameTest {
+
+    private final BufferPool pool = new BufferPool(1024, 1024 * 1024, 2);
+
+    @Test
+    public void viewsAreIndependent() {
+        final SharedFrame frame = SharedFrame.copyOf(pool, new byte[]{9, 1, 2, 3}, 1, 3);
+        final ByteBuffer first = frame.view();
+        final ByteBuffer second = frame.view();
+        assertEquals(1, first.get());
+        assertEquals(2, first.remaining());
+        assertEquals(3, second.remaining());
+        assertTrue(second.isReadOnly());
+    }
+
+    @Test
+    public void lastReleaseReturnsTheArrayToThePool() {
+        final SharedFrame frame = SharedFrame.copyOf(pool, new byte[100], 0, 100);
+        frame.retain().retain();
+        assertEquals(3, frame.refCount());
+        assertFalse(frame.release());
+        assertFalse(frame.release());
+        assertEquals(0, pool.getStats().getReleases());
+        assertTrue(frame.release());
+        assertEquals(1, pool.getStats().getReleases());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasedFramesCannotBeRetained() {
+        final SharedFrame frame = SharedFrame.copyOf(pool, new byte[1], 0, 1);
+        frame.release();
+        frame.retain();
+    }
+}
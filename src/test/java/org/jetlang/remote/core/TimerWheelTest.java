@@ -0,0 +1,79 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private final TimerWheel<String> wheel = new TimerWheel<>(10, 8, 1000);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    public void firesOnceDueRoundedUpToTicks() {
+        wheel.schedule("a", 15);
+        wheel.schedule("b", 30);
+        assertEquals(0, wheel.advance(1019, fired::add));
+        assertEquals(1, wheel.advance(1020, fired::add));
+        assertEquals(1020, wheel.now());
+        assertEquals(1, wheel.advance(1035, fired::add));
+        assertEquals(Arrays.asList("a", "b"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void deadlinesBeyondOneTurnWaitForTheirRound() {
+        wheel.schedule("far", 250);
+        wheel.schedule("near", 10);
+        wheel.advance(1100, fired::add);
+        assertEquals(Arrays.asList("near"), fired);
+        wheel.advance(1250, fired::add);
+        assertEquals(Arrays.asList("near", "far"), fired);
+    }
+
+    @Test
+    public void idleWheelCatchesUpWithoutFiringEarly() {
+        assertEquals(0, wheel.advance(100000, fired::add));
+        wheel.schedule("a", 20);
+        assertEquals(0, wheel.advance(100010, fired::add));
+        assertEquals(1, wheel.advance(100020, fired::add));
+        assertEquals(Arrays.asList("a"), fired);
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotFire() {
+        final TimerWheel.Timeout<String> a = wheel.schedule("a", 10);
+        final TimerWheel.Timeout<String> b = wheel.schedule("b", 10);
+        assertTrue(a.cancel());
+        assertFalse(a.cancel());
+        assertEquals(1, wheel.size());
+        wheel.advance(1010, fired::add);
+        assertEquals(Arrays.asList("b"), fired);
+        assertFalse(b.isPending());
+    }
+
+    @Test
+    public void callbacksCanRescheduleAndCancel() {
+        final List<TimerWheel.Timeout<String>> timeouts = new ArrayList<>();
+        timeouts.add(wheel.schedule("periodic", 10));
+        timeouts.add(wheel.schedule("victim", 20));
+        wheel.advance(1030, value -> {
+            fired.add(value);
+            if (value.equals("periodic")) {
+                timeouts.get(1).cancel();
+                wheel.reschedule(timeouts.get(0), 10);
+            }
+        });
+        //delays run from the clock being advanced to, so a late advance doesn't fire a periodic timer repeatedly.
+        assertEquals(Arrays.asList("periodic"), fired);
+        wheel.advance(1040, fired::add);
+        assertEquals(Arrays.asList("periodic", "periodic"), fired);
+        assertEquals(0, wheel.size());
+    }
+}
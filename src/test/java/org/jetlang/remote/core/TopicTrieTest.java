@@ -0,0 +1,56 @@
+package org.jetlang.remote.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TopicTrieTest {
+
+    private final TopicTrie<String> trie = new TopicTrie<>();
+
+    @Test
+    public void wildcardsMatchOneOrMoreSegments() {
+        trie.add("prices.EUR.*", "eur");
+        trie.add("prices.>", "all");
+        trie.add("*.EUR.USD", "usd");
+        trie.add("prices.EUR.USD", "exact");
+        assertEquals(new HashSet<>(Arrays.asList("eur", "all", "usd", "exact")), new HashSet<>(trie.match("prices.EUR.USD")));
+        assertEquals(new HashSet<>(Arrays.asList("eur", "all")), new HashSet<>(trie.match("prices.EUR.GBP")));
+        assertEquals(Collections.singletonList("all"), trie.match("prices.GBP.USD.spot"));
+        assertEquals(Collections.emptyList(), trie.match("prices"));
+        assertEquals(Collections.singletonList("all"), trie.match("prices.EUR"));
+        assertEquals(Collections.emptyList(), trie.match("rates.EUR.GBP"));
+    }
+
+    @Test
+    public void valuesMatchedByTwoPatternsAreReturnedOnce() {
+        trie.add("prices.*", "session");
+        trie.add("prices.>", "session");
+        assertFalse(trie.add("prices.>", "session"));
+        assertEquals(Collections.singletonList("session"), trie.match("prices.EUR"));
+        assertEquals(2, trie.size());
+    }
+
+    @Test
+    public void matchesAreCachedUntilPatternsChange() {
+        trie.add("prices.*", "a");
+        assertSame(trie.match("prices.EUR"), trie.match("prices.EUR"));
+        trie.add("prices.EUR", "b");
+        assertEquals(2, trie.match("prices.EUR").size());
+        assertTrue(trie.remove("prices.*", "a"));
+        assertFalse(trie.remove("prices.*", "a"));
+        assertEquals(Collections.singletonList("b"), trie.match("prices.EUR"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restMustBeLast() {
+        TopicTrie.checkPattern("prices.>.USD");
+    }
+}
@@ -0,0 +1,87 @@
+package org.jetlang.remote.example.chat;
+
+import org.jetlang.fibers.NioFiberImpl;
+import org.jetlang.fibers.ThreadFiber;
+import org.jetlang.remote.acceptor.NioJetlangRemotingClientFactory;
+import org.jetlang.remote.acceptor.NioJetlangSendFiber;
+import org.jetlang.remote.core.PrimitiveCodecs;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes to a topic with one subscriber while growing the number of sessions subscribed to other topics.
+ * Cost per publish should stay flat as unrelated sessions are added.
+ */
+public class BulkPublishBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int publishes = 200000;
+        final int[] unrelatedCounts = {0, 1000, 5000, 20000};
+        final NioFiberImpl nioFiber = new NioFiberImpl();
+        final ThreadFiber sendFiber = new ThreadFiber();
+        nioFiber.start();
+        sendFiber.start();
+        final NioJetlangSendFiber sender = new NioJetlangSendFiber(sendFiber, nioFiber, new PrimitiveCodecs.LongCodec(), Charset.forName("US-ASCII"), new NioFiberImpl.NoOpBuffer());
+
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        final SocketChannel client = SocketChannel.open(server.getLocalAddress());
+        final SocketChannel accepted = server.accept();
+        accepted.configureBlocking(false);
+        final Thread drain = new Thread(() -> {
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            try {
+                while (client.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException closed) {
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+
+        final NioJetlangSendFiber.ChannelState subscriber = new NioJetlangSendFiber.ChannelState(accepted, new NioJetlangRemotingClientFactory.Id(accepted), nioFiber);
+        sender.onNewSession(subscriber);
+        sender.onSubscriptionRequest("prices", subscriber);
+
+        int unrelated = 0;
+        //the first pass warms up.
+        run(sender, sendFiber, publishes);
+        for (int target : unrelatedCounts) {
+            //never written to, so they can share the subscriber's channel.
+            for (; unrelated < target; unrelated++) {
+                final NioJetlangSendFiber.ChannelState other = new NioJetlangSendFiber.ChannelState(accepted, new NioJetlangRemotingClientFactory.Id(accepted), nioFiber);
+                sender.onNewSession(other);
+                sender.onSubscriptionRequest("other" + unrelated, other);
+            }
+            final long nanos = run(sender, sendFiber, publishes);
+            System.out.println("unrelated sessions = " + unrelated + " nanos/publish = " + (nanos / publishes));
+        }
+        client.close();
+        accepted.close();
+        server.close();
+        sendFiber.dispose();
+        nioFiber.dispose();
+    }
+
+    private static long run(NioJetlangSendFiber sender, ThreadFiber sendFiber, int publishes) throws InterruptedException {
+        final CountDownLatch queued = new CountDownLatch(1);
+        sendFiber.execute(queued::countDown);
+        queued.await(10, TimeUnit.SECONDS);
+        final long start = System.nanoTime();
+        for (int i = 0; i < publishes; i++) {
+            sender.publishToAllSubscribedClients("prices", (long) i);
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        sendFiber.execute(done::countDown);
+        done.await(60, TimeUnit.SECONDS);
+        return System.nanoTime() - start;
+    }
+}
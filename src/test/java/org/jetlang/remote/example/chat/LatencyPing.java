@@ -1,6 +1,5 @@
 package org.jetlang.remote.example.chat;
 
-import org.jetlang.core.Callback;
 import org.jetlang.core.SynchronousDisposingExecutor;
 import org.jetlang.fibers.ThreadFiber;
 import org.jetlang.remote.client.CloseEvent;
@@ -8,14 +7,10 @@ import org.jetlang.remote.client.ConnectEvent;
 import org.jetlang.remote.client.JetlangClientConfig;
 import org.jetlang.remote.client.JetlangTcpClient;
 import org.jetlang.remote.client.SocketConnector;
-import org.jetlang.remote.core.ByteMessageWriter;
 import org.jetlang.remote.core.ErrorHandler;
-import org.jetlang.remote.core.ObjectByteReader;
-import org.jetlang.remote.core.ObjectByteWriter;
-import org.jetlang.remote.core.Serializer;
+import org.jetlang.remote.core.LongCallback;
+import org.jetlang.remote.core.PrimitiveCodecs;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -41,18 +36,18 @@ public class LatencyPing {
         SocketConnector conn = new SocketConnector(host, port);
         JetlangClientConfig clientConfig = new JetlangClientConfig();
 
-        JetlangTcpClient tcpClient = new JetlangTcpClient(conn, new ThreadFiber(), clientConfig, new LongSerializer(), new ErrorHandler.SysOut());
+        JetlangTcpClient tcpClient = new JetlangTcpClient(conn, new ThreadFiber(), clientConfig, new PrimitiveCodecs.LongCodec(), new ErrorHandler.SysOut());
         SynchronousDisposingExecutor executor = new SynchronousDisposingExecutor();
         tcpClient.getConnectChannel().subscribe(executor, Client.<ConnectEvent>print("Connect"));
         tcpClient.getCloseChannel().subscribe(executor, Client.<CloseEvent>print("Closed"));
         tcpClient.start();
 
-        Callback<Long> onMsg = new Callback<Long>() {
+        LongCallback onMsg = new LongCallback() {
             int count = 0;
             long latency = 0;
             long min = Long.MAX_VALUE;
             long max = 0;
-            public void onMessage(Long message) {
+            public void onMessage(long message) {
                 long duration = System.nanoTime() - message;
                 min = Math.min(duration, min);
                 max = Math.max(duration, max);
@@ -66,7 +61,7 @@ public class LatencyPing {
                 }
             }
         };
-        tcpClient.subscribe("t", new SynchronousDisposingExecutor(), onMsg);
+        tcpClient.subscribeLong("t", onMsg);
 
         int sleepTime = 1;
         for (int i = 0; i < iteration; i++) {
@@ -77,31 +72,4 @@ public class LatencyPing {
         tcpClient.close(true).await(1, TimeUnit.SECONDS);
     }
 
-    public static class LongSerializer implements Serializer {
-
-        public ObjectByteWriter getWriter() {
-            return new ObjectByteWriter() {
-                byte[] bytes = new byte[8];
-                ByteBuffer buffer = ByteBuffer.wrap(bytes);
-                public void write(String topic, Object msg, ByteMessageWriter writer) throws IOException {
-                    buffer.clear();
-                    buffer.putLong((Long)msg);
-                    writer.writeObjectAsBytes(bytes, 0, bytes.length);
-                }
-            };
-        }
-
-        public ObjectByteReader getReader() {
-            return new ObjectByteReader() {
-                public Object readObject(String fromTopic, byte[] buffer, int offset, int length) throws IOException {
-                    final ByteBuffer wrap = ByteBuffer.wrap(buffer);
-                    if(offset > 0){
-                        wrap.position(offset);
-                    }
-                    return wrap.getLong();
-                }
-            };
-        }
-    }
-
 }